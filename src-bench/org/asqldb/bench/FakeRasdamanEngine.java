@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasqlTemplate;
+import org.asqldb.storage.MDAStorageEngine;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+import rasj.RasGMArray;
+import rasj.RasMArrayByte;
+import rasj.RasMArrayDouble;
+import rasj.RasMInterval;
+
+/**
+ * Stand-in for a rasdaman server, serving canned arrays after a fixed
+ * latency per request, so that the benchmarks measure the Java side of the
+ * MDA bridge reproducibly.<p>
+ *
+ * Every fetch returns the same double array; queries return a scalar for
+ * condensers, an encoded byte array for the encode functions and the array
+ * otherwise, and every array satisfies a condition. Inserts only allocate a
+ * new OID.
+ *
+ * @author Dimitar Misev
+ */
+public class FakeRasdamanEngine implements MDAStorageEngine {
+
+    private static final String[] SCALAR_FUNCTIONS = {
+        "add_cells", "all_cells", "avg_cells", "count_cells",
+        "max_cells", "min_cells", "some_cells", "condense"};
+
+    private static final String[] ENCODE_FUNCTIONS = {
+        "tiff", "png", "csv", "jpeg", "bmp", "encode"};
+
+    private final long latencyNanos;
+    private final RasGMArray array;
+    private final RasGMArray encoded;
+    private final Double scalar = Double.valueOf(42);
+
+    private final ConcurrentMap<String, Set<Integer>> colls = new ConcurrentHashMap<String, Set<Integer>>();
+    private final AtomicInteger lastOid = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * @param latencyMicros delay of every request in microseconds
+     * @param cells number of cells of the served array
+     */
+    public FakeRasdamanEngine(long latencyMicros, int cells) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+
+        final ByteBuffer buf = ByteBuffer.allocate(cells * 8);
+        for (int i = 0; i < cells; i++) {
+            buf.putDouble(i * 0.5);
+        }
+        array = new RasMArrayDouble(new RasMInterval("[0:" + (cells - 1) + "]"));
+        array.setArray(buf.array());
+
+        final byte[] bytes = new byte[cells];
+        for (int i = 0; i < cells; i++) {
+            bytes[i] = (byte) i;
+        }
+        encoded = new RasMArrayByte(new RasMInterval("[0:" + (cells - 1) + "]"));
+        encoded.setArray(bytes);
+    }
+
+    /**
+     * @return number of requests served so far
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    private void request() {
+        requests.incrementAndGet();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    public String getName() {
+        return "fake";
+    }
+
+    public void createCollection(Session session, String coll, String setType) throws HsqlException {
+        request();
+        colls.putIfAbsent(coll, Collections.synchronizedSet(new HashSet<Integer>()));
+    }
+
+    public void dropCollection(Session session, String coll) throws HsqlException {
+        request();
+        colls.remove(coll);
+    }
+
+    public boolean collectionExists(String coll) throws HsqlException {
+        return colls.containsKey(coll);
+    }
+
+    public Integer insert(Session session, String coll, String value, Object data) throws HsqlException {
+        request();
+        final Integer oid = Integer.valueOf(lastOid.incrementAndGet());
+        final Set<Integer> oids = colls.get(coll);
+        if (oids != null) {
+            oids.add(oid);
+        }
+        return oid;
+    }
+
+    public Object fetch(Session session, String coll, Integer oid) throws HsqlException {
+        request();
+        return array;
+    }
+
+    public Map<Integer, Object> fetch(Session session, String coll, Collection<Integer> oids) throws HsqlException {
+        request();
+        final Map<Integer, Object> ret = new HashMap<Integer, Object>(oids.size() * 2);
+        for (Integer oid : oids) {
+            ret.put(oid, array);
+        }
+        return ret;
+    }
+
+    public String getDomain(Session session, String coll, Integer oid) throws HsqlException {
+        request();
+        return array.spatialDomain().toString();
+    }
+
+    public void delete(Session session, String coll, List<Integer> oids) throws HsqlException {
+        request();
+        final Set<Integer> stored = colls.get(coll);
+        if (stored != null) {
+            stored.removeAll(oids);
+        }
+    }
+
+    public boolean supportsQueries() {
+        return true;
+    }
+
+    public Object evaluate(Session session, RasqlTemplate template, RasArrayIdSet rasArrayIds) throws HsqlException {
+        request();
+        final String selector = template.getSelector().trim().toLowerCase();
+        for (String f : SCALAR_FUNCTIONS) {
+            if (selector.startsWith(f)) {
+                return scalar;
+            }
+        }
+        for (String f : ENCODE_FUNCTIONS) {
+            if (selector.startsWith(f)) {
+                return encoded;
+            }
+        }
+        return array;
+    }
+
+    public Set<Integer> select(Session session, String coll, String field, String condition) throws HsqlException {
+        request();
+        final Set<Integer> oids = colls.get(coll);
+        if (oids == null) {
+            return new HashSet<Integer>();
+        }
+        synchronized (oids) {
+            return new HashSet<Integer>(oids);
+        }
+    }
+}
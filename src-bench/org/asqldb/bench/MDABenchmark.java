@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.MDAStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of SQL/MDA queries on an in-memory database whose arrays
+ * are served by a {@link FakeRasdamanEngine}. The result cache is cleared
+ * before every invocation and local evaluation is disabled, so each query
+ * goes through the full MDA bridge.<p>
+ *
+ * Single column projections over one table are evaluated with one rasql
+ * query per collection, which the stand-in does not serve; the projections
+ * here therefore select the id column as well.
+ *
+ * @author Dimitar Misev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MDABenchmark {
+
+    private static final String JDBC_URL = "jdbc:hsqldb:mem:mdabench";
+
+    /**
+     * Latency of every request to the rasdaman stand-in.
+     */
+    @Param({"0", "200"})
+    public int latencyMicros;
+
+    /**
+     * Number of cells of every array.
+     */
+    @Param({"64", "65536"})
+    public int cells;
+
+    /**
+     * Number of rows of the scanned table.
+     */
+    @Param({"100"})
+    public int rows;
+
+    private Connection connection;
+    private Statement statement;
+    private int localThreshold;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        localThreshold = RasUtil.localThreshold;
+        RasUtil.localThreshold = 0;
+        MDAStorage.set(new FakeRasdamanEngine(latencyMicros, cells));
+
+        connection = DriverManager.getConnection(JDBC_URL, "SA", "");
+        statement = connection.createStatement();
+        statement.execute("create table BENCH (id INTEGER, a DOUBLE MDARRAY[x])");
+        statement.execute("create table BENCH_INSERT (a DOUBLE MDARRAY[x])");
+        for (int i = 0; i < rows; i++) {
+            statement.execute("insert into BENCH(id, a) values ("
+                    + i + ", MDARRAY[x(0:3)] [1.0,2.0,3.0,4.0])");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        statement.execute("drop table BENCH");
+        statement.execute("drop table BENCH_INSERT");
+        statement.execute("shutdown");
+        connection.close();
+        MDAStorage.set(null);
+        RasUtil.localThreshold = localThreshold;
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        RasUtil.getResultCache().clear();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearInserted() throws SQLException {
+        statement.execute("delete from BENCH_INSERT");
+    }
+
+    private static void consume(ResultSet rs, Blackhole bh) throws SQLException {
+        try {
+            final int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    bh.consume(rs.getObject(i));
+                }
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    /**
+     * Whole arrays of every row, fetched in batches.
+     */
+    @Benchmark
+    public void projection(Blackhole bh) throws SQLException {
+        consume(statement.executeQuery("select c.id, c.a from BENCH as c"), bh);
+    }
+
+    /**
+     * An induced operation per row, one rasql query per row.
+     */
+    @Benchmark
+    public void projectionInduced(Blackhole bh) throws SQLException {
+        consume(statement.executeQuery("select c.id, c.a * 2 + 1 from BENCH as c"), bh);
+    }
+
+    @Benchmark
+    public void condensers(Blackhole bh) throws SQLException {
+        consume(statement.executeQuery(
+                "select c.id, add_cells(c.a), avg_cells(c.a), max_cells(c.a) from BENCH as c"), bh);
+    }
+
+    @Benchmark
+    public void unnest(Blackhole bh) throws SQLException {
+        consume(statement.executeQuery(
+                "select v from BENCH as c, UNNEST(c.a) as t(v)"), bh);
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) throws SQLException {
+        consume(statement.executeQuery("select c.id, csv(c.a) from BENCH as c"), bh);
+    }
+
+    @Benchmark
+    public void insert() throws SQLException {
+        statement.execute("insert into BENCH_INSERT(a) values "
+                + "(MDARRAY[x(0:3)] [1.0,2.0,3.0,4.0])");
+    }
+}
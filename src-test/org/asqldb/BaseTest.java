@@ -111,6 +111,8 @@ public class BaseTest extends AsqldbConnection {
         for (int i = 1; i <= queries.length; i++) {
             final String table = "RASTEST" + i;
             executeQuery("DROP TABLE " + table + " IF EXISTS");
+            // collections are dropped in the background
+            RasUtil.getCleanupQueue().await();
             ret = ret || tableExistsInRasdaman(table);
         }
         return !ret;
@@ -29,7 +29,7 @@ package org.asqldb;
 import java.sql.SQLException;
 import org.asqldb.ras.RasUtil;
 import org.asqldb.util.AsqldbConnection;
-import org.asqldb.util.TimerUtil;
+import org.asqldb.util.Metrics;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -55,17 +55,17 @@ public class BenchmarkTest extends BaseTest {
     
     @Test
     public void testPredefinedAggregation_AvgCells() throws SQLException {
-        TimerUtil.printAllTimers();
+        Metrics.print(System.out);
 
-        TimerUtil.resetTimer("RasUtil.executeRasqlQuery");
+        Metrics.reset();
         executeQuerySingleResult(
                 "select avg_cells(c.a) from RASTEST2 as c");
-        TimerUtil.printAllTimers();
+        Metrics.print(System.out);
 
-        TimerUtil.clearTimers();
+        Metrics.reset();
         RasUtil.head(RasUtil.executeRasqlQuery(
                 "select avg_cells(c) from PUBLIC_RASTEST2_A as c", false));
-        TimerUtil.printAllTimers();
+        Metrics.print(System.out);
     }
 
     public static void main(String[] args) throws SQLException {
@@ -26,6 +26,8 @@
 
 package org.asqldb;
 
+import org.asqldb.ras.RasCollCatalog;
+import org.asqldb.ras.RasCollInfo;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -67,4 +69,27 @@ public class CreateDropTest extends BaseTest {
         
         assertTrue(dropTables(createQueries));
     }
+
+    @Test
+    public void testCollectionCatalog() {
+        dropTables(createQueries);
+        createTables(createQueries);
+
+        final RasCollInfo info = RasCollCatalog.get("PUBLIC_RASTEST6_A");
+        assertNotNull(info);
+        assertEquals(0, info.getArrayCount());
+        assertNull(info.getSpatialDomain());
+
+        executeQuery("insert into RASTEST6(a) values (MDARRAY[-9999:-9997] [1.0,2.3,-9.88832])");
+        executeQuery("insert into RASTEST6(a) values (MDARRAY[-9000:-8999] [1.0,2.3])");
+        assertEquals(2, info.getArrayCount());
+        assertEquals("[-9999:-8999]", info.getSpatialDomain());
+
+        // the catalog still knows the collection after forgetting the entry
+        RasCollCatalog.refresh("PUBLIC_RASTEST6_A");
+        assertEquals(2, RasCollCatalog.get("PUBLIC_RASTEST6_A").getArrayCount());
+
+        assertTrue(dropTables(createQueries));
+        assertNull(RasCollCatalog.get("PUBLIC_RASTEST6_A"));
+    }
 }
@@ -26,13 +26,28 @@
 
 package org.asqldb;
 
+import java.io.File;
 import java.io.InputStream;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
 import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.EmbeddedStorageEngine;
+import org.asqldb.storage.MDAStorage;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.odmg.DBag;
+import rasj.RasMArrayDouble;
 
 /**
  * INSERT/DELETE MDARRAY tests.<p>
@@ -66,7 +81,9 @@ public class InsertDeleteTest extends BaseTest {
             "create table RASTEST1 ("
                 + "a DOUBLE MDARRAY[-10000:-1000])",
             "create table RASTEST2 ("
-                + "a CHAR MDARRAY[x, y])"};
+                + "a CHAR MDARRAY[x, y])",
+            "create table RASTEST3 ("
+                + "id INTEGER PRIMARY KEY, a DOUBLE MDARRAY[-10000:-1000])"};
         dropTables(createQueries);
         createTables(createQueries);
     }
@@ -98,6 +115,183 @@ public class InsertDeleteTest extends BaseTest {
         assertTrue(executeQuery("DELETE FROM RASTEST1"));
     }
     
+    @Test
+    public void testInsertMultipleRows() throws SQLException {
+        assertTrue(executeQuery("insert into RASTEST1(a) values "
+                + "(MDARRAY[-9999:-9997] [1.0,2.0,3.0]),"
+                + "(MDARRAY[-9999:-9998] [4.0,5.0]),"
+                + "(MDARRAY[-9999:-9999] [6.0])"));
+        List<Object> o = executeQuerySingleResult("select add_cells(c.a) from RASTEST1 as c", 1);
+        assertEquals("[6.0, 9.0, 6.0]", o.toString());
+        assertTrue(executeQuery("DELETE FROM RASTEST1"));
+    }
+
+    @Test
+    public void testRollbackAbortsArrays() {
+        assertTrue(executeQuery("SET AUTOCOMMIT FALSE"));
+        try {
+            assertTrue(executeQuery("insert into RASTEST1(a) values ("
+                    + "MDARRAY[-9999:-9997] [1.0,2.0,3.0])"));
+            assertTrue(executeQuery("ROLLBACK"));
+            assertEquals(0, countArrays("PUBLIC_RASTEST1_A"));
+
+            assertTrue(executeQuery("insert into RASTEST1(a) values ("
+                    + "MDARRAY[-9999:-9997] [1.0,2.0,3.0])"));
+            assertTrue(executeQuery("COMMIT"));
+            assertEquals(1, countArrays("PUBLIC_RASTEST1_A"));
+        } finally {
+            executeQuery("SET AUTOCOMMIT TRUE");
+        }
+        assertTrue(executeQuery("DELETE FROM RASTEST1"));
+    }
+
+    /**
+     * Test that a transaction reads the arrays it has inserted before they
+     * are committed.
+     */
+    @Test
+    public void testSelectUncommittedArrays() throws SQLException {
+        assertTrue(executeQuery("SET AUTOCOMMIT FALSE"));
+        try {
+            assertTrue(executeQuery("insert into RASTEST1(a) values ("
+                    + "MDARRAY[-9999:-9997] [1.0,2.0,3.0])"));
+            final Object res = RasUtil.head(executeQuerySingleResult("select c.a from RASTEST1 as c"));
+            assertEquals(3, ((RasMArrayDouble) res).getDoubleArray().length);
+            assertEquals(6.0, executeQuerySingleResult("select add_cells(c.a) from RASTEST1 as c"));
+            assertTrue(executeQuery("ROLLBACK"));
+            assertEquals(0, countArrays("PUBLIC_RASTEST1_A"));
+        } finally {
+            executeQuery("SET AUTOCOMMIT TRUE");
+        }
+    }
+
+    /**
+     * Test that the statements of a batch executed before a failing one are
+     * committed together with their arrays.
+     */
+    @Test
+    public void testBatchWithFailingStatement() throws SQLException {
+        final Connection conn = DriverManager.getConnection(jdbcUrl, "SA", "");
+        try {
+            final PreparedStatement stmt = conn.prepareStatement("insert into RASTEST3(id, a) "
+                    + "values (?, MDARRAY[-9999:-9997] [1.0,2.0,3.0])");
+            for (int id : new int[]{1, 2, 1}) {
+                stmt.setInt(1, id);
+                stmt.addBatch();
+            }
+            try {
+                stmt.executeBatch();
+                fail("duplicate key in batch");
+            } catch (BatchUpdateException ex) {
+                assertEquals(2, ex.getUpdateCounts().length);
+            }
+        } finally {
+            conn.close();
+        }
+        List<Object> o = executeQuerySingleResult("select c.id, add_cells(c.a) from RASTEST3 as c order by c.id", 2);
+        assertEquals("[1, 6.0, 2, 6.0]", o.toString());
+        assertTrue(executeQuery("DELETE FROM RASTEST3"));
+    }
+
+    @Test
+    public void testDeleteRemovesArrays() {
+        final int threshold = RasUtil.cleanupThreshold;
+        try {
+            for (int t : new int[]{0, 1}) {
+                RasUtil.cleanupThreshold = t;
+                assertTrue(executeQuery("insert into RASTEST1(a) values "
+                        + "(MDARRAY[-9999:-9997] [1.0,2.0,3.0]),"
+                        + "(MDARRAY[-9999:-9998] [4.0,5.0]),"
+                        + "(MDARRAY[-9999:-9999] [6.0])"));
+                assertEquals(3, countArrays("PUBLIC_RASTEST1_A"));
+                assertTrue(executeQuery("DELETE FROM RASTEST1"));
+                RasUtil.getCleanupQueue().await();
+                assertEquals(0, countArrays("PUBLIC_RASTEST1_A"));
+            }
+        } finally {
+            RasUtil.cleanupThreshold = threshold;
+        }
+    }
+
+    /**
+     * Test that the rows of a CACHED table with an MDARRAY column are read
+     * back after the database is reopened.
+     */
+    @Test
+    public void testCachedTableReopen() throws SQLException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "asqldb-cached-test");
+        final String url = "jdbc:hsqldb:file:" + new File(dir, "db").getPath();
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        try {
+            final Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE CACHEDTEST IF EXISTS");
+            stmt.execute("CREATE CACHED TABLE CACHEDTEST (id INTEGER, a DOUBLE MDARRAY[-10000:-1000])");
+            stmt.execute("insert into CACHEDTEST(id, a) values (1, MDARRAY[-9999:-9997] [1.0,2.0,3.0])");
+            stmt.execute("SHUTDOWN");
+        } finally {
+            conn.close();
+        }
+
+        conn = DriverManager.getConnection(url, "SA", "");
+        try {
+            final Statement stmt = conn.createStatement();
+            final ResultSet rs = stmt.executeQuery("select c.id, add_cells(c.a) from CACHEDTEST as c");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            assertEquals(6.0, rs.getDouble(2), 0.0);
+            stmt.execute("DROP TABLE CACHEDTEST");
+            stmt.execute("SHUTDOWN");
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testEmbeddedStorage() throws SQLException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "asqldb-mda-test");
+        final File coll = new File(dir, "PUBLIC_EMBTEST_A");
+        MDAStorage.set(new EmbeddedStorageEngine(dir));
+        try {
+            executeQuery("DROP TABLE EMBTEST IF EXISTS");
+            assertTrue(executeQuery("create table EMBTEST (a DOUBLE MDARRAY[-10000:-1000])"));
+            assertTrue(executeQuery("insert into EMBTEST(a) values (MDARRAY[-9999:-9997] [1.0,2.3,-9.88832])"));
+            assertTrue(new File(coll, "1.mda").isFile());
+
+            final Object res = RasUtil.head(executeQuerySingleResult("select c.a from EMBTEST as c"));
+            final double[] d = ((RasMArrayDouble) res).getDoubleArray();
+            assertEquals(3, d.length);
+            assertEquals(-9.88832, d[2], 0.0);
+
+            assertTrue(executeQuery("DELETE FROM EMBTEST"));
+            assertFalse(new File(coll, "1.mda").exists());
+            assertTrue(executeQuery("DROP TABLE EMBTEST"));
+            assertFalse(coll.exists());
+        } finally {
+            MDAStorage.set(null);
+        }
+    }
+
+    private static int countArrays(String coll) {
+        final Object res = RasUtil.executeRasqlQuery("select oid(c) from " + coll + " as c", true);
+        return res instanceof DBag ? ((DBag) res).size() : 0;
+    }
+
+    @Test
+    public void testDeleteInvalidatesCachedResults() throws SQLException {
+        assertTrue(executeQuery("insert into RASTEST1(a) values ("
+                + "MDARRAY[-9999:-9997] [1.0,2.0,3.0])"));
+        assertEquals(6.0, executeQuerySingleResult("select add_cells(c.a) from RASTEST1 as c"));
+        final long hits = RasUtil.getResultCache().getHits();
+        assertEquals(6.0, executeQuerySingleResult("select add_cells(c.a) from RASTEST1 as c"));
+        assertEquals(hits + 1, RasUtil.getResultCache().getHits());
+
+        assertTrue(executeQuery("DELETE FROM RASTEST1"));
+        assertTrue(executeQuery("insert into RASTEST1(a) values ("
+                + "MDARRAY[-9999:-9997] [4.0,5.0,6.0])"));
+        assertEquals(15.0, executeQuerySingleResult("select add_cells(c.a) from RASTEST1 as c"));
+        assertTrue(executeQuery("DELETE FROM RASTEST1"));
+    }
+    
     @Test
     public void testInsertDecode() {
         final InputStream is = InsertDeleteTest.class.getResourceAsStream("mr_1.png");
@@ -63,7 +63,7 @@ public class RasArrayTest {
     }
 
     public void dropRasCollections() {
-        RasUtil.openDatabase(RasUtil.adminUsername, RasUtil.adminPassword, true);
+        RasUtil.openDatabase(true);
         RasUtil.executeRasqlQuery("drop collection rastest",
                 false, true);
         RasUtil.executeRasqlQuery("drop collection rastest2",
@@ -202,7 +202,7 @@ public class RasArrayTest {
     }
 
     public boolean insertValues(final Connection conn) throws SQLException {
-        RasUtil.openDatabase(RasUtil.adminUsername, RasUtil.adminPassword, true);
+        RasUtil.openDatabase(true);
         RasUtil.executeRasqlQuery("create collection rastest GreySet",
                 false, false);
         RasUtil.executeRasqlQuery("insert into rastest values " +
@@ -174,7 +174,7 @@ public class RasMArrayTest {
 
     private void setUp(final Connection connection) throws SQLException {
 
-        RasUtil.openDatabase(RasUtil.adminUsername, RasUtil.adminPassword, true);
+        RasUtil.openDatabase(true);
         try {
             RasUtil.executeRasqlQuery("create collection rastest GreySet",
                     false, false);
@@ -134,7 +134,7 @@ public class RasSelectTest {
 
     private void setUp(final Connection connection) throws SQLException {
 
-        RasUtil.openDatabase(RasUtil.adminUsername, RasUtil.adminPassword, true);
+        RasUtil.openDatabase(true);
         try {
             RasUtil.executeRasqlQuery("create collection rastest GreySet",
                     false, false);
@@ -299,7 +299,7 @@ public class RasTester {
     }
 
     public boolean insertValues(final Connection conn) throws SQLException {
-        RasUtil.openDatabase(RasUtil.adminUsername, RasUtil.adminPassword, true);
+        RasUtil.openDatabase(true);
         try {
             RasUtil.executeRasqlQuery("create collection rastest GreySet",
                     false, false);
@@ -384,7 +384,7 @@ public class RasTester {
     }
 
     public void dropRasCollections() {
-        RasUtil.openDatabase(RasUtil.adminUsername, RasUtil.adminPassword, true);
+        RasUtil.openDatabase(true);
         RasUtil.executeRasqlQuery("drop collection rastest",
                 false, true);
         RasUtil.executeRasqlQuery("drop collection rastest2",
@@ -26,18 +26,43 @@
 
 package org.asqldb;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.asqldb.ras.RasArrayId;
+import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasConnection;
+import org.asqldb.ras.RasEndpoint;
+import org.asqldb.ras.RasResultCache;
 import org.asqldb.ras.RasUtil;
+import org.asqldb.types.MDABinaryData;
+import org.asqldb.util.Metrics;
+import org.hsqldb.HsqlException;
+import org.hsqldb.rowio.RowInputBinary;
+import org.hsqldb.rowio.RowInputBinary180;
+import org.hsqldb.rowio.RowOutputBinary;
+import org.hsqldb.rowio.RowOutputBinary180;
+import org.hsqldb.types.Type;
+import org.hsqldb.types.Types;
 import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
+import rasj.RasGMArray;
 import rasj.RasMArrayByte;
 import rasj.RasMArrayDouble;
 import rasj.RasMArrayInteger;
+import rasj.RasMInterval;
 
 /**
  * Run SQL/MDA select tests.
@@ -70,6 +95,142 @@ public class SelectTest extends BaseTest {
         assertEquals(d.length, 3);
     }
     
+    /**
+     * Test the binary form in which arrays are sent over the HSQL protocol.
+     */
+    @Test
+    public void testBinaryTransfer() throws SQLException, IOException {
+        Object dbag = executeQuerySingleResult("select c.a from RASTEST1 as c");
+        MDABinaryData data = MDABinaryData.fromRas(RasUtil.head(dbag));
+        assertEquals("[-9999:-9997]", data.getDomain());
+        assertEquals(MDABinaryData.DOUBLE, data.getCellType());
+        
+        Type type = Type.getDefaultMDArrayType(Types.SQL_DOUBLE);
+        RowOutputBinary out = new RowOutputBinary(new byte[16]);
+        out.writeData(type, data);
+        RowInputBinary in = new RowInputBinary(out.toByteArray());
+        in.setMDABinary(true);
+        MDABinaryData read = (MDABinaryData) in.readData(type);
+        
+        assertEquals(data.getDomain(), read.getDomain());
+        assertArrayEquals(new double[]{1.0, 2.3, -9.88832}, (double[]) read.getCells(), 0);
+    }
+
+    /**
+     * Test that CACHED table rows keep storing MDARRAY values as plain oids,
+     * as in .data files written before the binary transfer form.
+     */
+    @Test
+    public void testCachedRowFormat() throws IOException {
+        final Type type = Type.getDefaultMDArrayType(Types.SQL_DOUBLE);
+        final Type[] types = new Type[]{Type.SQL_INTEGER, type};
+        final Object[] row = new Object[]{7, 42};
+
+        // the old row format wrote the oid of an MDARRAY as an INTEGER
+        final RowOutputBinary180 old = new RowOutputBinary180(64, 1);
+        old.writeData(Type.SQL_INTEGER, 7);
+        old.writeData(Type.SQL_INTEGER, 42);
+
+        final RowInputBinary180 in = new RowInputBinary180(old.toByteArray());
+        assertArrayEquals(row, in.readData(types));
+
+        final RowOutputBinary180 out = new RowOutputBinary180(64, 1);
+        out.writeData(Type.SQL_INTEGER, 7);
+        out.writeData(type, 42);
+        assertArrayEquals(old.toByteArray(), out.toByteArray());
+        assertEquals(out.getSize(new Object[]{7, 7}, 2, new Type[]{Type.SQL_INTEGER, Type.SQL_INTEGER}),
+                out.getSize(row, 2, types));
+    }
+    
+    /**
+     * Test select of an array column over several rows, which fetches the
+     * arrays of all rows in one batch.
+     */
+    @Test
+    public void testMultiRowArraySelect() throws SQLException {
+        List<Object> res = executeQuerySingleResult("select c.id, c.a from RASTEST3 as c order by c.id", 2);
+        assertEquals(4, res.size());
+        assertEquals(2, res.get(0));
+        assertEquals(2, ((RasGMArray) RasUtil.head(res.get(1))).getArray().length);
+        assertEquals(3, res.get(2));
+        assertEquals(3, ((RasGMArray) RasUtil.head(res.get(3))).getArray().length);
+    }
+    
+    /**
+     * Test that arrays fetched in the background while the scan continues
+     * are all filled in before the result is returned.
+     */
+    @Test
+    public void testMultiRowArraySelect_Prefetch() throws SQLException {
+        final int fetchSize = RasUtil.fetchSize;
+        RasUtil.fetchSize = 2;
+        try {
+            executeQuery("set session mdarray prefetch 1");
+            List<Object> res = executeQuerySingleResult("select c.a from RASTEST3 as c, RASTEST3 as d", 1);
+            assertEquals(4, res.size());
+            for (Object o : res) {
+                assertTrue(RasUtil.head(o) instanceof RasGMArray);
+            }
+        } finally {
+            RasUtil.fetchSize = fetchSize;
+            executeQuery("set session mdarray prefetch " + RasUtil.prefetchDepth);
+        }
+    }
+
+    /**
+     * Test that rows stored on disk once the result exceeds the memory rows
+     * limit get their arrays and evaluated expressions.
+     */
+    @Test
+    public void testMultiRowArraySelect_ResultMemoryRows() throws SQLException {
+        final int fetchSize = RasUtil.fetchSize;
+        RasUtil.fetchSize = 2;
+        try {
+            executeQuery("set session result memory rows 1");
+            List<Object> res = executeQuerySingleResult("select c.a from RASTEST3 as c, RASTEST3 as d", 1);
+            assertEquals(4, res.size());
+            for (Object o : res) {
+                assertNotNull(o);
+                assertFalse(o instanceof Integer);
+            }
+            res = executeQuerySingleResult(
+                    "select c.id, add_cells(c.a) from RASTEST3 as c, RASTEST3 as d order by c.id", 2);
+            assertEquals(8, res.size());
+            for (int i = 0; i < res.size(); i += 2) {
+                final int id = ((Number) res.get(i)).intValue();
+                assertEquals(id == 2 ? 15 : 10, ((Number) res.get(i + 1)).intValue());
+            }
+        } finally {
+            RasUtil.fetchSize = fetchSize;
+            executeQuery("set session result memory rows 0");
+        }
+    }
+
+    /**
+     * Test that arrays inserted by an open transaction are fetched on its
+     * connection rather than in the background.
+     */
+    @Test
+    public void testMultiRowArraySelect_PrefetchUncommitted() throws SQLException {
+        final int fetchSize = RasUtil.fetchSize;
+        RasUtil.fetchSize = 2;
+        executeQuery("SET AUTOCOMMIT FALSE");
+        try {
+            executeQuery("set session mdarray prefetch 1");
+            assertTrue(executeQuery("insert into RASTEST3(id, a) values (4, MDARRAY[x(0:1)] [1,1])"));
+            List<Object> res = executeQuerySingleResult("select c.a from RASTEST3 as c, RASTEST3 as d", 1);
+            assertEquals(9, res.size());
+            for (Object o : res) {
+                assertTrue(RasUtil.head(o) instanceof RasGMArray);
+            }
+        } finally {
+            executeQuery("ROLLBACK");
+            executeQuery("SET AUTOCOMMIT TRUE");
+            RasUtil.fetchSize = fetchSize;
+            executeQuery("set session mdarray prefetch " + RasUtil.prefetchDepth);
+        }
+    }
+    
     @Test
     public void testSingleArrayEncode() throws SQLException {
         Object dbag = executeQuerySingleResult("select mdarray_encode(c.a, 'PNG') from RASTEST2 as c");
@@ -133,6 +294,226 @@ public class SelectTest extends BaseTest {
         assertEquals(rasqlRes, hsqlRes);
     }
     
+    /**
+     * Test aggregation over several rows, which is evaluated with a single
+     * rasql query over the qualifying arrays.
+     */
+    @Test
+    public void testPredefinedAggregation_MultiRow() throws SQLException {
+        List<Object> res = executeQuerySingleResult(
+                "select add_cells(c.a) from RASTEST3 as c", 1);
+        assertEquals(2, res.size());
+        assertEquals(25, ((Integer) res.get(0)) + ((Integer) res.get(1)));
+
+        res = executeQuerySingleResult(
+                "select add_cells(c.a) from RASTEST3 as c where c.id > 2", 1);
+        assertEquals(1, res.size());
+        assertEquals(10, res.get(0));
+    }
+
+    /**
+     * Test that an MDA predicate in WHERE is evaluated with a single rasql
+     * query over the collection rather than one query per row.
+     */
+    @Test
+    public void testPredefinedAggregation_Where() throws SQLException {
+        final Metrics.Counter queries = Metrics.counter("rasql.queries");
+        final long before = queries.get();
+        List<Object> res = executeQuerySingleResult(
+                "select c.id from RASTEST3 as c where add_cells(c.a) > 12", 1);
+        assertEquals("[2]", res.toString());
+        assertEquals(1, queries.get() - before);
+    }
+
+    /**
+     * Test that EXPLAIN ANALYZE reports the rasql query of an MDA select
+     * expression and the rasql calls the statement made.
+     */
+    @Test
+    public void testExplainAnalyze() throws SQLException {
+        String plan = executeQuerySingleResult(
+                "explain analyze select c.id, add_cells(c.a) from RASTEST3 as c", 1).toString();
+        assertTrue(plan.toLowerCase().contains("rasql=[select add_cells("));
+        assertTrue(plan.contains("rows=[2]"));
+        assertTrue(plan.contains("rasql queries=["));
+    }
+
+    /**
+     * Test MDA select expressions evaluated for several rows concurrently;
+     * the rows keep their order.
+     */
+    @Test
+    public void testPredefinedAggregation_Parallel() throws SQLException {
+        final int parallelism = RasUtil.parallelism;
+        RasUtil.parallelism = 3;
+        try {
+            List<Object> res = executeQuerySingleResult(
+                    "select c.id, add_cells(c.a), max_cells(c.a) from RASTEST3 as c order by c.id", 3);
+            assertEquals("[2, 15, 8, 3, 10, 5]", res.toString());
+        } finally {
+            RasUtil.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Test that MDA select expressions over arrays inserted by an open
+     * transaction are evaluated on its connection.
+     */
+    @Test
+    public void testPredefinedAggregation_ParallelUncommitted() throws SQLException {
+        final int parallelism = RasUtil.parallelism;
+        RasUtil.parallelism = 3;
+        executeQuery("SET AUTOCOMMIT FALSE");
+        try {
+            assertTrue(executeQuery("insert into RASTEST3(id, a) values (4, MDARRAY[x(0:1)] [1,1])"));
+            List<Object> res = executeQuerySingleResult(
+                    "select c.id, add_cells(c.a) from RASTEST3 as c order by c.id", 2);
+            assertEquals("[2, 15, 3, 10, 4, 2]", res.toString());
+        } finally {
+            executeQuery("ROLLBACK");
+            executeQuery("SET AUTOCOMMIT TRUE");
+            RasUtil.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Test more concurrent sessions than there are connections in a pool,
+     * each evaluating MDA select expressions on the worker threads.
+     */
+    @Test
+    public void testPredefinedAggregation_Sessions() throws Exception {
+        final int parallelism = RasUtil.parallelism;
+        RasUtil.parallelism = 3;
+        try {
+            final List<Throwable> errors = new ArrayList<Throwable>();
+            final Thread[] sessions = new Thread[RasUtil.poolSize * 2 + 1];
+            for (int i = 0; i < sessions.length; i++) {
+                sessions[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            final Connection conn = DriverManager.getConnection(jdbcUrl, "SA", "");
+                            try {
+                                final ResultSet rs = conn.createStatement().executeQuery(
+                                        "select add_cells(c.a) from RASTEST3 as c order by c.id");
+                                assertTrue(rs.next());
+                                assertEquals(15, rs.getInt(1));
+                                assertTrue(rs.next());
+                                assertEquals(10, rs.getInt(1));
+                            } finally {
+                                conn.close();
+                            }
+                        } catch (Throwable ex) {
+                            synchronized (errors) {
+                                errors.add(ex);
+                            }
+                        }
+                    }
+                };
+                sessions[i].start();
+            }
+            for (Thread session : sessions) {
+                session.join();
+            }
+            assertEquals("[]", errors.toString());
+        } finally {
+            RasUtil.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Test MDA select expressions over small arrays evaluated in the JVM
+     * give the same results as rasdaman.
+     */
+    @Test
+    public void testPredefinedAggregation_Local() throws SQLException {
+        final String query = "select c.id, add_cells(c.a), max_cells(c.a), "
+                + "add_cells(c.a * 2 + 1) from RASTEST3 as c order by c.id";
+        final int localThreshold = RasUtil.localThreshold;
+        try {
+            RasUtil.localThreshold = 0;
+            final List<Object> remote = executeQuerySingleResult(query, 4);
+
+            RasUtil.localThreshold = Integer.MAX_VALUE;
+            final Metrics.Counter local = Metrics.counter("mda.local_evaluations");
+            final long before = local.get();
+            final List<Object> res = executeQuerySingleResult(query, 4);
+            assertEquals(remote.toString(), res.toString());
+            assertEquals(6, local.get() - before);
+        } finally {
+            RasUtil.localThreshold = localThreshold;
+        }
+    }
+
+    /**
+     * Test that the result cache keeps whitespace in string literals of the
+     * selectors apart and returns copies of the cached arrays.
+     */
+    @Test
+    public void testResultCache() throws Exception {
+        final RasResultCache cache = new RasResultCache(1 << 20);
+        final RasArrayIdSet ids = new RasArrayIdSet();
+        ids.add(new RasArrayId("PUBLIC_RASTEST3_A", 1, "A"));
+        final RasMArrayByte array = new RasMArrayByte(new RasMInterval("[0:2]"));
+        array.setArray(new byte[]{1, 2, 3});
+
+        cache.put("encode(A, \"csv\", \"a  b\")", ids, array);
+        assertTrue(cache.contains(" encode(A,\n \"csv\",  \"a  b\")", ids));
+        assertFalse(cache.contains("encode(A, \"csv\", \"a b\")", ids));
+
+        final RasGMArray cached = (RasGMArray) cache.get("encode(A, \"csv\", \"a  b\")", ids);
+        assertTrue(cached instanceof RasMArrayByte);
+        cached.getArray()[0] = 9;
+        final RasGMArray again = (RasGMArray) cache.get("encode(A, \"csv\", \"a  b\")", ids);
+        assertArrayEquals(new byte[]{1, 2, 3}, again.getArray());
+    }
+
+    /**
+     * Test that a failing rasdaman server is skipped when routing reads
+     * once its circuit breaker is open.
+     */
+    @Test
+    public void testEndpointFailover() throws SQLException {
+        final RasEndpoint down = new RasEndpoint("http://127.0.0.1:1", "RASBASE",
+                RasUtil.username, RasUtil.password, RasUtil.adminUsername, RasUtil.adminPassword, 1, 100);
+        final RasEndpoint up = RasUtil.getEndpoints()[0];
+        for (int i = 0; i < RasUtil.breakerThreshold; i++) {
+            try {
+                down.acquire(false, 1);
+                fail();
+            } catch (HsqlException ex) {
+            }
+        }
+        assertTrue(!down.isAvailable());
+
+        final Metrics.Counter failovers = Metrics.counter("rasql.failovers");
+        final long before = failovers.get();
+        final RasConnection connection = RasEndpoint.acquireRead(new RasEndpoint[]{down, up});
+        try {
+            assertEquals(up, connection.getEndpoint());
+            assertEquals(0, failovers.get() - before);
+        } finally {
+            RasUtil.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Test that rasql metrics are recorded and can be queried with SQL.
+     */
+    @Test
+    public void testMetrics() throws SQLException {
+        executeQuerySingleResult("select c.a from RASTEST1 as c");
+        List<Object> res = executeQuerySingleResult(
+                "select count, p99 from information_schema.system_mda_metrics "
+                + "where metric_name = 'rasql.latency_us'", 2);
+        assertTrue((Long) res.get(0) > 0);
+        assertTrue((Long) res.get(1) > 0);
+        Long queries = (Long) executeQuerySingleResult(
+                "select count from information_schema.system_mda_metrics "
+                + "where metric_name = 'rasql.queries'");
+        assertTrue(queries > 0);
+    }
+
     /**
      * Test general array constructor
      */
@@ -433,6 +814,42 @@ public class SelectTest extends BaseTest {
         assertEquals(110, hi.intValue());
     }
     
+    /**
+     * Test that lo/hi conditions and results are answered by the domain index.
+     */
+    @Test
+    public void testDomainIndex() throws SQLException {
+        final Metrics.Counter queries = Metrics.counter("rasql.queries");
+        final long before = queries.get();
+        List<Object> res = executeQuerySingleResult(
+                "select c.id, hi(c.a, 0) from RASTEST3 as c where hi(c.a, 0) > 1", 2);
+        assertEquals("[3, 2]", res.toString());
+        assertEquals(0, queries.get() - before);
+    }
+    
+    /**
+     * Test that fractional and negative constants in lo/hi conditions are
+     * not truncated by the domain index.
+     */
+    @Test
+    public void testDomainIndexFractional() throws SQLException {
+        List<Object> res = executeQuerySingleResult(
+                "select c.id, hi(c.a, 0) from RASTEST3 as c where hi(c.a, 0) < 1.5", 2);
+        assertEquals("[2, 1]", res.toString());
+        res = executeQuerySingleResult(
+                "select c.id, hi(c.a, 0) from RASTEST3 as c where hi(c.a, 0) >= 1.5", 2);
+        assertEquals("[3, 2]", res.toString());
+        Number count = (Number) executeQuerySingleResult(
+                "select count(c.id) from RASTEST3 as c where lo(c.a, 0) > -0.5");
+        assertEquals(2, count.intValue());
+        count = (Number) executeQuerySingleResult(
+                "select count(c.id) from RASTEST3 as c where lo(c.a, 0) <= -0.5");
+        assertEquals(0, count.intValue());
+        count = (Number) executeQuerySingleResult(
+                "select count(c.id) from RASTEST3 as c where hi(c.a, 0) = 1.5");
+        assertEquals(0, count.intValue());
+    }
+    
     @Test
     public void testName() throws SQLException {
         String name = (String) executeQuerySingleResult(
@@ -28,6 +28,7 @@ package org.asqldb;
 
 import java.sql.SQLException;
 import java.util.List;
+import org.asqldb.ras.RasUtil;
 import org.asqldb.util.AsqldbConnection;
 import org.junit.AfterClass;
 import static org.junit.Assert.*;
@@ -109,6 +110,18 @@ public class UnnestTest extends BaseTest {
         assertEquals("[1.0, -9999, 2.3, -9998, -9.88832, -9997, 11.0, -9999, 21.3, -9998]", o.toString());
     }
     
+    @Test
+    public void testMDArrayUnnestWithLimit() throws SQLException {
+        List<Object> o = executeQuerySingleResult("select v from RASTEST1 as c, UNNEST(c.a) as t(v) limit 2", 1);
+        assertEquals("[1.0, 2.3]", o.toString());
+    }
+
+    @Test
+    public void testMDArrayUnnestWithCondition() throws SQLException {
+        List<Object> o = executeQuerySingleResult("select v from RASTEST1 as c, UNNEST(c.a) as t(v) where v > 2", 1);
+        assertEquals("[2.3, 11.0, 21.3]", o.toString());
+    }
+
     @Test
     public void testMDArrayUnnest2d() throws SQLException {
         List<Object> o = executeQuerySingleResult("select v from RASTEST2 as c, UNNEST(c.a) as t(v)", 1);
@@ -136,6 +149,22 @@ public class UnnestTest extends BaseTest {
                 + "12.0, 13.0, 2, 2, 22.3, 23.3, 2, 3, -92.88832, -93.88832, 3, 2, null, 15.0, 3, 3]", o.toString());
     }
     
+    @Test
+    public void testMDArrayUnnestTiled() throws SQLException {
+        final int tileSize = RasUtil.tileSize;
+        RasUtil.tileSize = 2;
+        try {
+            List<Object> o = executeQuerySingleResult("select v, ord from RASTEST1 as c, UNNEST(c.a) with ordinality as t(v, ord)", 2);
+            assertEquals("[1.0, -9999, 2.3, -9998, -9.88832, -9997, 11.0, -9999, 21.3, -9998]", o.toString());
+
+            o = executeQuerySingleResult("select v,w,x,y from RASTEST2 as c, UNNEST(c.a, c.b) with ordinality as t(v,w,x,y)", 4);
+            assertEquals("[1.0, 11.0, 1, 1, 2.3, 21.3, 1, 2, -9.88832, -91.88832, 1, 3, "
+                    + "12.0, 13.0, 2, 2, 22.3, 23.3, 2, 3, -92.88832, -93.88832, 3, 2, null, 15.0, 3, 3]", o.toString());
+        } finally {
+            RasUtil.tileSize = tileSize;
+        }
+    }
+
     @Test
     public void testArrayNest() throws SQLException {
         List<Object> o = executeQuerySingleResult("select ARRAY (SELECT a.id FROM RASTEST3 as a ORDER BY id), c.b[1] from RASTEST1 as c", 2);
@@ -88,7 +88,7 @@ public class ExpressionAccessorMDA extends ExpressionAccessor implements Express
             final String colName = nodes[LEFT].getValue(session, false).toString();
 
             if (isMDARootNode) {
-                return RasUtil.executeHsqlArrayQuery(colName + index, getRasArrayIds(session));
+                return RasUtil.executeHsqlArrayQuery(session, colName + index, getRasArrayIds(session));
             }
             return colName + index;
         }
@@ -56,15 +56,21 @@ public class ExpressionAggregateMDA extends ExpressionIterationMDA implements Ex
     public Object getValue(final Session session, final boolean isMDARootNode) {
         setRasqlIteratorNames();
         if (nodes != null && nodes.length > 1) {
-            final String condense = String.format("CONDENSE %s OVER %s in %s USING %s",
-                    Tokens.getKeyword(opType), rasqlIteratorName,
-                    nodes[LEFT].getValue(session, false), nodes[RIGHT].getValue(session, false));
+            final String condense = "CONDENSE " + Tokens.getKeyword(opType)
+                    + " OVER " + rasqlIteratorName
+                    + " in " + nodes[LEFT].getValue(session, false)
+                    + " USING " + nodes[RIGHT].getValue(session, false);
 
             if (isMDARootNode) {
-                return RasUtil.executeHsqlArrayQuery(condense, getRasArrayIds(session));
+                return RasUtil.executeHsqlArrayQuery(session, condense, getRasArrayIds(session));
             }
             return condense;
         }
         return null;
     }
+
+    @Override
+    public boolean isMDAPushdown() {
+        return nodes != null && nodes.length > 1;
+    }
 }
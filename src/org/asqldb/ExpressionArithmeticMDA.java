@@ -28,6 +28,7 @@ package org.asqldb;
 
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.asqldb.ras.RasLocalEvaluator;
 import org.asqldb.ras.RasUtil;
 
 import org.hsqldb.Expression;
@@ -67,11 +68,55 @@ public class ExpressionArithmeticMDA extends ExpressionArithmetic {
         }
     }
 
+    private boolean isRasqlOperation() {
+        return !(nodes.length == 0 || nodes.length > 2 ||
+                (nodes.length == 1 && !nodes[LEFT].isExpressionMDA()) ||
+                (nodes.length == 2 && !nodes[LEFT].isExpressionMDA() && !nodes[RIGHT].isExpressionMDA()));
+    }
+
+    @Override
+    public boolean isMDAPushdown() {
+        if (!isRasqlOperation()) {
+            return false;
+        }
+        switch (opType) {
+            case OpTypes.ADD:
+            case OpTypes.SUBTRACT:
+            case OpTypes.MULTIPLY:
+            case OpTypes.DIVIDE:
+            case OpTypes.OVERLAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public boolean isMDALocal() {
+        if (!isRasqlOperation() || nodes.length != 2) {
+            return false;
+        }
+        switch (opType) {
+            case OpTypes.ADD:
+            case OpTypes.SUBTRACT:
+            case OpTypes.MULTIPLY:
+            case OpTypes.DIVIDE:
+                return nodes[LEFT].isMDALocal() && nodes[RIGHT].isMDALocal();
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public Object getMDALocalValue(Session session) {
+        return RasLocalEvaluator.arithmetic(opType,
+                nodes[LEFT].getMDALocalValue(session),
+                nodes[RIGHT].getMDALocalValue(session));
+    }
+
     @Override
     public Object getValue(Session session, boolean isRoot) {
-        if (nodes.length == 0 || nodes.length > 2 ||
-                (nodes.length == 1 && !nodes[LEFT].isExpressionMDA()) ||
-                (nodes.length == 2 && !nodes[LEFT].isExpressionMDA() && !nodes[RIGHT].isExpressionMDA())) {
+        if (!isRasqlOperation()) {
             return super.getValue(session, isRoot);
         }
         switch (opType) {
@@ -113,7 +158,7 @@ public class ExpressionArithmeticMDA extends ExpressionArithmetic {
                 + " " + nodes[RIGHT].getValue(session, false);
 
         if (isRoot) {//we're root, so we will execute the query
-            return RasUtil.executeHsqlArrayQuery(selector, getRasArrayIds(session));
+            return RasUtil.executeHsqlArrayQuery(session, selector, getRasArrayIds(session));
         }
         //someone else will be executing the query, so we just return a rasql string
         //we only need to evaluate the hsql parts
@@ -26,11 +26,13 @@
 
 package org.asqldb;
 
+import java.util.regex.Pattern;
 import org.hsqldb.error.ErrorCode;
+import org.asqldb.ras.RasLocalArray;
 import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.MDAStorage;
 import org.hsqldb.types.Type;
 
-import org.asqldb.ras.RasArrayIdSet;
 import org.asqldb.types.MDADomainType;
 import org.asqldb.types.MDAType;
 import org.hsqldb.Expression;
@@ -44,7 +46,12 @@ import org.hsqldb.types.ArrayType;
  */
 public class ExpressionArrayConstructorMDA extends ExpressionIterationMDA implements ExpressionMDA {
     
-    private Object resultCache = null;
+    /**
+     * Numeric literal in the rendered cell list, to be typed with a suffix.
+     */
+    private static final Pattern NUMBER = Pattern.compile("(\\-?\\d+(\\.\\d+)?)");
+
+    private Integer insertedOid = null;
 
     public ExpressionArrayConstructorMDA(final int type, final Expression domain, final Expression values) {
         super(type);
@@ -80,6 +87,29 @@ public class ExpressionArrayConstructorMDA extends ExpressionIterationMDA implem
         dataType = new MDAType(cellType, domainType);
     }
 
+    /**
+     * A literal of numeric constants can be evaluated in the JVM.
+     */
+    @Override
+    public boolean isMDALocal() {
+        if (insertColumn != null || opType != OpTypes.ARRAY_CONSTRUCTOR_LITERAL) {
+            return false;
+        }
+        for (Expression e : nodes[RIGHT].getNodes()) {
+            if (!e.isMDALocal()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Object getMDALocalValue(final Session session) {
+        final int cellType = RasLocalArray.getCellType(dataType);
+        return RasLocalArray.parseLiteral(getValue(session, false).toString(),
+                cellType < 0 ? RasLocalArray.DOUBLE : cellType);
+    }
+
     @Override
     public Object getValue(final Session session, final boolean isMDARootNode) {
         setRasqlIteratorNames();
@@ -88,29 +118,21 @@ public class ExpressionArrayConstructorMDA extends ExpressionIterationMDA implem
         if (insertColumn == null) {
             switch (opType) {
                 case OpTypes.ARRAY_CONSTRUCTOR_LITERAL:
-                    rasql = String.format("< %s %s >",
-                            nodes[LEFT].getValue(session, false),
-                            nodes[RIGHT].getValue(session, false));
+                    rasql = "< " + nodes[LEFT].getValue(session, false)
+                            + " " + nodes[RIGHT].getValue(session, false) + " >";
                     break;
                 case OpTypes.ARRAY_CONSTRUCTOR_VALUE:
-                    rasql = String.format("(marray %s in %s values %s)", rasqlIteratorName,
-                            nodes[LEFT].getValue(session, false),
-                            nodes[RIGHT].getValue(session, false));
+                    rasql = "(marray " + rasqlIteratorName
+                            + " in " + nodes[LEFT].getValue(session, false)
+                            + " values " + nodes[RIGHT].getValue(session, false) + ")";
                     break;
 
                 default:
                     throw org.hsqldb.error.Error.runtimeError(ErrorCode.U_S0500, "ExpressionRasIndex (type = "+opType+")");
             }
             if (isMDARootNode) {
-                // Cache the result, since it won't change for other rows
-                final RasArrayIdSet rasArrayIds = getRasArrayIds(session);
-                if (!rasArrayIds.isEmpty()) {
-                    return RasUtil.executeHsqlArrayQuery(rasql, rasArrayIds);
-                }
-                if (resultCache == null) {
-                    resultCache = RasUtil.executeHsqlArrayQuery(rasql, rasArrayIds);
-                }
-                return resultCache;
+                // constant arrays are served from the result cache for other rows
+                return RasUtil.executeHsqlArrayQuery(session, rasql, getRasArrayIds(session));
             }
             
         } else {
@@ -119,11 +141,11 @@ public class ExpressionArrayConstructorMDA extends ExpressionIterationMDA implem
             Type type = insertColumn.dataType.collectionBaseType();
             String left = nodes[LEFT].getValue(session, false).toString();
             String right = nodes[RIGHT].getValue(session, false).toString();
-            String insertQuery = "INSERT INTO " + collName + " VALUES ";
+            String insertQuery = "";
             
             if (opType == OpTypes.ARRAY_CONSTRUCTOR_LITERAL) {
                 String suffix = type.getRasqlSuffix();
-                right = right.replaceAll("(\\-?\\d+(\\.\\d+)?)", "$1" + suffix);
+                right = NUMBER.matcher(right).replaceAll("$1" + suffix);
                 insertQuery += "<" + left + " " + right + ">";
                 
             } else if (opType == OpTypes.ARRAY_CONSTRUCTOR_VALUE) {
@@ -143,11 +165,10 @@ public class ExpressionArrayConstructorMDA extends ExpressionIterationMDA implem
                 }
                 insertQuery += "] VALUES " + right;
             }
-            if (resultCache == null) {
-                final Object result = RasUtil.executeRasqlQuery(insertQuery, false, true);
-                resultCache = RasUtil.dbagToOid(result);
+            if (insertedOid == null) {
+                insertedOid = MDAStorage.get().insert(session, collName, insertQuery, null);
             }
-            return resultCache;
+            return insertedOid;
         }
 
         return rasql;
@@ -58,6 +58,34 @@ public class ExpressionLogicalMDA extends ExpressionLogical {
         dataType = Type.SQL_BOOLEAN;
     }
 
+    @Override
+    public boolean isMDAPushdown() {
+        if (nodes.length == 1) {
+            return false;
+        }
+        if (!nodes[LEFT].isExpressionMDA() && !nodes[RIGHT].isExpressionMDA()) {
+            return false;
+        }
+        switch (opType) {
+            case OpTypes.EQUAL :
+            case OpTypes.GREATER_EQUAL :
+            case OpTypes.GREATER :
+            case OpTypes.SMALLER :
+            case OpTypes.SMALLER_EQUAL :
+            case OpTypes.NOT_EQUAL :
+            case OpTypes.AND :
+            case OpTypes.OR :
+                return true;
+            default :
+                return false;
+        }
+    }
+
+    @Override
+    public Object convertMDAPushdownValue(Object value) {
+        return Boolean.valueOf(value.toString());
+    }
+
     @Override
     public Object getValue(Session session, boolean isRoot) {
         if (nodes.length == 1 && !nodes[LEFT].isExpressionMDA()) {
@@ -100,8 +128,8 @@ public class ExpressionLogicalMDA extends ExpressionLogical {
                 + " " + nodes[RIGHT].getValue(session, false);
 
         if (isRoot) {//we're root, so we will execute the query
-            return Boolean.valueOf(RasUtil.executeHsqlArrayQuery(
-                    selector, getRasArrayIds(session)).toString());
+            return convertMDAPushdownValue(RasUtil.executeHsqlArrayQuery(session,
+                    selector, getRasArrayIds(session)));
         }
         //someone else will be executing the query, so we just return a rasql string
         //we only need to evaluate the hsql parts
@@ -66,7 +66,7 @@ public class ExpressionOpMDA extends ExpressionOp {
 
             // this is the rasql root node, so it has to be executed
             if (isRoot) {
-                return RasUtil.executeHsqlArrayQuery(rasqlQuery, getRasArrayIds(session));
+                return RasUtil.executeHsqlArrayQuery(session, rasqlQuery, getRasArrayIds(session));
             }
             return rasqlQuery;
         } else {
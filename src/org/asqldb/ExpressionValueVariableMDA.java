@@ -70,7 +70,7 @@ public class ExpressionValueVariableMDA extends Expression implements Expression
 
         switch (opType) {
             case OpTypes.ARRAY_VALUE_VARIABLE:
-                return String.format(rasqlIteratorName + "[%d]", index);
+                return rasqlIteratorName + "[" + index + "]";
 
             default :
                 throw org.hsqldb.error.Error.runtimeError(ErrorCode.U_S0500, "ExpressionRasValueVariable (type = "+opType+")");
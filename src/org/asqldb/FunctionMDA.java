@@ -25,17 +25,25 @@
  */
 package org.asqldb;
 
+import org.asqldb.ras.RasArrayId;
 import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasCollInfo;
+import org.asqldb.ras.RasLocalArray;
+import org.asqldb.ras.RasLocalEvaluator;
 import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.MDAStorage;
 import org.asqldb.types.MDADimensionType;
 import org.asqldb.types.MDADomainType;
 import org.asqldb.types.MDAType;
 import org.hsqldb.Expression;
+import org.hsqldb.ExpressionColumn;
 import org.hsqldb.FunctionSQL;
+import org.hsqldb.OpTypes;
 import org.hsqldb.Session;
 import org.hsqldb.Tokens;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.MDADomainIndex;
 import org.hsqldb.lib.FrameworkLogger;
 import org.hsqldb.lib.IntKeyIntValueHashMap;
 import org.hsqldb.types.BlobDataID;
@@ -304,14 +312,25 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
                 return getDoubleParamFunctionValue(session, isMDARootNode);
             case FUNC_MDA_LO:
             case FUNC_MDA_HI:
+                if (isMDARootNode) {
+                    final Object bound = getIndexedDomainValue(session);
+                    if (bound != null) {
+                        return bound;
+                    }
+                }
                 return getLoHiValue(session, isMDARootNode);
 
             case FUNC_MDA_SDOM:
+                if (isMDARootNode) {
+                    final Object sdom = getIndexedDomainValue(session);
+                    if (sdom != null) {
+                        return sdom;
+                    }
+                }
                 final String functionCall = "sdom(" + nodes[0].getValue(session, false) + ")";
                 if (isMDARootNode) {
-                    RasMInterval sdom = (RasMInterval) RasUtil.executeHsqlArrayQuery(
-                            functionCall, nodes[0].getRasArrayIds(session));
-                    return RasUtil.toArray(sdom, (MDADomainType) dataType);
+                    return convertMDAPushdownValue(RasUtil.executeHsqlArrayQuery(session,
+                            functionCall, nodes[0].getRasArrayIds(session)));
                 }
                 return functionCall;
 
@@ -327,6 +346,217 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
         }
     }
 
+    @Override
+    public boolean isMDAPushdown() {
+        switch (funcType) {
+            case FUNC_MDA_SDOM:
+            case FUNC_MDA_ADD_CELLS:
+            case FUNC_MDA_ALL_CELLS:
+            case FUNC_MDA_AVG_CELLS:
+            case FUNC_MDA_COUNT_CELLS:
+            case FUNC_MDA_MAX_CELLS:
+            case FUNC_MDA_MIN_CELLS:
+            case FUNC_MDA_SOME_CELLS:
+            case FUNC_MDA_ARCCOS:
+            case FUNC_MDA_ARCSIN:
+            case FUNC_MDA_ARCTAN:
+            case FUNC_MDA_COSH:
+            case FUNC_MDA_SINH:
+            case FUNC_MDA_TANH:
+            case FUNC_MDA_BIT:
+            case FUNC_MDA_COMPLEX:
+            case FUNC_MDA_DIVIDE:
+            case FUNC_MDA_MODULO:
+            case FUNC_MDA_POW:
+            case FUNC_MDA_SHIFT:
+            case FUNC_MDA_EXTEND:
+            case FUNC_MDA_DIV:
+            case FUNC_MDA_SCALE:
+            case FUNC_MDA_LO:
+            case FUNC_MDA_HI:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converts the rasql result of this function to its SQL value.
+     */
+    @Override
+    public Object convertMDAPushdownValue(Object value) {
+        if (value instanceof RasGMArray) {
+            // induced functions over an array
+            return value;
+        }
+        switch (funcType) {
+            case FUNC_MDA_SDOM:
+                return RasUtil.toArray((RasMInterval) value, (MDADomainType) dataType);
+            case FUNC_MDA_ADD_CELLS:
+            case FUNC_MDA_ALL_CELLS:
+            case FUNC_MDA_COUNT_CELLS:
+            case FUNC_MDA_MAX_CELLS:
+            case FUNC_MDA_MIN_CELLS:
+            case FUNC_MDA_SOME_CELLS:
+                if (value instanceof Number) {
+                    return Integer.valueOf(((Number) value).intValue());
+                } else if (value instanceof Boolean) {
+                    return Integer.valueOf(((Boolean) value).booleanValue() ? 1 : 0);
+                }
+                return Integer.valueOf(value.toString());
+            case FUNC_MDA_AVG_CELLS:
+            case FUNC_MDA_ARCCOS:
+            case FUNC_MDA_ARCSIN:
+            case FUNC_MDA_ARCTAN:
+            case FUNC_MDA_COSH:
+            case FUNC_MDA_SINH:
+            case FUNC_MDA_TANH:
+                if (value instanceof Number) {
+                    return Double.valueOf(((Number) value).doubleValue());
+                }
+                return Double.valueOf(value.toString());
+            default:
+                return value;
+        }
+    }
+
+    @Override
+    public Object getMDAPushdownValue(Session session) {
+        final Object domainValue = getIndexedDomainValue(session);
+        if (domainValue != null) {
+            return domainValue;
+        }
+        return super.getMDAPushdownValue(session);
+    }
+
+    /**
+     * @return true for lo(a, d) and hi(a, d) over an MDARRAY column a and a
+     * constant dimension d, which MDADomainIndex can answer for every row.
+     */
+    public boolean isDomainBound() {
+        return (funcType == FUNC_MDA_LO || funcType == FUNC_MDA_HI)
+                && isDomainColumn() && nodes[RIGHT].getType() == OpTypes.VALUE;
+    }
+
+    /**
+     * @return true for lo, false for hi
+     */
+    public boolean isLowBound() {
+        return funcType == FUNC_MDA_LO;
+    }
+
+    /**
+     * @return the MDARRAY column of lo, hi or sdom
+     */
+    public ExpressionColumn getDomainColumn() {
+        return (ExpressionColumn) nodes[LEFT];
+    }
+
+    /**
+     * @return the dimension index of lo or hi
+     */
+    public int getDomainDimension(Session session) {
+        if (nodes[RIGHT].getDataType().isCharacterType()) {
+            return getIndexForName(nodes[RIGHT].getValue(session, false).toString());
+        }
+        return ((Number) nodes[RIGHT].getValue(session, false)).intValue();
+    }
+
+    private boolean isDomainColumn() {
+        return nodes[LEFT] instanceof ExpressionColumn
+                && ((ExpressionColumn) nodes[LEFT]).isMDAColumnFetch();
+    }
+
+    /**
+     * Evaluates sdom, lo or hi of an MDARRAY column with the spatial domain
+     * held by MDADomainIndex, instead of a rasdaman query.
+     * @return the value, or null if it has to be computed by rasdaman
+     */
+    private Object getIndexedDomainValue(Session session) {
+        if (!isDomainColumn() || (funcType != FUNC_MDA_SDOM && !isDomainBound())) {
+            return null;
+        }
+        final RasArrayIdSet ids = nodes[LEFT].getRasArrayIds(session);
+        if (ids.size() != 1 || !ids.hasAllOids()) {
+            return null;
+        }
+        final RasArrayId id = ids.iterator().next();
+        final long[] domain = MDADomainIndex.get(id.getRasColl()).getDomain(session, id.getRasOid());
+        if (funcType == FUNC_MDA_SDOM) {
+            return convertMDAPushdownValue(new RasMInterval(RasCollInfo.formatDomain(domain)));
+        }
+        final int dimension = getDomainDimension(session);
+        if (dimension < 0 || dimension * 2 >= domain.length) {
+            // let rasdaman report the invalid dimension
+            return null;
+        }
+        final long bound = domain[funcType == FUNC_MDA_LO ? dimension * 2 : dimension * 2 + 1];
+        return Integer.valueOf((int) bound);
+    }
+
+    @Override
+    public boolean isMDALocal() {
+        switch (funcType) {
+            case FUNC_MDA_SDOM:
+            case FUNC_MDA_ADD_CELLS:
+            case FUNC_MDA_ALL_CELLS:
+            case FUNC_MDA_AVG_CELLS:
+            case FUNC_MDA_COUNT_CELLS:
+            case FUNC_MDA_MAX_CELLS:
+            case FUNC_MDA_MIN_CELLS:
+            case FUNC_MDA_SOME_CELLS:
+            case FUNC_MDA_ARCCOS:
+            case FUNC_MDA_ARCSIN:
+            case FUNC_MDA_ARCTAN:
+            case FUNC_MDA_COSH:
+            case FUNC_MDA_SINH:
+            case FUNC_MDA_TANH:
+                return nodes[0].isMDALocal();
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public Object getMDALocalValue(Session session) {
+        final Object arg = nodes[0].getMDALocalValue(session);
+        switch (funcType) {
+            case FUNC_MDA_SDOM:
+                if (!(arg instanceof RasLocalArray)) {
+                    throw Error.error(ErrorCode.MDA_NOARRAY, Tokens.T_MDA_SDOM);
+                }
+                return ((RasLocalArray) arg).getSpatialDomain();
+            case FUNC_MDA_ADD_CELLS:
+                return RasLocalEvaluator.condense(RasLocalEvaluator.ADD_CELLS, arg);
+            case FUNC_MDA_ALL_CELLS:
+                return RasLocalEvaluator.condense(RasLocalEvaluator.ALL_CELLS, arg);
+            case FUNC_MDA_AVG_CELLS:
+                return RasLocalEvaluator.condense(RasLocalEvaluator.AVG_CELLS, arg);
+            case FUNC_MDA_COUNT_CELLS:
+                return RasLocalEvaluator.condense(RasLocalEvaluator.COUNT_CELLS, arg);
+            case FUNC_MDA_MAX_CELLS:
+                return RasLocalEvaluator.condense(RasLocalEvaluator.MAX_CELLS, arg);
+            case FUNC_MDA_MIN_CELLS:
+                return RasLocalEvaluator.condense(RasLocalEvaluator.MIN_CELLS, arg);
+            case FUNC_MDA_SOME_CELLS:
+                return RasLocalEvaluator.condense(RasLocalEvaluator.SOME_CELLS, arg);
+            case FUNC_MDA_ARCCOS:
+                return RasLocalEvaluator.function(RasLocalEvaluator.ARCCOS, arg);
+            case FUNC_MDA_ARCSIN:
+                return RasLocalEvaluator.function(RasLocalEvaluator.ARCSIN, arg);
+            case FUNC_MDA_ARCTAN:
+                return RasLocalEvaluator.function(RasLocalEvaluator.ARCTAN, arg);
+            case FUNC_MDA_COSH:
+                return RasLocalEvaluator.function(RasLocalEvaluator.COSH, arg);
+            case FUNC_MDA_SINH:
+                return RasLocalEvaluator.function(RasLocalEvaluator.SINH, arg);
+            case FUNC_MDA_TANH:
+                return RasLocalEvaluator.function(RasLocalEvaluator.TANH, arg);
+            default:
+                throw Error.runtimeError(ErrorCode.U_S0500, "FunctionMDA");
+        }
+    }
+
     private Object getConversionFunctionValue(Session session) {
         final Object argValue = nodes[0].getValue(session, false);
         final String argString = (argValue instanceof Object[])
@@ -337,19 +567,19 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
         switch (funcType) {
             case FUNC_MDA_TIFF:
                 log.info("Executing function tiff: nodes[0] = " + nodes[0]);
-                return RasUtil.executeHsqlArrayQuery("tiff(" + argString + ")", ".tiff", rasArrayIds);
+                return RasUtil.executeHsqlArrayQuery(session, "tiff(" + argString + ")", ".tiff", rasArrayIds);
             case FUNC_MDA_PNG:
                 log.info("Executing function png: nodes[0] = " + nodes[0]);
-                return RasUtil.executeHsqlArrayQuery("png(" + argString + ")", ".png", rasArrayIds);
+                return RasUtil.executeHsqlArrayQuery(session, "png(" + argString + ")", ".png", rasArrayIds);
             case FUNC_MDA_CSV:
                 log.info("Executing function csv: nodes[0] = " + nodes[0]);
-                return RasUtil.executeHsqlArrayQuery("csv(" + argString + ")", ".csv", rasArrayIds);
+                return RasUtil.executeHsqlArrayQuery(session, "csv(" + argString + ")", ".csv", rasArrayIds);
             case FUNC_MDA_JPEG:
                 log.info("Executing function jpeg: nodes[0] = " + nodes[0]);
-                return RasUtil.executeHsqlArrayQuery("jpeg(" + argString + ")", ".jpeg", rasArrayIds);
+                return RasUtil.executeHsqlArrayQuery(session, "jpeg(" + argString + ")", ".jpeg", rasArrayIds);
             case FUNC_MDA_BMP:
                 log.info("Executing function bmp: nodes[0] = " + nodes[0]);
-                return RasUtil.executeHsqlArrayQuery("bmp(" + argString + ")", ".bmp", rasArrayIds);
+                return RasUtil.executeHsqlArrayQuery(session, "bmp(" + argString + ")", ".bmp", rasArrayIds);
             case FUNC_MDA_ENCODE:
                 log.info("Executing function encode: nodes[0] = " + nodes[0]);
 
@@ -360,7 +590,7 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
                 String field = rasArrayIds.stringifyIdentifier();
                 final String rasql = "select encode(" + argString + ", \"" + format + "\") from "
                         + rasArrayIds.stringifyRasColls() + " WHERE " + rasArrayIds.stringifyOids();
-                return RasUtil.executeRasqlQuery(rasql, false);
+                return RasUtil.executeRasqlQuery(session, rasql, false, false);
             default:
                 throw Error.runtimeError(ErrorCode.U_S0500, "FunctionRas");
 
@@ -369,7 +599,6 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
 
     private Object getSingleParamFunctionValue(final Session session, boolean isMDARootNode) {
         final Object argValue = nodes[0].getValue(session, false);
-        boolean isInt = true;
         String function = null;
         switch (funcType) {
             case FUNC_MDA_ADD_CELLS:
@@ -380,7 +609,6 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
                 break;
             case FUNC_MDA_AVG_CELLS:
                 function = Tokens.T_MDA_AVG_CELLS;
-                isInt = false;
                 break;
             case FUNC_MDA_COUNT_CELLS:
                 function = Tokens.T_MDA_COUNT_CELLS;
@@ -396,52 +624,38 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
                 break;
             case FUNC_MDA_ARCCOS:
                 function = Tokens.T_MDA_ARCCOS;
-                isInt = false;
                 break;
             case FUNC_MDA_ARCSIN:
                 function = Tokens.T_MDA_ARCSIN;
-                isInt = false;
                 break;
             case FUNC_MDA_ARCTAN:
                 function = Tokens.T_MDA_ARCTAN;
-                isInt = false;
                 break;
             case FUNC_MDA_COSH:
                 function = Tokens.T_MDA_COSH;
-                isInt = false;
                 break;
             case FUNC_MDA_SINH:
                 function = Tokens.T_MDA_SINH;
-                isInt = false;
                 break;
             case FUNC_MDA_TANH:
                 function = Tokens.T_MDA_TANH;
-                isInt = false;
                 break;
         }
         if (funcType == FUNC_MDA_DECODE) {
             if (insertColumn != null) {
                 if (argValue != null && argValue instanceof BlobDataID) {
-                    final BlobDataID blob = (BlobDataID) argValue;
-                    final byte[] bis = blob.getBytes(session, 0, (int) blob.length(session));
-                    final RasGMArray blobArray = RasUtil.convertBlobToArray(bis);
-                    final String rasql = "INSERT INTO " + insertColumn.getRasdamanCollectionName() + " VALUES decode($1)";
-                    final Object result = RasUtil.executeRasqlQuery(rasql, true, true, blobArray);
-                    return RasUtil.dbagToOid(result);
+                    // the engine reads the BLOB in chunks when it transfers it
+                    return MDAStorage.get().insert(session,
+                            insertColumn.getRasdamanCollectionName(), "decode($1)", argValue);
                 }
             }
         } else if (function != null) {
-            final String functionCall = String.format("%s(%s)", function, argValue);
+            final String functionCall = function + "(" + argValue + ")";
             if (!isMDARootNode) {
                 return functionCall;
             }
-            final String ret = RasUtil.executeHsqlArrayQuery(functionCall,
-                    nodes[0].getRasArrayIds(session)).toString();
-            if (isInt) {
-                return Integer.valueOf(ret);
-            } else {
-                return Double.valueOf(ret);
-            }
+            return convertMDAPushdownValue(RasUtil.executeHsqlArrayQuery(session, functionCall,
+                    nodes[0].getRasArrayIds(session)));
         }
         throw Error.runtimeError(ErrorCode.U_S0500, "Required: aggregate function");
     }
@@ -493,11 +707,11 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
             } else {
                 right = nodes[RIGHT].getValue(session, false).toString();
             }
-            final String functionCall = String.format("%s(%s, %s)", function, left, right);
+            final String functionCall = function + "(" + left + ", " + right + ")";
             if (!isMDARootNode) {
                 return functionCall;
             }
-            return RasUtil.executeHsqlArrayQuery(functionCall, getRasArrayIds(session));
+            return RasUtil.executeHsqlArrayQuery(session, functionCall, getRasArrayIds(session));
         }
         throw Error.runtimeError(ErrorCode.U_S0500, "Required: aggregate function. found: " + funcType);
     }
@@ -526,9 +740,9 @@ public class FunctionMDA extends FunctionSQL implements ExpressionMDA {
                 index = (Integer) nodes[RIGHT].getValue(session, false);
             }
             String left = nodes[LEFT].getValue(session, false).toString();
-            String rasql = String.format("sdom(%s)[%d].%s", left, index, function);
+            String rasql = "sdom(" + left + ")[" + index + "]." + function;
             if (isMDARootNode) {
-                ret = RasUtil.executeHsqlArrayQuery(rasql, getRasArrayIds(session));
+                ret = RasUtil.executeHsqlArrayQuery(session, rasql, getRasArrayIds(session));
             } else {
                 ret = rasql;
             }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import org.asqldb.storage.MDAStorage;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+
+/**
+ * Collects the arrays referenced by a block of result rows, so that they can
+ * be fetched with one rasql query per collection instead of one query per
+ * row. Each registered array is written into the given slot of the row data
+ * once the batch is flushed.
+ * <p>
+ * Blocks of rows can also be flushed in the background with
+ * {@link #flushAsync(Session, int)}, so that the scan continues while the
+ * arrays are transferred; the row slots must not be read before
+ * {@link #flush(Session)} has returned. The background fetches run on
+ * pooled connections outside the session transaction, so they are only
+ * used while the session has no open rasdaman write transaction; they
+ * observe the deadline and the cancellation of the current statement.
+ *
+ * @author Dimitar Misev
+ */
+public class RasArrayBatch {
+
+    private final int batchSize;
+
+    /**
+     * Pending fetches, grouped by rasdaman collection.
+     */
+    private final Map<String, List<Slot>> pending = new LinkedHashMap<String, List<Slot>>();
+    private int size = 0;
+
+    /**
+     * Background fetches that have not been waited for, oldest first.
+     */
+    private final LinkedList<Future<Object>> inFlight = new LinkedList<Future<Object>>();
+
+    public RasArrayBatch() {
+        this(RasUtil.fetchSize);
+    }
+
+    /**
+     * @param batchSize number of rows after which the batch should be flushed
+     */
+    public RasArrayBatch(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Register an array to be fetched into row[index] on the next flush.
+     */
+    public void add(RasArrayId id, Object[] row, int index) {
+        List<Slot> slots = pending.get(id.getRasColl());
+        if (slots == null) {
+            slots = new ArrayList<Slot>();
+            pending.put(id.getRasColl(), slots);
+        }
+        row[index] = null;
+        slots.add(new Slot(id.getRasOid(), row, index));
+        ++size;
+    }
+
+    /**
+     * @return number of arrays waiting to be fetched
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if the batch has reached its size and should be flushed
+     */
+    public boolean isFull() {
+        return size >= batchSize;
+    }
+
+    /**
+     * Fetch all pending arrays and fill in the registered row slots.
+     */
+    public void flush() throws HsqlException {
+        flush(null);
+    }
+
+    /**
+     * Fetch all pending arrays on the rasdaman connection of the given
+     * session and fill in the registered row slots; returns once the
+     * background fetches have completed as well.
+     */
+    public void flush(Session session) throws HsqlException {
+        try {
+            if (!isEmpty()) {
+                fetch(session, false, pending);
+                clear();
+            }
+            while (!inFlight.isEmpty()) {
+                RasUtil.await(session, inFlight.removeFirst(), "array fetch");
+            }
+        } finally {
+            cancel();
+        }
+    }
+
+    /**
+     * Start fetching the pending arrays in the background, on connections of
+     * the pool, and continue with an empty batch. If depth fetches are
+     * already in flight, the oldest one is waited for first.
+     *
+     * @param depth maximum number of background fetches; with 0, or while
+     * the session has an open rasdaman write transaction, the arrays are
+     * fetched right away as with {@link #flush(Session)}
+     */
+    public void flushAsync(final Session session, int depth) throws HsqlException {
+        if (depth <= 0 || (session != null && session.hasRasWriteTransaction())) {
+            flush(session);
+            return;
+        }
+        if (isEmpty()) {
+            return;
+        }
+        final Map<String, List<Slot>> slots = new LinkedHashMap<String, List<Slot>>(pending);
+        clear();
+        boolean submitted = false;
+        try {
+            while (inFlight.size() >= depth) {
+                RasUtil.await(session, inFlight.removeFirst(), "array fetch");
+            }
+            inFlight.addLast(RasUtil.getWorkerExecutor().submit(RasQueryStats.wrap(new Callable<Object>() {
+                public Object call() throws HsqlException {
+                    fetch(session, true, slots);
+                    return null;
+                }
+            })));
+            submitted = true;
+        } finally {
+            if (!submitted) {
+                cancel();
+            }
+        }
+    }
+
+    /**
+     * Cancel the background fetches that have not been waited for and
+     * discard the pending arrays.
+     */
+    public void cancel() {
+        while (!inFlight.isEmpty()) {
+            inFlight.removeFirst().cancel(false);
+        }
+        clear();
+    }
+
+    /**
+     * @return number of background fetches that have not been waited for
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * @param session the session executing the statement, or null
+     * @param background true if running on a worker thread, which checks
+     * the deadline of the statement and uses a pooled connection instead of
+     * the session connection
+     */
+    private static void fetch(Session session, boolean background,
+            Map<String, List<Slot>> pending) throws HsqlException {
+        for (Map.Entry<String, List<Slot>> entry : pending.entrySet()) {
+            if (background && session != null) {
+                RasUtil.checkDeadline(session, entry.getKey());
+            }
+            final List<Slot> slots = entry.getValue();
+            final List<Integer> oids = new ArrayList<Integer>(slots.size());
+            for (Slot slot : slots) {
+                oids.add(slot.oid);
+            }
+            final Map<Integer, Object> arrays = MDAStorage.get().fetch(
+                    background ? null : session, entry.getKey(), oids);
+            for (Slot slot : slots) {
+                slot.row[slot.index] = arrays.get(slot.oid);
+            }
+        }
+    }
+
+    public void clear() {
+        pending.clear();
+        size = 0;
+    }
+
+    /**
+     * Target of a fetched array: the OID and the row position it goes to.
+     */
+    private static class Slot {
+
+        final Integer oid;
+        final Object[] row;
+        final int index;
+
+        Slot(Integer oid, Object[] row, int index) {
+            this.oid = oid;
+            this.row = row;
+            this.index = index;
+        }
+    }
+}
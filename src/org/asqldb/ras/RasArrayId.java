@@ -68,6 +68,13 @@ public class RasArrayId {
         return rasOid;
     }
 
+    /**
+     * @return true if the column value is not NULL, i.e. there is an array
+     */
+    public boolean hasRasOid() {
+        return rasOid != null;
+    }
+
     /**
      * @return name of the respective hsql column
      */
@@ -51,6 +51,22 @@ public class RasArrayIdSet extends java.util.LinkedHashSet<RasArrayId> {
         super(clctn);
     }
 
+    /**
+     * @return true if the set is not empty and none of the referenced
+     * column values is NULL, so that a query over the arrays can be run
+     */
+    public boolean hasAllOids() {
+        if (isEmpty()) {
+            return false;
+        }
+        for (RasArrayId id : this) {
+            if (!id.hasRasOid()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Helper method to convert RasArrayIds to a string to be used in the rasql where clause.
      * @return rasql where selector
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import rasj.RasGMArray;
+import rasj.RasMArrayByte;
+import rasj.RasMArrayDouble;
+import rasj.RasMArrayFloat;
+import rasj.RasMArrayInteger;
+import rasj.RasMArrayLong;
+import rasj.RasMArrayShort;
+import rasj.RasMInterval;
+
+/**
+ * Read-only view of the cells of a rasdaman array, backed by the primitive
+ * array that rasj decodes the data into. Cells are read by linear index
+ * without boxing; {@link #get(int)} boxes a single cell where an object is
+ * needed, e.g. when the cell becomes a value of an SQL row.
+ *
+ * @author Dimitar Misev
+ */
+public abstract class RasCellBuffer {
+
+    protected final RasGMArray array;
+
+    protected RasCellBuffer(RasGMArray array) {
+        this.array = array;
+    }
+
+    /**
+     * @param gmarray array returned by rasj
+     * @return a cell buffer over the array, or null if gmarray is not an
+     * array with a primitive cell type.
+     */
+    public static RasCellBuffer wrap(Object gmarray) {
+        if (gmarray instanceof RasMArrayByte) {
+            return new ByteCells((RasGMArray) gmarray, ((RasMArrayByte) gmarray).getArray());
+        } else if (gmarray instanceof RasMArrayShort) {
+            return new ShortCells((RasGMArray) gmarray, ((RasMArrayShort) gmarray).getShortArray());
+        } else if (gmarray instanceof RasMArrayInteger) {
+            return new IntCells((RasGMArray) gmarray, ((RasMArrayInteger) gmarray).getIntArray());
+        } else if (gmarray instanceof RasMArrayLong) {
+            return new LongCells((RasGMArray) gmarray, ((RasMArrayLong) gmarray).getLongArray());
+        } else if (gmarray instanceof RasMArrayFloat) {
+            return new FloatCells((RasGMArray) gmarray, ((RasMArrayFloat) gmarray).getFloatArray());
+        } else if (gmarray instanceof RasMArrayDouble) {
+            return new DoubleCells((RasGMArray) gmarray, ((RasMArrayDouble) gmarray).getDoubleArray());
+        }
+        return null;
+    }
+
+    public RasGMArray getArray() {
+        return array;
+    }
+
+    public RasMInterval spatialDomain() {
+        return array.spatialDomain();
+    }
+
+    /**
+     * @return number of cells
+     */
+    public abstract int length();
+
+    /**
+     * @return the cell at the given linear index, boxed
+     */
+    public abstract Object get(int i);
+
+    /**
+     * @return the cell at the given linear index as a long; only exact if
+     * {@link #isIntegral()}.
+     */
+    public abstract long getLong(int i);
+
+    /**
+     * @return the cell at the given linear index as a double
+     */
+    public abstract double getDouble(int i);
+
+    /**
+     * @return true if the cells are of an integer type
+     */
+    public abstract boolean isIntegral();
+
+    /**
+     * @return a new primitive array with count cells starting at from
+     */
+    public abstract Object copy(int from, int count);
+
+    /**
+     * Compare the cell i of this buffer with the cell j of another buffer.
+     */
+    public int compare(int i, RasCellBuffer other, int j) {
+        if (isIntegral() && other.isIntegral()) {
+            final long a = getLong(i);
+            final long b = other.getLong(j);
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+        return Double.compare(getDouble(i), other.getDouble(j));
+    }
+
+    /**
+     * @return a hash code of the cell at the given linear index, equal for
+     * cells that compare as equal.
+     */
+    public int hashCode(int i) {
+        if (isIntegral()) {
+            final long v = getLong(i);
+            return (int) (v ^ (v >>> 32));
+        }
+        final double d = getDouble(i);
+        if (d == (long) d) {
+            final long v = (long) d;
+            return (int) (v ^ (v >>> 32));
+        }
+        final long bits = Double.doubleToLongBits(d);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    private static final class ByteCells extends RasCellBuffer {
+
+        private final byte[] cells;
+
+        ByteCells(RasGMArray array, byte[] cells) {
+            super(array);
+            this.cells = cells;
+        }
+
+        public int length() {
+            return cells.length;
+        }
+
+        public Object get(int i) {
+            return Byte.valueOf(cells[i]);
+        }
+
+        public long getLong(int i) {
+            return cells[i];
+        }
+
+        public double getDouble(int i) {
+            return cells[i];
+        }
+
+        public boolean isIntegral() {
+            return true;
+        }
+
+        public Object copy(int from, int count) {
+            final byte[] ret = new byte[count];
+            System.arraycopy(cells, from, ret, 0, count);
+            return ret;
+        }
+    }
+
+    private static final class ShortCells extends RasCellBuffer {
+
+        private final short[] cells;
+
+        ShortCells(RasGMArray array, short[] cells) {
+            super(array);
+            this.cells = cells;
+        }
+
+        public int length() {
+            return cells.length;
+        }
+
+        public Object get(int i) {
+            return Short.valueOf(cells[i]);
+        }
+
+        public long getLong(int i) {
+            return cells[i];
+        }
+
+        public double getDouble(int i) {
+            return cells[i];
+        }
+
+        public boolean isIntegral() {
+            return true;
+        }
+
+        public Object copy(int from, int count) {
+            final short[] ret = new short[count];
+            System.arraycopy(cells, from, ret, 0, count);
+            return ret;
+        }
+    }
+
+    private static final class IntCells extends RasCellBuffer {
+
+        private final int[] cells;
+
+        IntCells(RasGMArray array, int[] cells) {
+            super(array);
+            this.cells = cells;
+        }
+
+        public int length() {
+            return cells.length;
+        }
+
+        public Object get(int i) {
+            return Integer.valueOf(cells[i]);
+        }
+
+        public long getLong(int i) {
+            return cells[i];
+        }
+
+        public double getDouble(int i) {
+            return cells[i];
+        }
+
+        public boolean isIntegral() {
+            return true;
+        }
+
+        public Object copy(int from, int count) {
+            final int[] ret = new int[count];
+            System.arraycopy(cells, from, ret, 0, count);
+            return ret;
+        }
+    }
+
+    private static final class LongCells extends RasCellBuffer {
+
+        private final long[] cells;
+
+        LongCells(RasGMArray array, long[] cells) {
+            super(array);
+            this.cells = cells;
+        }
+
+        public int length() {
+            return cells.length;
+        }
+
+        public Object get(int i) {
+            return Long.valueOf(cells[i]);
+        }
+
+        public long getLong(int i) {
+            return cells[i];
+        }
+
+        public double getDouble(int i) {
+            return cells[i];
+        }
+
+        public boolean isIntegral() {
+            return true;
+        }
+
+        public Object copy(int from, int count) {
+            final long[] ret = new long[count];
+            System.arraycopy(cells, from, ret, 0, count);
+            return ret;
+        }
+    }
+
+    private static final class FloatCells extends RasCellBuffer {
+
+        private final float[] cells;
+
+        FloatCells(RasGMArray array, float[] cells) {
+            super(array);
+            this.cells = cells;
+        }
+
+        public int length() {
+            return cells.length;
+        }
+
+        public Object get(int i) {
+            return Float.valueOf(cells[i]);
+        }
+
+        public long getLong(int i) {
+            return (long) cells[i];
+        }
+
+        public double getDouble(int i) {
+            return cells[i];
+        }
+
+        public boolean isIntegral() {
+            return false;
+        }
+
+        public Object copy(int from, int count) {
+            final float[] ret = new float[count];
+            System.arraycopy(cells, from, ret, 0, count);
+            return ret;
+        }
+    }
+
+    private static final class DoubleCells extends RasCellBuffer {
+
+        private final double[] cells;
+
+        DoubleCells(RasGMArray array, double[] cells) {
+            super(array);
+            this.cells = cells;
+        }
+
+        public int length() {
+            return cells.length;
+        }
+
+        public Object get(int i) {
+            return Double.valueOf(cells[i]);
+        }
+
+        public long getLong(int i) {
+            return (long) cells[i];
+        }
+
+        public double getDouble(int i) {
+            return cells[i];
+        }
+
+        public boolean isIntegral() {
+            return false;
+        }
+
+        public Object copy(int from, int count) {
+            final double[] ret = new double[count];
+            System.arraycopy(cells, from, ret, 0, count);
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.hsqldb.HsqlException;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.FrameworkLogger;
+
+/**
+ * Removes arrays and collections from rasdaman in the background, so that
+ * a DELETE or DROP TABLE on a large MDARRAY table does not wait for
+ * rasdaman to free the tiles. The tasks run one after the other on a
+ * single daemon thread, each on a pooled connection in its own
+ * transaction; failures only leave unreferenced arrays behind and are
+ * logged.<p>
+ *
+ * A collection being dropped can't be created again before the drop has
+ * finished, see {@link #awaitDrop(String)}.
+ *
+ * @author Dimitar Misev
+ */
+public class RasCleanupQueue {
+
+    private static final FrameworkLogger log = FrameworkLogger.getLog(RasCleanupQueue.class);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            final Thread ret = new Thread(r, "asqldb-mda-cleanup");
+            ret.setDaemon(true);
+            return ret;
+        }
+    });
+
+    /**
+     * Queued or running collection drops by collection name.
+     */
+    private final Map<String, Future<?>> drops = new HashMap<String, Future<?>>();
+
+    /**
+     * Queue the deletion of the given arrays from a collection.
+     */
+    public void delete(final String coll, final List<Integer> oids) {
+        final List<Integer> copy = new ArrayList<Integer>(oids);
+        executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    RasUtil.deleteArraysNow(null, coll, copy);
+                } catch (RuntimeException ex) {
+                    log.warning("Failed deleting " + copy.size() + " arrays from " + coll, ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue dropping a collection.
+     */
+    public synchronized void drop(final String coll) {
+        drops.put(coll, executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    RasUtil.executeRasqlQuery("drop collection " + coll, true, true);
+                } catch (RuntimeException ex) {
+                    log.warning("Failed dropping collection " + coll, ex);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Wait until a queued drop of the given collection has finished.
+     */
+    public void awaitDrop(String coll) throws HsqlException {
+        final Future<?> task;
+        synchronized (this) {
+            task = drops.get(coll);
+        }
+        if (task == null) {
+            return;
+        }
+        await(task);
+        synchronized (this) {
+            if (drops.get(coll) == task) {
+                drops.remove(coll);
+            }
+        }
+    }
+
+    /**
+     * Wait until all tasks queued so far have finished.
+     */
+    public void await() throws HsqlException {
+        await(executor.submit(new Runnable() {
+            public void run() {
+            }
+        }));
+    }
+
+    private static void await(Future<?> task) throws HsqlException {
+        try {
+            task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, "interrupted");
+        } catch (ExecutionException ex) {
+            // failures are logged by the task itself
+        }
+    }
+}
@@ -25,80 +25,166 @@
  */
 package org.asqldb.ras;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Maintain a catalog of rasdaman collections, to avoid unnecessary rasql check
- * queries.
+ * queries.<p>
+ *
+ * The catalog is shared by all sessions and safe for concurrent use. It is
+ * filled incrementally: a collection that is not known yet is looked up
+ * with a query on that collection alone, and the rasql queries executed by
+ * asqldb keep the entries up to date (see {@link #update(String)}). Details
+ * such as the number of arrays and the spatial domain of a collection are
+ * loaded on first request and cached until a query modifies the collection.
  *
  * @author Dimitar Misev
  */
 public class RasCollCatalog {
 
-    private static final Set<String> colls = new HashSet<String>();
-    public static boolean initialized = false;
-
-    private static final String GET_COLLS_QUERY = "select c from RAS_COLLECTIONNAMES as c";
+    /**
+     * Known collections; a null info is never stored, absent collections
+     * are recorded in {@link #absent}.
+     */
+    private static final ConcurrentMap<String, RasCollInfo> colls = new ConcurrentHashMap<String, RasCollInfo>();
+    private static final ConcurrentMap<String, Boolean> absent = new ConcurrentHashMap<String, Boolean>();
 
-    public static final Pattern CREATE_COLL_PATERN = Pattern.compile("create\\s+collection\\s+([^\\s]+).*");
-    public static final Pattern DROP_COLL_PATERN = Pattern.compile("drop\\s+collection\\s+(.+)");
+    public static final Pattern CREATE_COLL_PATERN = Pattern.compile("\\s*create\\s+collection\\s+(\\S+)(?:\\s+(\\S+))?", Pattern.CASE_INSENSITIVE);
+    public static final Pattern DROP_COLL_PATERN = Pattern.compile("\\s*drop\\s+collection\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+    public static final Pattern INSERT_PATERN = Pattern.compile("\\s*insert\\s+into\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+    public static final Pattern MODIFY_PATERN = Pattern.compile("\\s*(?:delete\\s+from|update)\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
 
-    public static void init() {
-        if (!initialized) {
-            update();
-            initialized = true;
-        }
+    /**
+     * @return true if the collection exists; a collection not known to the
+     * catalog is looked up in rasdaman.
+     */
+    public static boolean contains(String coll) {
+        return get(coll) != null;
     }
 
-    public static void update() {
-        Set<String> currColls = RasUtil.dbagArrayToSetString(
-                RasUtil.executeRasqlQuery(GET_COLLS_QUERY, true));
-        clear();
-        colls.addAll(currColls);
+    /**
+     * @return the catalog entry of the collection, or null if it does not
+     * exist
+     */
+    public static RasCollInfo get(String coll) {
+        if (coll == null) {
+            return null;
+        }
+        RasCollInfo ret = colls.get(coll);
+        if (ret != null || absent.containsKey(coll)) {
+            return ret;
+        }
+        // selects no array, but fails if the collection does not exist
+        final Object res = RasUtil.executeRasqlQuery("select oid(c) from " + coll + " as c where oid(c) < 0", true);
+        if (res == null) {
+            absent.put(coll, Boolean.TRUE);
+            return null;
+        }
+        return add(coll, null);
     }
 
-    public static boolean contains(String coll) {
-        if (coll != null) {
-            return colls.contains(coll);
-        } else {
-            return false;
+    /**
+     * Record an existing collection.
+     * @param coll collection name
+     * @param setType rasdaman set type of the collection, or null if unknown
+     * @return the catalog entry of the collection
+     */
+    public static RasCollInfo add(String coll, String setType) {
+        absent.remove(coll);
+        final RasCollInfo info = new RasCollInfo(coll, setType);
+        final RasCollInfo prev = colls.putIfAbsent(coll, info);
+        if (prev == null) {
+            return info;
+        }
+        if (setType != null) {
+            prev.setSetType(setType);
         }
+        return prev;
     }
 
-    public static void add(String coll) {
+    /**
+     * Record a dropped collection.
+     */
+    public static void remove(String coll) {
         if (coll != null) {
-            colls.add(coll);
+            colls.remove(coll);
+            absent.put(coll, Boolean.TRUE);
         }
     }
 
-    public static void remove(String coll) {
+    /**
+     * Forget what is known about a collection, e.g. after it has been
+     * modified outside of asqldb.
+     */
+    public static void refresh(String coll) {
         if (coll != null) {
             colls.remove(coll);
+            absent.remove(coll);
         }
     }
 
     public static void clear() {
         colls.clear();
+        absent.clear();
     }
 
-    public static void update(String query) {
-        String normQuery = query.toLowerCase().trim();
-        if (normQuery.startsWith("create ")) {
-            RasCollCatalog.add(getName(normQuery, CREATE_COLL_PATERN));
-        } else if (normQuery.startsWith("drop ")) {
-            RasCollCatalog.remove(getName(normQuery, DROP_COLL_PATERN));
+    /**
+     * Update the catalog after the given rasql query has been executed
+     * successfully. Only the beginning of the query is inspected.
+     * @return the collection created, dropped or modified by the query, or
+     * null if the query does not modify a collection
+     */
+    public static String update(String query) {
+        if (query.length() < 6) {
+            return null;
         }
+        final char first = Character.toLowerCase(query.trim().charAt(0));
+        Matcher matcher;
+        switch (first) {
+            case 'c':
+                matcher = CREATE_COLL_PATERN.matcher(query);
+                if (matcher.lookingAt()) {
+                    add(matcher.group(1), matcher.group(2));
+                    return matcher.group(1);
+                }
+                break;
+            case 'd':
+                matcher = DROP_COLL_PATERN.matcher(query);
+                if (matcher.lookingAt()) {
+                    remove(matcher.group(1));
+                    return matcher.group(1);
+                }
+                return modified(query);
+            case 'i':
+                matcher = INSERT_PATERN.matcher(query);
+                if (matcher.lookingAt()) {
+                    final RasCollInfo info = colls.get(matcher.group(1));
+                    if (info != null) {
+                        info.arrayInserted();
+                    }
+                    return matcher.group(1);
+                }
+                break;
+            case 'u':
+                return modified(query);
+            default:
+                break;
+        }
+        return null;
     }
 
-    private static String getName(String query, Pattern pattern) {
-        try {
-            Matcher matcher = CREATE_COLL_PATERN.matcher(query);
+    private static String modified(String query) {
+        final Matcher matcher = MODIFY_PATERN.matcher(query);
+        if (matcher.lookingAt()) {
+            final RasCollInfo info = colls.get(matcher.group(1));
+            if (info != null) {
+                info.arraysModified();
+            }
             return matcher.group(1);
-        } catch (Exception ex) {
-            return null;
         }
+        return null;
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.Iterator;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.odmg.DBag;
+
+/**
+ * Catalog entry of a rasdaman collection, see {@link RasCollCatalog}. The
+ * number of arrays and the spatial domain are loaded on first request and
+ * kept until the collection is modified.
+ *
+ * @author Dimitar Misev
+ */
+public class RasCollInfo {
+
+    private static final int UNKNOWN = -1;
+
+    private final String name;
+    private volatile String setType;
+    private volatile int arrayCount = UNKNOWN;
+    private volatile String spatialDomain;
+
+    RasCollInfo(String name, String setType) {
+        this.name = name;
+        this.setType = setType;
+        if (setType != null) {
+            // a collection known from its create statement is empty
+            arrayCount = 0;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the rasdaman set type of the collection, or null if it is not
+     * known because the collection was not created by this process
+     */
+    public String getSetType() {
+        return setType;
+    }
+
+    void setSetType(String setType) {
+        this.setType = setType;
+    }
+
+    /**
+     * @return the number of arrays in the collection
+     */
+    public int getArrayCount() {
+        int ret = arrayCount;
+        if (ret == UNKNOWN) {
+            final Object res = RasUtil.executeRasqlQuery("select oid(c) from " + name + " as c", false);
+            ret = res instanceof DBag ? ((DBag) res).size() : 0;
+            arrayCount = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the smallest spatial domain enclosing the domains of all
+     * arrays in the collection, e.g. [0:99,0:49], or null if it is empty
+     */
+    public String getSpatialDomain() {
+        String ret = spatialDomain;
+        if (ret == null && getArrayCount() > 0) {
+            final Object res = RasUtil.executeRasqlQuery("select sdom(c) from " + name + " as c", false);
+            if (res instanceof DBag) {
+                long[] hull = null;
+                for (Iterator<?> it = ((DBag) res).iterator(); it.hasNext(); ) {
+                    hull = union(hull, parseDomain(it.next().toString()));
+                }
+                ret = formatDomain(hull);
+            }
+            spatialDomain = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of cells of the spatial domain enclosing all arrays
+     * in the collection, an upper bound of the cells of any of its arrays
+     */
+    public long getMaxCellCount() {
+        final String sdom = getSpatialDomain();
+        if (sdom == null) {
+            return 0;
+        }
+        final long[] domain = parseDomain(sdom);
+        long ret = 1;
+        for (int i = 0; i < domain.length; i += 2) {
+            ret *= domain[i + 1] - domain[i] + 1;
+        }
+        return ret;
+    }
+
+    synchronized void arrayInserted() {
+        if (arrayCount != UNKNOWN) {
+            arrayCount++;
+        }
+        spatialDomain = null;
+    }
+
+    synchronized void arraysModified() {
+        arrayCount = UNKNOWN;
+        spatialDomain = null;
+    }
+
+    /**
+     * @param sdom spatial domain of the form [lo:hi,lo:hi,...]
+     * @return lower and upper bounds, alternating
+     */
+    public static long[] parseDomain(String sdom) {
+        final String s = sdom.trim();
+        if (s.length() < 2 || s.charAt(0) != '[' || s.charAt(s.length() - 1) != ']') {
+            throw Error.error(ErrorCode.MDA_INVALID_PARAMETER, sdom);
+        }
+        final String[] dims = s.substring(1, s.length() - 1).split(",");
+        final long[] ret = new long[dims.length * 2];
+        try {
+            for (int i = 0; i < dims.length; i++) {
+                final int sep = dims[i].indexOf(':');
+                ret[2 * i] = Long.parseLong(dims[i].substring(0, sep).trim());
+                ret[2 * i + 1] = Long.parseLong(dims[i].substring(sep + 1).trim());
+            }
+        } catch (RuntimeException ex) {
+            throw Error.error(ErrorCode.MDA_INVALID_PARAMETER, sdom);
+        }
+        return ret;
+    }
+
+    static long[] union(long[] hull, long[] domain) {
+        if (hull == null) {
+            return domain;
+        }
+        if (hull.length != domain.length) {
+            throw Error.error(ErrorCode.MDA_INVALID_PARAMETER, "arrays of different dimensionality");
+        }
+        for (int i = 0; i < hull.length; i += 2) {
+            hull[i] = Math.min(hull[i], domain[i]);
+            hull[i + 1] = Math.max(hull[i + 1], domain[i + 1]);
+        }
+        return hull;
+    }
+
+    public static String formatDomain(long[] domain) {
+        if (domain == null) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < domain.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(domain[i]).append(':').append(domain[i + 1]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.hsqldb.HsqlException;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.MDADomainIndex;
+import org.hsqldb.lib.FrameworkLogger;
+import org.odmg.Database;
+import org.odmg.ODMGException;
+import org.odmg.OQLQuery;
+import org.odmg.Transaction;
+import rasj.RasClientInternalException;
+import rasj.RasConnectionFailedException;
+import rasj.RasImplementation;
+
+/**
+ * A single connection to a rasdaman server, opened either read-only or with
+ * write access. Connections are handed out by a {@link RasConnectionPool},
+ * and are used by one thread at a time.
+ *
+ * @author Dimitar Misev
+ */
+public class RasConnection {
+
+    private static final FrameworkLogger log = FrameworkLogger.getLog(RasConnection.class);
+
+    /**
+     * Default number of attempts to open a connection to a saturated server.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    private static final Random jitter = new Random();
+
+    private final RasConnectionPool pool;
+    private final RasEndpoint endpoint;
+    private final String url;
+    private final String database;
+    private final String username;
+    private final String password;
+    private final boolean writeAccess;
+
+    private RasImplementation rasImplementation = null;
+    private Database db = null;
+
+    /**
+     * Set when an error indicates that the connection can't be reused.
+     */
+    private boolean broken = false;
+
+    /**
+     * State of a query executed by another thread on behalf of the owner
+     * of the connection; see {@link #cancel()}.
+     */
+    private boolean running = false;
+    private boolean cancelled = false;
+
+    /**
+     * Transaction spanning several queries, started with {@link #begin()};
+     * null if every query runs in its own transaction.
+     */
+    private Transaction transaction = null;
+
+    /**
+     * Collections modified by the open transaction.
+     */
+    private final Set<String> modifiedColls = new HashSet<String>();
+
+    /**
+     * @param pool pool the connection belongs to, which determines the
+     * rasdaman server and the access mode
+     * @param database rasdaman database name
+     * @param username rasdaman user
+     * @param password rasdaman password
+     */
+    public RasConnection(RasConnectionPool pool, String database, String username, String password) {
+        this.pool = pool;
+        this.endpoint = pool.getEndpoint();
+        this.url = endpoint.getUrl();
+        this.database = database;
+        this.username = username;
+        this.password = password;
+        this.writeAccess = pool.isWriteAccess();
+    }
+
+    /**
+     * Open the rasdaman database; a saturated rasdaman server is retried a
+     * few times before giving up.
+     */
+    public void open() throws HsqlException {
+        open(MAX_ATTEMPTS);
+    }
+
+    /**
+     * Open the rasdaman database with at most the given number of attempts,
+     * backing off exponentially with jitter between attempts.
+     */
+    public void open(int maxAttempts) throws HsqlException {
+        if (db != null) {
+            return;
+        }
+        rasImplementation = new RasImplementation(url);
+        rasImplementation.setUserIdentification(username, password);
+        db = rasImplementation.newDatabase();
+        broken = false;
+
+        int attempts = 0;
+        while (true) {
+            try {
+                if (RasUtil.printLog) log.finer("Opening database ...");
+                db.open(database, writeAccess ? Database.OPEN_READ_WRITE : Database.OPEN_READ_ONLY);
+                return;
+            } catch (RasConnectionFailedException ex) {
+                //A connection with a Rasdaman server could not be established
+                //retry shortly unless connection attempts exceeded the maximum
+                //possible connection attempts.
+                attempts = retry(ex, attempts, maxAttempts);
+            } catch (RasClientInternalException ex) {
+                log.warning("Internal ras client exception, " + attempts + " attempts");
+                attempts = retry(ex, attempts, maxAttempts);
+            } catch (ODMGException ex) {
+                if (RasUtil.printLog) log.info("A Rasdaman request could not be fulfilled since no "
+                        + "free Rasdaman server were available.", ex);
+                reset();
+                throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, attempts + " attempts");
+            }
+        }
+    }
+
+    private int retry(Throwable ex, int attempts, int maxAttempts) throws HsqlException {
+        attempts++;
+        if (attempts >= maxAttempts) {
+            reset();
+            throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, url + ", " + attempts + " attempts");
+        }
+        try {
+            Thread.sleep(getBackoff(attempts));
+        } catch (InterruptedException e) {
+            if (RasUtil.printLog) log.error("Thread " + Thread.currentThread().getName()
+                    + " was interrupted while searching a free server.");
+            reset();
+            throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, attempts + " attempts");
+        }
+        return attempts;
+    }
+
+    /**
+     * @return the delay before the next attempt after the given number of
+     * failed attempts: a random time between half and all of
+     * RasUtil.backoffInitial doubled for every attempt, at most
+     * RasUtil.backoffMax
+     */
+    static long getBackoff(int attempts) {
+        final long delay = Math.min(RasUtil.backoffMax,
+                (long) RasUtil.backoffInitial << Math.min(attempts - 1, 30));
+        final int half = (int) (delay / 2);
+        return delay - half + jitter.nextInt(half + 1);
+    }
+
+    /**
+     * Close the rasdaman database; errors are logged and otherwise ignored,
+     * as the connection is discarded anyway.
+     */
+    public void close() {
+        try {
+            if (RasUtil.printLog) log.finer("Closing database ...");
+            if (db != null) {
+                db.close();
+            }
+        } catch (Exception ex) {
+            if (RasUtil.printLog) log.info("Error closing database connection: ", ex);
+        }
+        reset();
+    }
+
+    private void reset() {
+        rasImplementation = null;
+        db = null;
+        transaction = null;
+    }
+
+    public boolean isOpen() {
+        return db != null;
+    }
+
+    /**
+     * @return true if the connection can be handed out again by the pool
+     */
+    public boolean isValid() {
+        return isOpen() && !broken;
+    }
+
+    /**
+     * Mark this connection as unusable, so that the pool discards it when it
+     * is returned.
+     */
+    public void invalidate() {
+        broken = true;
+    }
+
+    /**
+     * Called before a query is executed on this connection by another
+     * thread than its owner.
+     */
+    synchronized void startQuery() {
+        running = true;
+    }
+
+    /**
+     * Called by the thread executing a query when it has ended.
+     * @return true if the query was cancelled meanwhile; the executing
+     * thread must then abort the transaction and return the connection
+     */
+    synchronized boolean endQuery() {
+        running = false;
+        return cancelled;
+    }
+
+    /**
+     * Abandon the running query: the connection is invalidated and handed
+     * over to the thread executing the query, which aborts the transaction
+     * and returns the connection to its pool once rasdaman has answered.
+     * @return false if the query has already ended
+     */
+    synchronized boolean cancel() {
+        if (!running) {
+            return false;
+        }
+        cancelled = true;
+        broken = true;
+        return true;
+    }
+
+    /**
+     * @return true if the connection was invalidated by {@link #cancel()}
+     * rather than by a failure of the rasdaman server
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public RasEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the pool the connection is returned to
+     */
+    public RasConnectionPool getPool() {
+        return pool;
+    }
+
+    public boolean isWriteAccess() {
+        return writeAccess;
+    }
+
+    public Transaction newTransaction() {
+        return rasImplementation.newTransaction();
+    }
+
+    /**
+     * Start a transaction in which all following queries on this connection
+     * are executed, until {@link #commit()} or {@link #abort()}.
+     */
+    public void begin() throws HsqlException {
+        if (transaction != null) {
+            return;
+        }
+        try {
+            final Transaction tr = newTransaction();
+            tr.begin();
+            transaction = tr;
+        } catch (RuntimeException ex) {
+            invalidate();
+            throw Error.error(ex, ErrorCode.MDA_CONNECTION, "begin transaction");
+        }
+    }
+
+    /**
+     * @return true if a transaction started with {@link #begin()} is open
+     */
+    public boolean inTransaction() {
+        return transaction != null;
+    }
+
+    public void commit() throws HsqlException {
+        if (transaction == null) {
+            return;
+        }
+        final Transaction tr = transaction;
+        transaction = null;
+        try {
+            tr.commit();
+        } catch (RuntimeException ex) {
+            invalidate();
+            discardModified();
+            throw Error.error(ex, ErrorCode.MDA_CONNECTION, "commit transaction");
+        }
+        modifiedColls.clear();
+    }
+
+    /**
+     * Abort the open transaction; errors are logged and otherwise ignored.
+     */
+    public void abort() {
+        if (transaction == null) {
+            return;
+        }
+        final Transaction tr = transaction;
+        transaction = null;
+        try {
+            tr.abort();
+        } catch (RuntimeException ex) {
+            invalidate();
+            if (RasUtil.printLog) log.info("Error aborting transaction: ", ex);
+        }
+        discardModified();
+    }
+
+    /**
+     * Record a collection modified within the open transaction. The catalog
+     * is updated as soon as a query has executed, so that the following
+     * queries of the transaction see the change; if the transaction does not
+     * commit, what is known about the collection is discarded.
+     */
+    void modified(String coll) {
+        if (transaction != null && coll != null) {
+            modifiedColls.add(coll);
+        }
+    }
+
+    /**
+     * Forget the catalog entries, cached results and domain indexes of the
+     * collections modified by a transaction that did not commit.
+     */
+    private void discardModified() {
+        for (String coll : modifiedColls) {
+            RasCollCatalog.refresh(coll);
+            RasUtil.invalidateCache(coll);
+            MDADomainIndex.dropped(coll);
+        }
+        modifiedColls.clear();
+    }
+
+    public OQLQuery newOQLQuery() {
+        return rasImplementation.newOQLQuery();
+    }
+
+    @Override
+    public String toString() {
+        return url + "/" + database + (writeAccess ? " (rw)" : " (ro)");
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.LinkedList;
+import org.hsqldb.HsqlException;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+
+/**
+ * A bounded pool of rasdaman connections of one access mode. Connections are
+ * opened lazily up to the maximum size; when all are checked out, callers
+ * wait for one to be returned until the checkout timeout expires.
+ *
+ * @author Dimitar Misev
+ */
+public class RasConnectionPool {
+
+    private final RasEndpoint endpoint;
+    private final String database;
+    private final String username;
+    private final String password;
+    private final boolean writeAccess;
+    private final int maxSize;
+    private final long timeout;
+
+    private final LinkedList<RasConnection> idle = new LinkedList<RasConnection>();
+
+    /**
+     * Number of connections currently open, idle or checked out.
+     */
+    private int size = 0;
+
+    /**
+     * @param maxSize maximum number of open connections
+     * @param timeout maximum time in milliseconds to wait for a free
+     * connection
+     */
+    public RasConnectionPool(RasEndpoint endpoint, String database, String username, String password,
+            boolean writeAccess, int maxSize, long timeout) {
+        this.endpoint = endpoint;
+        this.database = database;
+        this.username = username;
+        this.password = password;
+        this.writeAccess = writeAccess;
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Check out a connection; it must be returned with
+     * {@link #release(RasConnection)} when no longer needed.
+     */
+    public RasConnection acquire() throws HsqlException {
+        return acquire(RasConnection.MAX_ATTEMPTS);
+    }
+
+    /**
+     * Check out a connection; a new connection is opened with at most the
+     * given number of attempts. Failures to open a connection are reported
+     * to the circuit breaker of the endpoint.
+     */
+    public RasConnection acquire(int attempts) throws HsqlException {
+        synchronized (this) {
+            final long deadline = System.currentTimeMillis() + timeout;
+            while (idle.isEmpty() && size >= maxSize) {
+                final long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw Error.error(ErrorCode.MDA_UNAVAILABLE,
+                            "no free connection in the " + (writeAccess ? "read-write" : "read-only") + " pool");
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, "interrupted");
+                }
+            }
+            if (!idle.isEmpty()) {
+                return idle.removeFirst();
+            }
+            ++size;
+        }
+
+        // open outside of the lock, as it may take several attempts
+        final RasConnection ret = new RasConnection(this, database, username, password);
+        try {
+            ret.open(attempts);
+        } catch (HsqlException ex) {
+            discard();
+            endpoint.failed();
+            throw ex;
+        }
+        endpoint.succeeded();
+        return ret;
+    }
+
+    /**
+     * Return a checked out connection; it is validated and closed instead of
+     * being reused if it is not usable anymore.
+     */
+    public void release(RasConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        if (connection.isValid()) {
+            synchronized (this) {
+                idle.addFirst(connection);
+                notifyAll();
+            }
+        } else {
+            connection.close();
+            discard();
+        }
+    }
+
+    private synchronized void discard() {
+        --size;
+        notifyAll();
+    }
+
+    /**
+     * Close all idle connections; connections that are checked out are
+     * not affected and can be returned to the pool as usual.
+     */
+    public void close() {
+        final LinkedList<RasConnection> toClose;
+        synchronized (this) {
+            toClose = new LinkedList<RasConnection>(idle);
+            size -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        for (RasConnection connection : toClose) {
+            connection.close();
+        }
+    }
+
+    public RasEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public boolean isWriteAccess() {
+        return writeAccess;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of connections currently open
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return number of open connections that are not checked out
+     */
+    public synchronized int idleSize() {
+        return idle.size();
+    }
+}
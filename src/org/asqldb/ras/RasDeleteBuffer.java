@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.asqldb.storage.MDAStorage;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+
+/**
+ * The arrays of the rows deleted by a transaction, collected while the
+ * transaction commits and removed from rasdaman with one rasql query per
+ * collection and {@link RasUtil#fetchSize} arrays when it has committed.
+ *
+ * @author Dimitar Misev
+ */
+public class RasDeleteBuffer {
+
+    private final Map<String, List<Integer>> oids = new LinkedHashMap<String, List<Integer>>();
+
+    public void add(String coll, Integer oid) {
+        List<Integer> list = oids.get(coll);
+        if (list == null) {
+            list = new ArrayList<Integer>();
+            oids.put(coll, list);
+        }
+        list.add(oid);
+    }
+
+    public boolean isEmpty() {
+        return oids.isEmpty();
+    }
+
+    /**
+     * Delete the buffered arrays and clear the buffer.
+     * @param session the session whose transaction deleted the rows
+     */
+    public void flush(Session session) throws HsqlException {
+        try {
+            for (Map.Entry<String, List<Integer>> entry : oids.entrySet()) {
+                MDAStorage.get().delete(session, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            oids.clear();
+        }
+    }
+
+    public void clear() {
+        oids.clear();
+    }
+}
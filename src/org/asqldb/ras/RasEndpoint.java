@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.asqldb.util.Metrics;
+import org.hsqldb.HsqlException;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+
+/**
+ * A rasdaman server, i.e. a rasmgr serving the configured database, with
+ * its pools of read-only and read-write connections.
+ * <p>
+ * Every endpoint has a circuit breaker: after
+ * {@link RasUtil#breakerThreshold} consecutive failures to open a
+ * connection or to use it, the endpoint is skipped for
+ * {@link RasUtil#breakerCooldown} milliseconds, after which a single
+ * request is let through to probe the server again. Requests to an
+ * endpoint with an open breaker fail right away instead of retrying.
+ * <p>
+ * Read connections are routed by {@link #acquireRead(RasEndpoint[])} to the
+ * available endpoint with the fewest checked out connections; all endpoints
+ * must serve the same database. Writes always go to the first endpoint, as
+ * the OIDs of inserted arrays are only known there.
+ *
+ * @author Dimitar Misev
+ */
+public class RasEndpoint {
+
+    private static final Metrics.Counter FAILOVERS = Metrics.counter("rasql.failovers");
+    private static final Metrics.Counter BREAKER_OPENS = Metrics.counter("rasql.breaker_opens");
+
+    /**
+     * Spreads read connections over endpoints with the same load.
+     */
+    private static final AtomicInteger nextEndpoint = new AtomicInteger();
+
+    private final String url;
+    private final RasConnectionPool readPool;
+    private final RasConnectionPool writePool;
+
+    /**
+     * Read-only connections of the worker threads, separate from the
+     * connections of the sessions, so that background queries can not take
+     * the connections a session is waiting for and vice versa.
+     */
+    private final RasConnectionPool backgroundPool;
+
+    /**
+     * Number of connections currently checked out of the pools.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * Consecutive failures; the breaker is open once this reaches
+     * RasUtil.breakerThreshold.
+     */
+    private int failures = 0;
+    private long openUntil = 0;
+    private boolean probing = false;
+
+    /**
+     * @param url rasdaman server url, e.g. http://127.0.0.1:7001
+     */
+    public RasEndpoint(String url, String database, String username, String password,
+            String adminUsername, String adminPassword, int poolSize, long poolTimeout) {
+        this.url = url;
+        this.readPool = new RasConnectionPool(this, database, username, password, false, poolSize, poolTimeout);
+        this.writePool = new RasConnectionPool(this, database, adminUsername, adminPassword, true, poolSize, poolTimeout);
+        this.backgroundPool = new RasConnectionPool(this, database, username, password, false, poolSize, poolTimeout);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public RasConnectionPool getPool(boolean writeAccess) {
+        return writeAccess ? writePool : readPool;
+    }
+
+    /**
+     * @return the pool of read-only connections used by the worker threads
+     */
+    public RasConnectionPool getBackgroundPool() {
+        return backgroundPool;
+    }
+
+    /**
+     * @return number of connections currently checked out
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return false if the breaker of this endpoint is open
+     */
+    public synchronized boolean isAvailable() {
+        if (failures < RasUtil.breakerThreshold) {
+            return true;
+        }
+        return !probing && System.currentTimeMillis() >= openUntil;
+    }
+
+    /**
+     * Check a request in; once the cooldown of an open breaker has passed
+     * only one request is let through until it succeeds or fails.
+     */
+    private synchronized boolean enter() {
+        if (failures < RasUtil.breakerThreshold) {
+            return true;
+        }
+        if (probing || System.currentTimeMillis() < openUntil) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    synchronized void succeeded() {
+        failures = 0;
+        probing = false;
+    }
+
+    synchronized void failed() {
+        probing = false;
+        ++failures;
+        if (failures >= RasUtil.breakerThreshold) {
+            if (failures == RasUtil.breakerThreshold || openUntil <= System.currentTimeMillis()) {
+                BREAKER_OPENS.increment();
+            }
+            openUntil = System.currentTimeMillis() + RasUtil.breakerCooldown;
+        }
+    }
+
+    /**
+     * Check out a connection of this endpoint; it must be returned with
+     * {@link #release(RasConnection)}.
+     * @param attempts number of attempts to open a new connection
+     */
+    public RasConnection acquire(boolean writeAccess, int attempts) throws HsqlException {
+        return acquire(getPool(writeAccess), attempts);
+    }
+
+    private RasConnection acquire(RasConnectionPool pool, int attempts) throws HsqlException {
+        if (!enter()) {
+            throw Error.error(ErrorCode.MDA_UNAVAILABLE, url + " is unavailable");
+        }
+        outstanding.incrementAndGet();
+        try {
+            return pool.acquire(attempts);
+        } catch (HsqlException ex) {
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                // the pool was saturated, nothing is known about the server
+                probing = false;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Return a connection checked out of this endpoint; a connection that
+     * was invalidated by a communication error counts as a failure of the
+     * endpoint.
+     */
+    public void release(RasConnection connection) {
+        outstanding.decrementAndGet();
+        if (connection.isValid()) {
+            succeeded();
+        } else if (!connection.isCancelled()) {
+            failed();
+        }
+        connection.getPool().release(connection);
+    }
+
+    /**
+     * Close the idle connections of all pools.
+     */
+    public void close() {
+        readPool.close();
+        writePool.close();
+        backgroundPool.close();
+    }
+
+    /**
+     * Check out a read-only connection of the available endpoint with the
+     * fewest checked out connections. If the connection can't be opened,
+     * the next endpoint is tried right away; only the last available
+     * endpoint is retried with backoff.
+     */
+    public static RasConnection acquireRead(RasEndpoint[] endpoints) throws HsqlException {
+        return acquireRead(endpoints, false);
+    }
+
+    /**
+     * Check out a read-only connection as {@link #acquireRead(RasEndpoint[])}
+     * does, from the background pools if background is true.
+     */
+    public static RasConnection acquireRead(RasEndpoint[] endpoints, boolean background) throws HsqlException {
+        final int n = endpoints.length;
+        final boolean[] tried = new boolean[n];
+        final int start = (nextEndpoint.getAndIncrement() & Integer.MAX_VALUE) % n;
+        HsqlException last = null;
+        while (true) {
+            RasEndpoint best = null;
+            int bestIndex = -1;
+            int remaining = 0;
+            for (int i = 0; i < n; i++) {
+                final int j = (start + i) % n;
+                final RasEndpoint endpoint = endpoints[j];
+                if (tried[j] || !endpoint.isAvailable()) {
+                    continue;
+                }
+                ++remaining;
+                if (best == null || endpoint.getOutstanding() < best.getOutstanding()) {
+                    best = endpoint;
+                    bestIndex = j;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            tried[bestIndex] = true;
+            try {
+                return best.acquire(background ? best.backgroundPool : best.readPool,
+                        remaining == 1 ? RasConnection.MAX_ATTEMPTS : 1);
+            } catch (HsqlException ex) {
+                last = ex;
+                FAILOVERS.increment();
+            }
+        }
+        if (last != null) {
+            throw last;
+        }
+        throw Error.error(ErrorCode.MDA_UNAVAILABLE, "no rasdaman server available");
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.nio.ByteBuffer;
+import org.asqldb.types.MDAType;
+import org.hsqldb.HsqlException;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.types.Type;
+import rasj.RasGMArray;
+import rasj.RasMArrayByte;
+import rasj.RasMArrayDouble;
+import rasj.RasMArrayFloat;
+import rasj.RasMArrayInteger;
+import rasj.RasMArrayLong;
+import rasj.RasMArrayShort;
+import rasj.RasMInterval;
+
+/**
+ * An array held in the JVM for {@link RasLocalEvaluator}: the spatial domain
+ * and the cells in row-major order, widened to doubles so that the kernels
+ * are plain loops over a primitive buffer. The cell type is kept to convert
+ * results back to the rasj array rasdaman would have returned.
+ *
+ * @author Dimitar Misev
+ */
+public class RasLocalArray {
+
+    /**
+     * Cell types, in the order in which rasdaman promotes them in induced
+     * operations.
+     */
+    public static final int BOOL = 0;
+    public static final int CHAR = 1;
+    public static final int SHORT = 2;
+    public static final int LONG = 3;
+    public static final int FLOAT = 4;
+    public static final int DOUBLE = 5;
+
+    private static final int[] CELL_SIZES = {1, 1, 2, 4, 4, 8};
+
+    /**
+     * Lower and upper bound of each dimension, alternating.
+     */
+    final long[] domain;
+    final double[] cells;
+    final int cellType;
+
+    RasLocalArray(long[] domain, double[] cells, int cellType) {
+        this.domain = domain;
+        this.cells = cells;
+        this.cellType = cellType;
+    }
+
+    public int getCellType() {
+        return cellType;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    public String getDomain() {
+        return RasCollInfo.formatDomain(domain);
+    }
+
+    public RasMInterval getSpatialDomain() {
+        return new RasMInterval(getDomain());
+    }
+
+    /**
+     * @return true if the arrays have the same extent in every dimension,
+     * as required for binary induced operations
+     */
+    boolean hasSameExtent(RasLocalArray other) {
+        if (domain.length != other.domain.length) {
+            return false;
+        }
+        for (int i = 0; i < domain.length; i += 2) {
+            if (domain[i + 1] - domain[i] != other.domain[i + 1] - other.domain[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the cell type of an MDARRAY type, or -1 if arrays of this type
+     * cannot be evaluated locally
+     */
+    public static int getCellType(Type type) {
+        if (!(type instanceof MDAType)) {
+            return -1;
+        }
+        final String rasqlType = ((MDAType) type).getDataType().getRasqlType();
+        return getCellType(rasqlType);
+    }
+
+    /**
+     * @param rasqlType rasql base type (bool, char, ...) or set type (BoolSet, GreySet2, ...)
+     * @return the corresponding cell type, or -1 if it is not supported
+     */
+    public static int getCellType(String rasqlType) {
+        if (rasqlType == null) {
+            return -1;
+        }
+        final String t = rasqlType.toLowerCase();
+        if (t.startsWith("bool")) {
+            return BOOL;
+        } else if (t.startsWith("char") || t.startsWith("grey") || t.startsWith("octet")) {
+            return CHAR;
+        } else if (t.startsWith("short")) {
+            return SHORT;
+        } else if (t.startsWith("long") || t.startsWith("ulong")) {
+            return LONG;
+        } else if (t.startsWith("float")) {
+            return FLOAT;
+        } else if (t.startsWith("double")) {
+            return DOUBLE;
+        }
+        return -1;
+    }
+
+    public static int getCellSize(int cellType) {
+        return CELL_SIZES[cellType];
+    }
+
+    /**
+     * Convert an array returned by rasj.
+     * @throws HsqlException MDA_UNSUPPORTED if the cell type is not atomic
+     */
+    public static RasLocalArray fromRas(RasGMArray array) throws HsqlException {
+        final long[] domain = RasCollInfo.parseDomain(array.spatialDomain().toString());
+        final double[] cells;
+        final int cellType;
+        if (array instanceof RasMArrayDouble) {
+            cellType = DOUBLE;
+            final double[] src = ((RasMArrayDouble) array).getDoubleArray();
+            cells = new double[src.length];
+            System.arraycopy(src, 0, cells, 0, src.length);
+        } else if (array instanceof RasMArrayFloat) {
+            cellType = FLOAT;
+            final float[] src = ((RasMArrayFloat) array).getFloatArray();
+            cells = new double[src.length];
+            for (int i = 0; i < src.length; i++) {
+                cells[i] = src[i];
+            }
+        } else if (array instanceof RasMArrayInteger) {
+            cellType = LONG;
+            final int[] src = ((RasMArrayInteger) array).getIntArray();
+            cells = new double[src.length];
+            for (int i = 0; i < src.length; i++) {
+                cells[i] = src[i];
+            }
+        } else if (array instanceof RasMArrayLong) {
+            cellType = LONG;
+            final long[] src = ((RasMArrayLong) array).getLongArray();
+            cells = new double[src.length];
+            for (int i = 0; i < src.length; i++) {
+                cells[i] = src[i];
+            }
+        } else if (array instanceof RasMArrayShort) {
+            cellType = SHORT;
+            final short[] src = ((RasMArrayShort) array).getShortArray();
+            cells = new double[src.length];
+            for (int i = 0; i < src.length; i++) {
+                cells[i] = src[i];
+            }
+        } else if (array instanceof RasMArrayByte) {
+            final String schema = array.getBaseTypeSchema();
+            cellType = schema != null && schema.contains("bool") ? BOOL : CHAR;
+            final byte[] src = array.getArray();
+            cells = new double[src.length];
+            for (int i = 0; i < src.length; i++) {
+                cells[i] = src[i] & 0xFF;
+            }
+        } else {
+            throw Error.error(ErrorCode.MDA_UNSUPPORTED, array.getClass().getName());
+        }
+        return new RasLocalArray(domain, cells, cellType);
+    }
+
+    /**
+     * @return the rasj array with the cells converted back to the cell type
+     */
+    public RasGMArray toRas() {
+        final RasMInterval sdom = getSpatialDomain();
+        final RasGMArray ret;
+        switch (cellType) {
+            case DOUBLE:
+                ret = new RasMArrayDouble(sdom);
+                break;
+            case FLOAT:
+                ret = new RasMArrayFloat(sdom);
+                break;
+            case LONG:
+                ret = new RasMArrayInteger(sdom);
+                break;
+            case SHORT:
+                ret = new RasMArrayShort(sdom);
+                break;
+            default:
+                ret = new RasMArrayByte(sdom);
+        }
+        ret.setArray(toBytes());
+        return ret;
+    }
+
+    /**
+     * @return the cells in the rasj byte order of the cell type
+     */
+    public byte[] toBytes() {
+        final ByteBuffer buf = ByteBuffer.allocate(cells.length * CELL_SIZES[cellType]);
+        switch (cellType) {
+            case DOUBLE:
+                for (int i = 0; i < cells.length; i++) {
+                    buf.putDouble(cells[i]);
+                }
+                break;
+            case FLOAT:
+                for (int i = 0; i < cells.length; i++) {
+                    buf.putFloat((float) cells[i]);
+                }
+                break;
+            case LONG:
+                for (int i = 0; i < cells.length; i++) {
+                    buf.putInt((int) cells[i]);
+                }
+                break;
+            case SHORT:
+                for (int i = 0; i < cells.length; i++) {
+                    buf.putShort((short) cells[i]);
+                }
+                break;
+            default:
+                for (int i = 0; i < cells.length; i++) {
+                    buf.put((byte) cells[i]);
+                }
+        }
+        return buf.array();
+    }
+
+    /**
+     * Parse a rasql array literal, e.g. <code>&lt;[0:1,0:1] 1d,2d,3d,4d&gt;</code>;
+     * rasql type suffixes of the cell values are ignored.
+     * @param literal rasql array literal
+     * @param cellType cell type of the array
+     * @throws HsqlException MDA_UNSUPPORTED if the string is not a literal
+     */
+    public static RasLocalArray parseLiteral(String literal, int cellType) throws HsqlException {
+        final String s = literal.trim();
+        if (!s.startsWith("<") || !s.endsWith(">")) {
+            throw Error.error(ErrorCode.MDA_UNSUPPORTED, literal);
+        }
+        final int sdomEnd = s.indexOf(']');
+        if (sdomEnd < 0) {
+            throw Error.error(ErrorCode.MDA_INVALID_PARAMETER, literal);
+        }
+        final long[] domain = RasCollInfo.parseDomain(s.substring(1, sdomEnd + 1));
+        final String[] values = s.substring(sdomEnd + 1, s.length() - 1).split(",");
+
+        long count = 1;
+        for (int i = 0; i < domain.length; i += 2) {
+            count *= domain[i + 1] - domain[i] + 1;
+        }
+        if (count != values.length) {
+            throw Error.error(ErrorCode.MDA_INVALID_PARAMETER, literal);
+        }
+
+        final double[] cells = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            cells[i] = parseCell(values[i].trim());
+        }
+        return new RasLocalArray(domain, cells, cellType);
+    }
+
+    /**
+     * @param literal rasql array expression
+     * @return the spatial domain of a rasql array literal, lower and upper
+     * bounds alternating, or null if the expression is not a literal
+     */
+    public static long[] parseLiteralDomain(String literal) throws HsqlException {
+        final String s = literal.trim();
+        if (!s.startsWith("<[") || !s.endsWith(">")) {
+            return null;
+        }
+        final int sdomEnd = s.indexOf(']');
+        if (sdomEnd < 0) {
+            return null;
+        }
+        return RasCollInfo.parseDomain(s.substring(1, sdomEnd + 1));
+    }
+
+    private static double parseCell(String value) throws HsqlException {
+        if ("true".equalsIgnoreCase(value)) {
+            return 1;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return 0;
+        }
+        String v = value;
+        if (v.length() > 1 && Character.isLetter(v.charAt(v.length() - 1))) {
+            v = v.substring(0, v.length() - 1);
+        }
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException ex) {
+            throw Error.error(ErrorCode.MDA_INVALID_PARAMETER, value);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import org.asqldb.storage.MDAStorage;
+import org.asqldb.util.Metrics;
+import org.hsqldb.Expression;
+import org.hsqldb.HsqlException;
+import org.hsqldb.OpTypes;
+import org.hsqldb.Session;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+
+/**
+ * Evaluates MDA expressions on arrays in the JVM instead of sending a rasql
+ * query to rasdaman. Induced arithmetic, the cell condensers and the induced
+ * trigonometric functions are supported; an expression tree qualifies if
+ * {@link Expression#isMDALocal()} holds for its root.<p>
+ *
+ * The kernels run over the primitive cell buffers of {@link RasLocalArray}
+ * with the operation selected outside of the loop, so that every loop is a
+ * simple counted loop the JIT can unroll and vectorise.<p>
+ *
+ * An MDA root node is evaluated locally if the storage engine cannot
+ * evaluate queries, or if every array it refers to is either in the result
+ * cache or in a collection whose arrays have at most {@link RasUtil#localThreshold}
+ * cells.
+ *
+ * @author Dimitar Misev
+ */
+public class RasLocalEvaluator {
+
+    public static final int ADD_CELLS = 0;
+    public static final int AVG_CELLS = 1;
+    public static final int COUNT_CELLS = 2;
+    public static final int MAX_CELLS = 3;
+    public static final int MIN_CELLS = 4;
+    public static final int SOME_CELLS = 5;
+    public static final int ALL_CELLS = 6;
+
+    public static final int ARCCOS = 0;
+    public static final int ARCSIN = 1;
+    public static final int ARCTAN = 2;
+    public static final int COSH = 3;
+    public static final int SINH = 4;
+    public static final int TANH = 5;
+
+    private static final Metrics.Counter EVALUATIONS = Metrics.counter("mda.local_evaluations");
+
+    /**
+     * Decide whether an MDA root node is evaluated in the JVM.
+     * @param root MDA root node
+     * @param rasArrayIds arrays of the current row
+     */
+    public static boolean isLocal(Expression root, RasArrayIdSet rasArrayIds) {
+        if (!root.isMDALocal()) {
+            return false;
+        }
+        if (!MDAStorage.get().supportsQueries()) {
+            return true;
+        }
+        if (RasUtil.localThreshold <= 0) {
+            return false;
+        }
+        for (RasArrayId id : rasArrayIds) {
+            if (RasUtil.isArrayCached(id)) {
+                continue;
+            }
+            final RasCollInfo info = RasCollCatalog.get(id.getRasColl());
+            if (info == null || info.getMaxCellCount() > RasUtil.localThreshold) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluate an MDA root node for which {@link #isLocal(Expression, RasArrayIdSet)} holds.
+     * @return the value rasdaman would return for the root node query
+     */
+    public static Object evaluate(Session session, Expression root) throws HsqlException {
+        EVALUATIONS.increment();
+        RasQueryStats.recordLocalEvaluation();
+        final Object ret = root.getMDALocalValue(session);
+        if (ret instanceof RasLocalArray) {
+            return ((RasLocalArray) ret).toRas();
+        }
+        return ret;
+    }
+
+    /**
+     * Induced binary operation; either operand may be a scalar.
+     * @param opType OpTypes.ADD, SUBTRACT, MULTIPLY or DIVIDE
+     */
+    public static Object arithmetic(int opType, Object left, Object right) throws HsqlException {
+        if (left instanceof RasLocalArray && right instanceof RasLocalArray) {
+            final RasLocalArray a = (RasLocalArray) left;
+            final RasLocalArray b = (RasLocalArray) right;
+            if (!a.hasSameExtent(b)) {
+                throw Error.error(ErrorCode.MDA_INVALID_PARAMETER,
+                        "arrays of different extent: " + a.getDomain() + ", " + b.getDomain());
+            }
+            final double[] ret = new double[a.cells.length];
+            arrayArray(opType, a.cells, b.cells, ret);
+            return new RasLocalArray(a.domain, ret, resultType(opType, a.cellType, b.cellType));
+        } else if (left instanceof RasLocalArray) {
+            final RasLocalArray a = (RasLocalArray) left;
+            final double[] ret = new double[a.cells.length];
+            arrayScalar(opType, a.cells, toDouble(right), ret);
+            return new RasLocalArray(a.domain, ret, resultType(opType, a.cellType, scalarType(right)));
+        } else if (right instanceof RasLocalArray) {
+            final RasLocalArray b = (RasLocalArray) right;
+            final double[] ret = new double[b.cells.length];
+            scalarArray(opType, toDouble(left), b.cells, ret);
+            return new RasLocalArray(b.domain, ret, resultType(opType, scalarType(left), b.cellType));
+        }
+        final double[] ret = new double[1];
+        arrayScalar(opType, new double[]{toDouble(left)}, toDouble(right), ret);
+        if (resultType(opType, scalarType(left), scalarType(right)) >= RasLocalArray.FLOAT) {
+            return Double.valueOf(ret[0]);
+        }
+        return Long.valueOf((long) ret[0]);
+    }
+
+    /**
+     * Condense all cells of an array.
+     * @param op one of ADD_CELLS .. ALL_CELLS
+     */
+    public static Object condense(int op, Object value) throws HsqlException {
+        final RasLocalArray a = toArray(value);
+        final double[] c = a.cells;
+        final boolean integral = a.cellType < RasLocalArray.FLOAT;
+        switch (op) {
+            case ADD_CELLS: {
+                double sum = 0;
+                for (int i = 0; i < c.length; i++) {
+                    sum += c[i];
+                }
+                return integral ? (Object) Long.valueOf((long) sum) : Double.valueOf(sum);
+            }
+            case AVG_CELLS: {
+                double sum = 0;
+                for (int i = 0; i < c.length; i++) {
+                    sum += c[i];
+                }
+                return Double.valueOf(c.length == 0 ? 0 : sum / c.length);
+            }
+            case COUNT_CELLS: {
+                int count = 0;
+                for (int i = 0; i < c.length; i++) {
+                    count += c[i] != 0 ? 1 : 0;
+                }
+                return Integer.valueOf(count);
+            }
+            case MAX_CELLS: {
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < c.length; i++) {
+                    max = Math.max(max, c[i]);
+                }
+                return integral ? (Object) Long.valueOf((long) max) : Double.valueOf(max);
+            }
+            case MIN_CELLS: {
+                double min = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < c.length; i++) {
+                    min = Math.min(min, c[i]);
+                }
+                return integral ? (Object) Long.valueOf((long) min) : Double.valueOf(min);
+            }
+            case SOME_CELLS: {
+                for (int i = 0; i < c.length; i++) {
+                    if (c[i] != 0) {
+                        return Boolean.TRUE;
+                    }
+                }
+                return Boolean.FALSE;
+            }
+            case ALL_CELLS: {
+                for (int i = 0; i < c.length; i++) {
+                    if (c[i] == 0) {
+                        return Boolean.FALSE;
+                    }
+                }
+                return Boolean.TRUE;
+            }
+            default:
+                throw Error.runtimeError(ErrorCode.U_S0500, "RasLocalEvaluator");
+        }
+    }
+
+    /**
+     * Induced unary function; the result has double cells.
+     * @param func one of ARCCOS .. TANH
+     */
+    public static Object function(int func, Object value) throws HsqlException {
+        if (!(value instanceof RasLocalArray)) {
+            final double[] ret = new double[1];
+            apply(func, new double[]{toDouble(value)}, ret);
+            return Double.valueOf(ret[0]);
+        }
+        final RasLocalArray a = (RasLocalArray) value;
+        final double[] ret = new double[a.cells.length];
+        apply(func, a.cells, ret);
+        return new RasLocalArray(a.domain, ret, RasLocalArray.DOUBLE);
+    }
+
+    private static void arrayArray(int opType, double[] a, double[] b, double[] r) {
+        final int n = r.length;
+        switch (opType) {
+            case OpTypes.ADD:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] + b[i];
+                }
+                break;
+            case OpTypes.SUBTRACT:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] - b[i];
+                }
+                break;
+            case OpTypes.MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] * b[i];
+                }
+                break;
+            case OpTypes.DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] / b[i];
+                }
+                break;
+            default:
+                throw Error.runtimeError(ErrorCode.U_S0500, "RasLocalEvaluator");
+        }
+    }
+
+    private static void arrayScalar(int opType, double[] a, double s, double[] r) {
+        final int n = r.length;
+        switch (opType) {
+            case OpTypes.ADD:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] + s;
+                }
+                break;
+            case OpTypes.SUBTRACT:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] - s;
+                }
+                break;
+            case OpTypes.MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] * s;
+                }
+                break;
+            case OpTypes.DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] / s;
+                }
+                break;
+            default:
+                throw Error.runtimeError(ErrorCode.U_S0500, "RasLocalEvaluator");
+        }
+    }
+
+    private static void scalarArray(int opType, double s, double[] b, double[] r) {
+        final int n = r.length;
+        switch (opType) {
+            case OpTypes.ADD:
+                for (int i = 0; i < n; i++) {
+                    r[i] = s + b[i];
+                }
+                break;
+            case OpTypes.SUBTRACT:
+                for (int i = 0; i < n; i++) {
+                    r[i] = s - b[i];
+                }
+                break;
+            case OpTypes.MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    r[i] = s * b[i];
+                }
+                break;
+            case OpTypes.DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    r[i] = s / b[i];
+                }
+                break;
+            default:
+                throw Error.runtimeError(ErrorCode.U_S0500, "RasLocalEvaluator");
+        }
+    }
+
+    private static void apply(int func, double[] a, double[] r) {
+        final int n = r.length;
+        switch (func) {
+            case ARCCOS:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Math.acos(a[i]);
+                }
+                break;
+            case ARCSIN:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Math.asin(a[i]);
+                }
+                break;
+            case ARCTAN:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Math.atan(a[i]);
+                }
+                break;
+            case COSH:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Math.cosh(a[i]);
+                }
+                break;
+            case SINH:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Math.sinh(a[i]);
+                }
+                break;
+            case TANH:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Math.tanh(a[i]);
+                }
+                break;
+            default:
+                throw Error.runtimeError(ErrorCode.U_S0500, "RasLocalEvaluator");
+        }
+    }
+
+    /**
+     * Cell type of an induced operation: the wider operand type, and at
+     * least float for a division.
+     */
+    private static int resultType(int opType, int left, int right) {
+        final int ret = Math.max(Math.max(left, right), RasLocalArray.SHORT);
+        if (opType == OpTypes.DIVIDE && ret < RasLocalArray.FLOAT) {
+            return RasLocalArray.DOUBLE;
+        }
+        return ret;
+    }
+
+    private static int scalarType(Object value) {
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            return RasLocalArray.LONG;
+        }
+        return RasLocalArray.DOUBLE;
+    }
+
+    private static double toDouble(Object value) throws HsqlException {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue() ? 1 : 0;
+        }
+        throw Error.error(ErrorCode.MDA_NOARRAY, String.valueOf(value));
+    }
+
+    private static RasLocalArray toArray(Object value) throws HsqlException {
+        if (value instanceof RasLocalArray) {
+            return (RasLocalArray) value;
+        }
+        throw Error.error(ErrorCode.MDA_NOARRAY, String.valueOf(value));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import org.asqldb.storage.MDAStorage;
+import org.asqldb.util.Metrics;
+import org.hsqldb.Expression;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+
+/**
+ * Semi-join of the rows of a table with the arrays of one of its MDARRAY
+ * columns that satisfy a set of MDA predicates. Instead of evaluating the
+ * predicates with one rasql query per row, they are evaluated with a single
+ * query over the whole collection,
+ * <code>select oid(a) from coll as a where &lt;predicates&gt;</code>,
+ * and a row qualifies if the OID of its array is in the result.
+ * <p>
+ * The result is computed once per statement execution of a session, as the
+ * contents of the collection may change between statements.
+ *
+ * @author Dimitar Misev
+ */
+public class RasOidFilter {
+
+    private static final Metrics.Counter QUERIES = Metrics.counter("mda.oid_filter_queries");
+
+    private final String coll;
+    private final String field;
+    private final int columnIndex;
+    private Expression[] conditions = new Expression[0];
+
+    private final Map<Session, Result> results = new WeakHashMap<Session, Result>();
+
+    /**
+     * @param coll rasdaman collection of the MDARRAY column
+     * @param field name of the MDARRAY column, used as collection iterator
+     * @param columnIndex index of the column in the table rows
+     */
+    public RasOidFilter(String coll, String field, int columnIndex) {
+        this.coll = coll;
+        this.field = field;
+        this.columnIndex = columnIndex;
+    }
+
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    /**
+     * Add an MDA predicate, which must be row invariant and refer only to
+     * the MDARRAY column of this filter.
+     */
+    public void add(Expression condition) {
+        final Expression[] ret = new Expression[conditions.length + 1];
+        System.arraycopy(conditions, 0, ret, 0, conditions.length);
+        ret[conditions.length] = condition;
+        conditions = ret;
+    }
+
+    /**
+     * @return true if the array in the given row satisfies the predicates;
+     * rows with a NULL array never do
+     */
+    public boolean test(Session session, Object[] rowData) throws HsqlException {
+        final Object oid = rowData[columnIndex];
+        if (oid == null) {
+            return false;
+        }
+        return getOids(session).contains(oid);
+    }
+
+    private Set<Integer> getOids(Session session) throws HsqlException {
+        final long timestamp = session.getActionTimestamp();
+        synchronized (results) {
+            final Result result = results.get(session);
+            if (result != null && result.timestamp == timestamp) {
+                return result.oids;
+            }
+        }
+        QUERIES.increment();
+        final Set<Integer> oids = MDAStorage.get().select(session, coll, field, getCondition(session));
+        synchronized (results) {
+            results.put(session, new Result(timestamp, oids));
+        }
+        return oids;
+    }
+
+    /**
+     * @return the rasql condition of the predicates
+     */
+    public String getCondition(Session session) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < conditions.length; i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            sb.append('(').append(conditions[i].getValue(session, false)).append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the rasql query of the filter, for EXPLAIN PLAN
+     */
+    public String describe(Session session) {
+        return "per statement, rasql=[SELECT oid(" + field + ") FROM " + coll
+                + " AS " + field + " WHERE " + getCondition(session) + "]";
+    }
+
+    private static final class Result {
+
+        final long timestamp;
+        final Set<Integer> oids;
+
+        Result(long timestamp, Set<Integer> oids) {
+            this.timestamp = timestamp;
+            this.oids = oids;
+        }
+    }
+}
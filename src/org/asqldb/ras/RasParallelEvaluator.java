@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+
+/**
+ * Evaluates the MDA expressions of consecutive result rows concurrently on
+ * the worker threads, each of which runs its rasql query on a pooled
+ * connection. Every result is written into the given slot of its row;
+ * at most parallelism evaluations are in flight, and they complete in the
+ * order they were submitted.
+ * <p>
+ * The pooled connections are outside the session transaction, so the
+ * evaluator must not be used while the session has an open rasdaman write
+ * transaction. The results are waited for under the deadline of the
+ * current statement of the session, and the evaluations still in flight
+ * are cancelled when waiting fails.
+ *
+ * @author Dimitar Misev
+ */
+public class RasParallelEvaluator {
+
+    private final Session session;
+
+    private final int parallelism;
+
+    /**
+     * Submitted evaluations that have not been written to their rows yet,
+     * oldest first.
+     */
+    private final LinkedList<Slot> inFlight = new LinkedList<Slot>();
+
+    /**
+     * @param session the session executing the statement, or null
+     */
+    public RasParallelEvaluator(Session session) {
+        this(session, RasUtil.parallelism);
+    }
+
+    /**
+     * @param session the session executing the statement, or null
+     * @param parallelism maximum number of evaluations in flight
+     */
+    public RasParallelEvaluator(Session session, int parallelism) {
+        this.session = session;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Submit an evaluation whose result goes to row[index]; if parallelism
+     * evaluations are in flight already, the oldest one is completed first.
+     */
+    public void submit(Callable<Object> task, Object[] row, int index) throws HsqlException {
+        while (inFlight.size() >= parallelism) {
+            complete(inFlight.removeFirst());
+        }
+        row[index] = null;
+        inFlight.addLast(new Slot(RasUtil.getWorkerExecutor().submit(RasQueryStats.wrap(task)), row, index));
+    }
+
+    /**
+     * Wait for all submitted evaluations and fill in their row slots.
+     */
+    public void await() throws HsqlException {
+        while (!inFlight.isEmpty()) {
+            complete(inFlight.removeFirst());
+        }
+    }
+
+    /**
+     * Cancel the evaluations whose results have not been written yet.
+     */
+    public void cancel() {
+        while (!inFlight.isEmpty()) {
+            inFlight.removeFirst().task.cancel(false);
+        }
+    }
+
+    /**
+     * @return number of evaluations whose results have not been written yet
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    public boolean isEmpty() {
+        return inFlight.isEmpty();
+    }
+
+    private void complete(Slot slot) throws HsqlException {
+        boolean done = false;
+        try {
+            slot.row[slot.index] = RasUtil.await(session, slot.task, "mda evaluation");
+            done = true;
+        } finally {
+            if (!done) {
+                cancel();
+            }
+        }
+    }
+
+    /**
+     * A running evaluation and the row position its result goes to.
+     */
+    private static class Slot {
+
+        final Future<Object> task;
+        final Object[] row;
+        final int index;
+
+        Slot(Future<Object> task, Object[] row, int index) {
+            this.task = task;
+            this.row = row;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rasql queries issued on behalf of a single statement, collected while
+ * it is executed by EXPLAIN ANALYZE. Unlike the global {@link org.asqldb.util.Metrics}
+ * these are not affected by the queries of other sessions.<p>
+ *
+ * The statistics are attached to the thread executing the statement; tasks
+ * that run rasql queries for it on other threads are wrapped with
+ * {@link #wrap(Callable)} so that their queries are counted as well.
+ *
+ * @author Dimitar Misev
+ */
+public class RasQueryStats {
+
+    private static final ThreadLocal<RasQueryStats> current = new ThreadLocal<RasQueryStats>();
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong failedQueries = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong queryTime = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong localEvaluations = new AtomicLong();
+
+    /**
+     * @return the statistics of the current thread, or null if its queries
+     * are not being analyzed
+     */
+    public static RasQueryStats get() {
+        return current.get();
+    }
+
+    /**
+     * Attach statistics to the current thread.
+     * @return the previously attached statistics, to be restored with {@link #exit(RasQueryStats)}
+     */
+    public static RasQueryStats enter(RasQueryStats stats) {
+        final RasQueryStats ret = current.get();
+        current.set(stats);
+        return ret;
+    }
+
+    public static void exit(RasQueryStats previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * @return the task, executing with the statistics of the current thread
+     * attached to the thread it runs on
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final RasQueryStats stats = current.get();
+        if (stats == null) {
+            return task;
+        }
+        return new Callable<T>() {
+            public T call() throws Exception {
+                final RasQueryStats previous = enter(stats);
+                try {
+                    return task.call();
+                } finally {
+                    exit(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Record a rasql query if the current thread is being analyzed.
+     * @param nanos time spent executing the query
+     */
+    static void recordQuery(long nanos, boolean failed, long sent, long received) {
+        final RasQueryStats stats = current.get();
+        if (stats != null) {
+            stats.queries.incrementAndGet();
+            if (failed) {
+                stats.failedQueries.incrementAndGet();
+            }
+            stats.bytesSent.addAndGet(sent);
+            stats.bytesReceived.addAndGet(received);
+            stats.queryTime.addAndGet(nanos);
+        }
+    }
+
+    static void recordCacheHit() {
+        final RasQueryStats stats = current.get();
+        if (stats != null) {
+            stats.cacheHits.incrementAndGet();
+        }
+    }
+
+    static void recordLocalEvaluation() {
+        final RasQueryStats stats = current.get();
+        if (stats != null) {
+            stats.localEvaluations.incrementAndGet();
+        }
+    }
+
+    public long getQueries() {
+        return queries.get();
+    }
+
+    public long getFailedQueries() {
+        return failedQueries.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return total time spent in rasql queries, in microseconds; queries
+     * run in parallel are added up
+     */
+    public long getQueryTime() {
+        return queryTime.get() / 1000;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getLocalEvaluations() {
+        return localEvaluations.get();
+    }
+
+    /**
+     * @param elapsed time taken by the whole statement, in microseconds
+     * @param rows number of rows returned or updated by the statement
+     */
+    public String describe(long elapsed, long rows) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("rows=[").append(rows).append("]\n");
+        sb.append("elapsed=[").append(elapsed).append(" us]\n");
+        sb.append("rasql queries=[").append(getQueries());
+        if (getFailedQueries() > 0) {
+            sb.append(", ").append(getFailedQueries()).append(" failed");
+        }
+        sb.append("]\n");
+        sb.append("rasql time=[").append(getQueryTime()).append(" us]\n");
+        sb.append("rasql bytes sent=[").append(getBytesSent()).append("]\n");
+        sb.append("rasql bytes received=[").append(getBytesReceived()).append("]\n");
+        sb.append("result cache hits=[").append(getCacheHits()).append("]\n");
+        sb.append("local evaluations=[").append(getLocalEvaluations()).append("]\n");
+        return sb.toString();
+    }
+}
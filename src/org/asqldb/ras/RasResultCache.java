@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.asqldb.util.Metrics;
+import rasj.RasGMArray;
+import rasj.RasMArrayByte;
+import rasj.RasMArrayDouble;
+import rasj.RasMArrayFloat;
+import rasj.RasMArrayInteger;
+import rasj.RasMArrayLong;
+import rasj.RasMArrayShort;
+
+/**
+ * A bounded LRU cache of rasql query results, keyed on the normalised rasql
+ * selector and the arrays it is evaluated on. Since rasql selectors are
+ * deterministic, a result stays valid until one of the referenced arrays is
+ * changed or deleted; the cache has to be notified of that with
+ * {@link #invalidate(String, int)} or {@link #invalidate(String)}.
+ * <p>
+ * The cache is bounded by the estimated size of the cached results in bytes;
+ * results larger than a quarter of the capacity are not cached. Arrays are
+ * returned as copies, so that callers modifying them do not change the
+ * cached results.
+ *
+ * @author Dimitar Misev
+ */
+public class RasResultCache {
+
+    /**
+     * Estimated overhead of a cache entry in bytes, also used as the size of
+     * scalar results.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final long capacity;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * Cache keys of the entries referencing each collection.
+     */
+    private final Map<String, Set<Key>> collections = new HashMap<String, Set<Key>>();
+
+    private long bytes = 0;
+
+    private final Metrics.Counter hits = Metrics.counter("ras.cache.hits");
+    private final Metrics.Counter misses = Metrics.counter("ras.cache.misses");
+    private final Metrics.Counter evictions = Metrics.counter("ras.cache.evictions");
+
+    /**
+     * @param capacity maximum estimated size of all cached results in bytes;
+     * 0 disables caching
+     */
+    public RasResultCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the cached result, or null if the result is not cached
+     */
+    public synchronized Object get(String selector, RasArrayIdSet rasArrayIds) {
+        if (capacity <= 0) {
+            return null;
+        }
+        final Entry entry = entries.get(new Key(selector, rasArrayIds));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        RasQueryStats.recordCacheHit();
+        return copy(entry.value);
+    }
+
+    /**
+     * @return true if the result is cached; unlike get() this is not counted
+     * as a cache hit or miss
+     */
+    public synchronized boolean contains(String selector, RasArrayIdSet rasArrayIds) {
+        return capacity > 0 && entries.containsKey(new Key(selector, rasArrayIds));
+    }
+
+    /**
+     * Cache the result of evaluating a selector on the given arrays.
+     */
+    public synchronized void put(String selector, RasArrayIdSet rasArrayIds, Object value) {
+        if (value == null) {
+            return;
+        }
+        final long size = estimateSize(value) + ENTRY_OVERHEAD + selector.length() * 2;
+        if (size > capacity / 4) {
+            return;
+        }
+        final Key key = new Key(selector, rasArrayIds);
+        remove(key);
+        entries.put(key, new Entry(value, size));
+        bytes += size;
+        for (String coll : key.collections) {
+            Set<Key> keys = collections.get(coll);
+            if (keys == null) {
+                keys = new HashSet<Key>();
+                collections.put(coll, keys);
+            }
+            keys.add(key);
+        }
+
+        final Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (bytes > capacity && it.hasNext()) {
+            final Map.Entry<Key, Entry> eldest = it.next();
+            it.remove();
+            unlink(eldest.getKey(), eldest.getValue());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Remove all results computed from the array with the given oid.
+     */
+    public synchronized void invalidate(String rasColl, int rasOid) {
+        final Set<Key> keys = collections.get(rasColl);
+        if (keys == null) {
+            return;
+        }
+        final String id = rasColl + RasArrayId.COLL_OID_SEPARATOR + rasOid;
+        for (Key key : new ArrayList<Key>(keys)) {
+            if (key.references(id)) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Remove all results computed from arrays of the given collection.
+     */
+    public synchronized void invalidate(String rasColl) {
+        final Set<Key> keys = collections.get(rasColl);
+        if (keys == null) {
+            return;
+        }
+        for (Key key : new ArrayList<Key>(keys)) {
+            remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        collections.clear();
+        bytes = 0;
+    }
+
+    private void remove(Key key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            unlink(key, entry);
+        }
+    }
+
+    /**
+     * Update the size and the collection index for an entry that has been
+     * removed from the entries map.
+     */
+    private void unlink(Key key, Entry entry) {
+        bytes -= entry.size;
+        for (String coll : key.collections) {
+            final Set<Key> keys = collections.get(coll);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    collections.remove(coll);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the arrays in a cached result; scalars are immutable
+     * and returned as they are
+     */
+    static Object copy(Object value) {
+        if (value instanceof RasGMArray) {
+            final RasGMArray array = (RasGMArray) value;
+            final RasGMArray ret;
+            if (array instanceof RasMArrayDouble) {
+                ret = new RasMArrayDouble(array.spatialDomain());
+            } else if (array instanceof RasMArrayFloat) {
+                ret = new RasMArrayFloat(array.spatialDomain());
+            } else if (array instanceof RasMArrayLong) {
+                ret = new RasMArrayLong(array.spatialDomain());
+            } else if (array instanceof RasMArrayInteger) {
+                ret = new RasMArrayInteger(array.spatialDomain());
+            } else if (array instanceof RasMArrayShort) {
+                ret = new RasMArrayShort(array.spatialDomain());
+            } else if (array instanceof RasMArrayByte) {
+                ret = new RasMArrayByte(array.spatialDomain());
+            } else {
+                ret = new RasGMArray(array);
+            }
+            final byte[] data = array.getArray();
+            ret.setArray(data == null ? null : data.clone());
+            return ret;
+        } else if (value instanceof List) {
+            final List<Object> ret = new ArrayList<Object>(((List<?>) value).size());
+            for (Object o : (List<?>) value) {
+                ret.add(copy(o));
+            }
+            return ret;
+        } else if (value instanceof Map) {
+            final Map<Object, Object> ret = new HashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                ret.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return ret;
+        }
+        return value;
+    }
+
+    /**
+     * @return estimated size in bytes of the array data in a rasql result
+     */
+    static long estimateSize(Object value) {
+        if (value instanceof RasGMArray) {
+            final byte[] data = ((RasGMArray) value).getArray();
+            return data == null ? 0 : data.length;
+        } else if (value instanceof String) {
+            return ((String) value).length() * 2;
+        } else if (value instanceof Collection) {
+            long ret = 0;
+            for (Object o : (Collection<?>) value) {
+                ret += estimateSize(o) + ENTRY_OVERHEAD / 4;
+            }
+            return ret;
+        } else if (value instanceof Map) {
+            return estimateSize(((Map<?, ?>) value).values());
+        }
+        return 0;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return estimated size of the cached results in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The rasql selector with whitespace normalised, and the arrays bound to
+     * the iterator names used in it, in a canonical order.
+     */
+    private static class Key {
+
+        private final String selector;
+        private final String[] arrays;
+        private final Set<String> collections = new HashSet<String>();
+        private final int hashCode;
+
+        Key(String selector, RasArrayIdSet rasArrayIds) {
+            this.selector = normalise(selector);
+            this.arrays = new String[rasArrayIds.size()];
+            int i = 0;
+            for (RasArrayId id : rasArrayIds) {
+                arrays[i++] = id.toString();
+                collections.add(id.getRasColl());
+            }
+            Arrays.sort(arrays);
+            this.hashCode = 31 * this.selector.hashCode() + Arrays.hashCode(arrays);
+        }
+
+        /**
+         * Trims the selector and collapses whitespace runs to one blank,
+         * except within quoted string literals; selectors rendered by the
+         * MDA expressions are usually normalised already, in which case they
+         * are returned as they are.
+         */
+        static String normalise(String selector) {
+            final int n = selector.length();
+            final StringBuilder sb = new StringBuilder(n);
+            char quote = 0;
+            boolean blank = false;
+            for (int i = 0; i < n; i++) {
+                final char c = selector.charAt(i);
+                if (quote != 0) {
+                    sb.append(c);
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (Character.isWhitespace(c)) {
+                    blank = sb.length() > 0;
+                } else {
+                    if (blank) {
+                        sb.append(' ');
+                        blank = false;
+                    }
+                    sb.append(c);
+                    if (c == '"' || c == '\'') {
+                        quote = c;
+                    }
+                }
+            }
+            return selector.contentEquals(sb) ? selector : sb.toString();
+        }
+
+        /**
+         * @param id array identifier as coll:oid
+         */
+        boolean references(String id) {
+            for (String array : arrays) {
+                if (array.startsWith(id) && array.charAt(id.length()) == '(') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return hashCode == key.hashCode && selector.equals(key.selector)
+                    && Arrays.equals(arrays, key.arrays);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static class Entry {
+
+        private final Object value;
+
+        /**
+         * Estimated size of the entry in bytes.
+         */
+        private final long size;
+
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
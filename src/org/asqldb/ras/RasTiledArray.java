@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import rasj.RasGMArray;
+import rasj.RasIndexOutOfBoundsException;
+import rasj.RasMInterval;
+
+/**
+ * An array result computed by rasdaman that is transferred as a sequence of
+ * subsets (tiles) instead of a single array, so that the client never holds
+ * more than one tile of the result. Tiles are split along the slowest
+ * varying dimensions, so that the cells of consecutive tiles follow each
+ * other in the linear cell order of the whole result.
+ *
+ * @author Dimitar Misev
+ */
+public class RasTiledArray {
+
+    private final Session session;
+    private final String selector;
+    private final RasArrayIdSet rasArrayIds;
+    private final RasMInterval sdom;
+    private final List<RasMInterval> tiles;
+
+    /**
+     * @param session the session executing the queries, or null
+     * @param selector rasql selector computing the array
+     * @param rasArrayIds arrays referenced by the selector
+     * @param sdom spatial domain of the result
+     * @param tileSize maximum number of cells per tile
+     */
+    public RasTiledArray(Session session, String selector, RasArrayIdSet rasArrayIds,
+            RasMInterval sdom, long tileSize) {
+        this.session = session;
+        this.selector = selector;
+        this.rasArrayIds = rasArrayIds;
+        this.sdom = sdom;
+        this.tiles = split(sdom, tileSize);
+    }
+
+    /**
+     * Determine the spatial domain of the result of the selector, without
+     * transferring the array itself.
+     *
+     * @param tileSize maximum number of cells per tile
+     */
+    public static RasTiledArray open(Session session, String selector,
+            RasArrayIdSet rasArrayIds, long tileSize) throws HsqlException {
+        final Object sdom = RasUtil.executeHsqlArrayQuery(session,
+                "sdom(" + selector + ")", rasArrayIds);
+        if (!(sdom instanceof RasMInterval)) {
+            throw Error.error(ErrorCode.MDA_NOARRAY, selector);
+        }
+        return new RasTiledArray(session, selector, rasArrayIds, (RasMInterval) sdom, tileSize);
+    }
+
+    public RasMInterval spatialDomain() {
+        return sdom;
+    }
+
+    /**
+     * @return number of cells of the whole result
+     */
+    public long cellCount() {
+        return sdom.cellCount();
+    }
+
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    public RasMInterval getTile(int index) {
+        return tiles.get(index);
+    }
+
+    /**
+     * Fetch a single tile of the result.
+     */
+    public RasGMArray fetchTile(int index) throws HsqlException {
+        final String subset = "(" + selector + ")" + tiles.get(index);
+        final Object ret = RasUtil.executeHsqlArrayQuery(session, subset, rasArrayIds);
+        if (!(ret instanceof RasGMArray)) {
+            throw Error.error(ErrorCode.MDA_NOARRAY, subset);
+        }
+        return (RasGMArray) ret;
+    }
+
+    /**
+     * Fetch all tiles in order, handing each one to the consumer before the
+     * next one is fetched.
+     */
+    public void fetch(RasTileConsumer consumer) throws HsqlException {
+        for (int i = 0; i < tiles.size(); i++) {
+            consumer.consume(fetchTile(i));
+        }
+    }
+
+    /**
+     * Split a domain into sub-intervals of at most tileSize cells. All
+     * dimensions after the split dimension are taken in full, dimensions
+     * before it are fixed to a single index per tile.
+     */
+    static List<RasMInterval> split(RasMInterval sdom, long tileSize) {
+        final List<RasMInterval> ret = new ArrayList<RasMInterval>();
+        final int dims = sdom.dimension();
+        if (tileSize <= 0 || sdom.cellCount() <= tileSize || dims == 0) {
+            ret.add(sdom);
+            return ret;
+        }
+
+        try {
+            final long[] lo = new long[dims];
+            final long[] hi = new long[dims];
+            for (int i = 0; i < dims; i++) {
+                lo[i] = sdom.item(i).low();
+                hi[i] = sdom.item(i).high();
+            }
+
+            // find the slowest dimension whose trailing block still fits
+            int split = dims - 1;
+            long inner = 1;
+            while (split > 0 && inner * (hi[split] - lo[split] + 1) <= tileSize) {
+                inner *= hi[split] - lo[split] + 1;
+                --split;
+            }
+            final long step = Math.max(1, tileSize / inner);
+
+            final long[] prefix = new long[split];
+            System.arraycopy(lo, 0, prefix, 0, split);
+            while (true) {
+                for (long start = lo[split]; start <= hi[split]; start += step) {
+                    final long end = Math.min(start + step - 1, hi[split]);
+                    ret.add(new RasMInterval(toString(prefix, split, start, end, lo, hi)));
+                }
+
+                // advance the fixed dimensions, last one fastest
+                int d = split - 1;
+                while (d >= 0 && prefix[d] == hi[d]) {
+                    prefix[d] = lo[d];
+                    --d;
+                }
+                if (d < 0) {
+                    break;
+                }
+                ++prefix[d];
+            }
+        } catch (RasIndexOutOfBoundsException ex) {
+            throw Error.runtimeError(ErrorCode.U_S0500, ex.getMessage());
+        }
+        return ret;
+    }
+
+    private static String toString(long[] prefix, int split, long start, long end,
+            long[] lo, long[] hi) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < lo.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (i < split) {
+                sb.append(prefix[i]).append(':').append(prefix[i]);
+            } else if (i == split) {
+                sb.append(start).append(':').append(end);
+            } else {
+                sb.append(lo[i]).append(':').append(hi[i]);
+            }
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -33,29 +33,42 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.asqldb.storage.MDAStorage;
 import org.asqldb.types.MDADimensionType;
 import org.asqldb.types.MDADomainType;
-import org.asqldb.util.TimerUtil;
+import org.asqldb.util.Metrics;
 import org.asqldb.util.TypeUtil;
 import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.lib.FrameworkLogger;
+import org.hsqldb.types.BlobData;
 import org.odmg.DBag;
-import org.odmg.Database;
-import org.odmg.ODMGException;
+import org.odmg.ODMGRuntimeException;
 import org.odmg.OQLQuery;
 import org.odmg.QueryException;
-import org.odmg.Transaction;
-import rasj.RasClientInternalException;
-import rasj.RasConnectionFailedException;
 import rasj.RasGMArray;
-import rasj.RasImplementation;
 import rasj.RasIndexOutOfBoundsException;
 import rasj.RasMArrayByte;
 import rasj.RasMArrayDouble;
@@ -64,7 +77,9 @@ import rasj.RasMArrayInteger;
 import rasj.RasMArrayLong;
 import rasj.RasMArrayShort;
 import rasj.RasMInterval;
+import rasj.RasObject;
 import rasj.RasPoint;
+import rasj.RasRuntimeException;
 import rasj.RasSInterval;
 import rasj.RasStructure;
 import rasj.odmg.RasCollection;
@@ -89,8 +104,20 @@ public class RasUtil {
     private static final String DEFAULT_ADMIN_USER = "rasadmin";
     private static final String DEFAULT_ADMIN_PASSWD = "rasadmin";
 
-    private static final int MDA_MAX_ATTEMPTS = 5;
-    private static final int MDA_TIMEOUT = 1000;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int DEFAULT_POOL_TIMEOUT = 30000;
+    private static final int DEFAULT_FETCH_SIZE = 100;
+    private static final int DEFAULT_TILE_SIZE = 0;
+    private static final int DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_PREFETCH_DEPTH = 2;
+    private static final int DEFAULT_PARALLELISM = 1;
+    private static final int DEFAULT_CLEANUP_THRESHOLD = 1000;
+    private static final String DEFAULT_ENGINE = MDAStorage.RASDAMAN;
+    private static final int DEFAULT_LOCAL_THRESHOLD = 65536;
+    private static final int DEFAULT_BACKOFF_INITIAL = 100;
+    private static final int DEFAULT_BACKOFF_MAX = 2000;
+    private static final int DEFAULT_BREAKER_THRESHOLD = 3;
+    private static final int DEFAULT_BREAKER_COOLDOWN = 5000;
 
     private static final String HOME_DIR = System.getProperty("user.home");
     private static final String CONFIG_DIR = HOME_DIR + File.separator + ".asqldb";
@@ -99,20 +126,168 @@ public class RasUtil {
 
     private static PrintStream queryOutputStream = System.out;
 
-    private static Database db = null;
-    private static RasImplementation rasImplementation = null;
+    private static final Metrics.Counter QUERIES = Metrics.counter("rasql.queries");
+    private static final Metrics.Counter FAILED_QUERIES = Metrics.counter("rasql.failed_queries");
+    private static final Metrics.Counter CANCELLED_QUERIES = Metrics.counter("rasql.cancelled_queries");
+    private static final Metrics.Counter BYTES_SENT = Metrics.counter("rasql.bytes_sent");
+    private static final Metrics.Counter BYTES_RECEIVED = Metrics.counter("rasql.bytes_received");
+    private static final Metrics.Histogram LATENCY = Metrics.histogram("rasql.latency_us");
+    private static final Metrics.Histogram RESULT_ROWS = Metrics.histogram("rasql.result_rows");
+
+    /**
+     * The rasdaman servers; writes go to the first one.
+     */
+    private static RasEndpoint[] endpoints;
 
     private static String server;
     private static String database;
     private static String port;
+    private static String servers;
 
     public static String username;
     public static String password;
     public static String adminUsername;
     public static String adminPassword;
 
+    /**
+     * Maximum number of arrays fetched from a collection with a single rasql
+     * query when scanning MDARRAY columns; 1 disables batching.
+     */
+    public static int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * Maximum number of open connections in each of the read-only and the
+     * read-write connection pools.
+     */
+    public static int poolSize = DEFAULT_POOL_SIZE;
+
+    /**
+     * Maximum time in milliseconds to wait for a free pooled connection.
+     */
+    public static int poolTimeout = DEFAULT_POOL_TIMEOUT;
+
+    /**
+     * Delay in milliseconds before the second attempt to open a connection
+     * to a saturated rasdaman server; the delay is doubled for every further
+     * attempt up to backoffMax, and randomized by up to a half.
+     */
+    public static int backoffInitial = DEFAULT_BACKOFF_INITIAL;
+
+    /**
+     * Maximum delay in milliseconds between attempts to open a connection.
+     */
+    public static int backoffMax = DEFAULT_BACKOFF_MAX;
+
+    /**
+     * Number of consecutive failures after which a rasdaman server is
+     * skipped for breakerCooldown milliseconds; see {@link RasEndpoint}.
+     */
+    public static int breakerThreshold = DEFAULT_BREAKER_THRESHOLD;
+
+    /**
+     * Time in milliseconds for which a failing rasdaman server is skipped.
+     */
+    public static int breakerCooldown = DEFAULT_BREAKER_COOLDOWN;
+
+    /**
+     * Maximum number of cells of an array result transferred with a single
+     * rasql query where results can be consumed in tiles, e.g. by UNNEST;
+     * 0 disables tiled transfer.
+     */
+    public static int tileSize = DEFAULT_TILE_SIZE;
+
+    /**
+     * Maximum estimated size in bytes of the cached results of MDA
+     * expressions; 0 disables the result cache.
+     */
+    public static int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * Default number of MDA fetch batches that a scan may have in flight in
+     * the background; can be changed per session with
+     * SET SESSION MDARRAY PREFETCH. 0 disables background fetching.
+     */
+    public static int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+
+    /**
+     * Maximum number of rows of a query whose MDA select expressions are
+     * evaluated concurrently on pooled connections; 1 evaluates them in the
+     * session thread.
+     */
+    public static int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * Number of arrays of a collection deleted by one transaction above
+     * which they are removed from rasdaman in the background; dropped
+     * collections are always removed in the background. 0 disables
+     * background cleanup.
+     */
+    public static int cleanupThreshold = DEFAULT_CLEANUP_THRESHOLD;
+
+    /**
+     * Maximum number of cells of the arrays in a collection for which MDA
+     * expressions over them are evaluated in the JVM rather than by
+     * rasdaman; see {@link RasLocalEvaluator}. 0 disables local evaluation
+     * unless the storage engine cannot evaluate queries.
+     */
+    public static int localThreshold = DEFAULT_LOCAL_THRESHOLD;
+
+    /**
+     * MDA storage engine, rasdaman or embedded; see {@link MDAStorage}.
+     */
+    public static String engine = DEFAULT_ENGINE;
+
+    /**
+     * Directory holding the collections of the embedded storage engine; if
+     * null, a directory next to the files of the database is used, see
+     * {@link MDAStorage#open(org.hsqldb.Database)}.
+     */
+    public static String embeddedDir = null;
+
+    private static RasResultCache resultCache;
+
+    private static ExecutorService workerExecutor;
+
+    private static ExecutorService queryExecutor;
+
+    /**
+     * Set on the worker threads, which read on the background pools.
+     */
+    private static final ThreadLocal<Boolean> workerThread = new ThreadLocal<Boolean>();
+
+    private static RasCleanupQueue cleanupQueue;
+
     static {
         loadProperties();
+        createPools();
+        resultCache = new RasResultCache(cacheSize);
+    }
+
+    /**
+     * Create an endpoint for every server in ras.servers, a comma separated
+     * list of host:port, or for ras.server and ras.port if it is not set.
+     */
+    private static void createPools() {
+        final List<RasEndpoint> ret = new ArrayList<RasEndpoint>();
+        if (servers != null) {
+            for (String s : servers.split(",")) {
+                s = s.trim();
+                if (s.length() == 0) {
+                    continue;
+                }
+                final String address = s.indexOf(':') < 0 ? s + ":" + DEFAULT_PORT : s;
+                ret.add(createEndpoint("http://" + address));
+            }
+        }
+        if (ret.isEmpty()) {
+            ret.add(createEndpoint("http://" + server + ":" + port));
+        }
+        endpoints = ret.toArray(new RasEndpoint[ret.size()]);
+    }
+
+    private static RasEndpoint createEndpoint(String url) {
+        return new RasEndpoint(url, database, username, password,
+                adminUsername, adminPassword, poolSize, poolTimeout);
     }
 
     private static void loadProperties() {
@@ -140,10 +315,29 @@ public class RasUtil {
         server = prop.getProperty("ras.server", DEFAULT_SERVER);
         database = prop.getProperty("ras.database", DEFAULT_BASE);
         port = prop.getProperty("ras.port", DEFAULT_PORT);
+        servers = prop.getProperty("ras.servers");
         username = prop.getProperty("ras.username", DEFAULT_USER);
         password = prop.getProperty("ras.password", DEFAULT_PASSWD);
         adminUsername = prop.getProperty("ras.admin.username", DEFAULT_ADMIN_USER);
         adminPassword = prop.getProperty("ras.admin.password", DEFAULT_ADMIN_PASSWD);
+        fetchSize = getIntProperty(prop, "ras.fetch.size", DEFAULT_FETCH_SIZE);
+        poolSize = getIntProperty(prop, "ras.pool.size", DEFAULT_POOL_SIZE);
+        poolTimeout = getIntProperty(prop, "ras.pool.timeout", DEFAULT_POOL_TIMEOUT);
+        backoffInitial = getIntProperty(prop, "ras.backoff.initial", DEFAULT_BACKOFF_INITIAL);
+        backoffMax = getIntProperty(prop, "ras.backoff.max", DEFAULT_BACKOFF_MAX);
+        breakerThreshold = getIntProperty(prop, "ras.breaker.threshold", DEFAULT_BREAKER_THRESHOLD);
+        breakerCooldown = getIntProperty(prop, "ras.breaker.cooldown", DEFAULT_BREAKER_COOLDOWN, 0);
+        tileSize = getIntProperty(prop, "ras.tile.size", DEFAULT_TILE_SIZE);
+        cacheSize = getIntProperty(prop, "ras.cache.size", DEFAULT_CACHE_SIZE, 0);
+        prefetchDepth = getIntProperty(prop, "ras.prefetch.depth", DEFAULT_PREFETCH_DEPTH, 0);
+        parallelism = getIntProperty(prop, "ras.parallelism", DEFAULT_PARALLELISM);
+        cleanupThreshold = getIntProperty(prop, "ras.cleanup.threshold", DEFAULT_CLEANUP_THRESHOLD, 0);
+        localThreshold = getIntProperty(prop, "ras.local.threshold", DEFAULT_LOCAL_THRESHOLD, 0);
+        engine = prop.getProperty("ras.engine", DEFAULT_ENGINE).trim();
+        embeddedDir = prop.getProperty("ras.embedded.dir", "").trim();
+        if (embeddedDir.length() == 0) {
+            embeddedDir = null;
+        }
         return input;
     }
 
@@ -151,10 +345,181 @@ public class RasUtil {
         server = DEFAULT_SERVER;
         database = DEFAULT_BASE;
         port = DEFAULT_PORT;
+        servers = null;
         username = DEFAULT_USER;
         password = DEFAULT_PASSWD;
         adminUsername = DEFAULT_ADMIN_USER;
         adminPassword = DEFAULT_ADMIN_PASSWD;
+        fetchSize = DEFAULT_FETCH_SIZE;
+        poolSize = DEFAULT_POOL_SIZE;
+        poolTimeout = DEFAULT_POOL_TIMEOUT;
+        backoffInitial = DEFAULT_BACKOFF_INITIAL;
+        backoffMax = DEFAULT_BACKOFF_MAX;
+        breakerThreshold = DEFAULT_BREAKER_THRESHOLD;
+        breakerCooldown = DEFAULT_BREAKER_COOLDOWN;
+        tileSize = DEFAULT_TILE_SIZE;
+        cacheSize = DEFAULT_CACHE_SIZE;
+        prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+        parallelism = DEFAULT_PARALLELISM;
+        cleanupThreshold = DEFAULT_CLEANUP_THRESHOLD;
+        localThreshold = DEFAULT_LOCAL_THRESHOLD;
+        engine = DEFAULT_ENGINE;
+        embeddedDir = null;
+    }
+
+    private static int getIntProperty(Properties prop, String key, int defaultValue) {
+        return getIntProperty(prop, key, defaultValue, 1);
+    }
+
+    private static int getIntProperty(Properties prop, String key, int defaultValue, int minValue) {
+        final String value = prop.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int ret = Integer.parseInt(value.trim());
+            return ret >= minValue ? ret : defaultValue;
+        } catch (NumberFormatException ex) {
+            log.warning("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the worker threads running rasql queries in the background;
+     * there are as many as there are connections in the background pool of
+     * an endpoint, which the worker threads use for reading
+     */
+    public static synchronized ExecutorService getWorkerExecutor() {
+        if (workerExecutor == null) {
+            workerExecutor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+                private int count = 0;
+
+                public synchronized Thread newThread(final Runnable r) {
+                    final Thread ret = new Thread(new Runnable() {
+                        public void run() {
+                            workerThread.set(Boolean.TRUE);
+                            r.run();
+                        }
+                    }, "asqldb-mda-worker-" + (++count));
+                    ret.setDaemon(true);
+                    return ret;
+                }
+            });
+        }
+        return workerExecutor;
+    }
+
+    /**
+     * @return the threads executing the rasql queries of sessions, so that
+     * the session thread can abandon a query when the statement times out
+     * or is cancelled; threads are created as needed, as a query may
+     * outlive the statement it was sent for
+     */
+    private static synchronized ExecutorService getQueryExecutor() {
+        if (queryExecutor == null) {
+            queryExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private int count = 0;
+
+                public synchronized Thread newThread(Runnable r) {
+                    final Thread ret = new Thread(r, "asqldb-rasql-" + (++count));
+                    ret.setDaemon(true);
+                    return ret;
+                }
+            });
+        }
+        return queryExecutor;
+    }
+
+    /**
+     * Wait for a task submitted to the worker executor.
+     * @return the result of the task
+     * @throws HsqlException the exception thrown by the task, or
+     * MDA_UNAVAILABLE if the thread is interrupted while waiting
+     */
+    public static Object await(Future<Object> task) throws HsqlException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, "interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof HsqlException) {
+                throw (HsqlException) ex.getCause();
+            }
+            throw Error.error(ex.getCause(), ErrorCode.MDA_CONNECTION, String.valueOf(ex.getCause()));
+        }
+    }
+
+    /**
+     * Wait for a task submitted to the worker executor on behalf of the
+     * current statement of a session, under the deadline of the statement;
+     * cancelling the statement ends the wait. A task that is no longer
+     * waited for is cancelled; if it is running already, it is left to end
+     * on its own, checking the deadline before each query.
+     * @param session the session executing the statement, or null
+     * @param task the background task
+     * @param what description of the task for error messages
+     * @return the result of the task
+     * @throws HsqlException the exception thrown by the task, or X_40502 or
+     * MDA_CANCELLED if the statement times out or is cancelled
+     */
+    public static Object await(Session session, Future<Object> task, String what) throws HsqlException {
+        if (session == null) {
+            return await(task);
+        }
+        session.setRasQuery(task);
+        try {
+            checkDeadline(session, what);
+            final long deadline = session.getRasDeadline();
+            if (deadline == 0) {
+                return await(task);
+            }
+            try {
+                return task.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                throw Error.error(ErrorCode.X_40502, what);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, "interrupted");
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof HsqlException) {
+                    throw (HsqlException) ex.getCause();
+                }
+                throw Error.error(ex.getCause(), ErrorCode.MDA_CONNECTION, String.valueOf(ex.getCause()));
+            }
+        } catch (CancellationException ex) {
+            throw Error.error(ErrorCode.MDA_CANCELLED, what);
+        } finally {
+            session.setRasQuery(null);
+            if (!task.isDone()) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return the cache of MDA expression results shared by all sessions
+     */
+    public static RasResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Drop cached results computed from an array that is deleted or
+     * replaced.
+     */
+    public static void invalidateCache(String collName, int oid) {
+        resultCache.invalidate(collName, oid);
+    }
+
+    /**
+     * Drop cached results computed from any array in a collection that is
+     * modified or dropped.
+     */
+    public static void invalidateCache(String collName) {
+        resultCache.invalidate(collName);
     }
 
     /**
@@ -179,6 +544,43 @@ public class RasUtil {
         return executeHsqlArrayQuery(selector, ".array", rasArrayIds);
     }
 
+    /**
+     * Executes an Hsql multidimensional array query on the rasdaman
+     * connection of the given session.
+     * @param session the session executing the query, or null
+     * @param selector Selector string with rasql expressions
+     * @param rasArrayIds Set of RasArrayIds to select from
+     * @return the first element of the query result.
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Object executeHsqlArrayQuery(Session session, String selector, RasArrayIdSet rasArrayIds) throws HsqlException {
+        return executeHsqlArrayQuery(session, selector, ".array", rasArrayIds);
+    }
+
+    /**
+     * Executes an Hsql multidimensional array query in tiles of at most
+     * {@link #tileSize} cells, handing each tile to the consumer as soon as
+     * it has been transferred. If tiled transfer is disabled the whole
+     * result is passed as a single tile.
+     * @param session the session executing the query, or null
+     * @param selector Selector string with rasql expressions
+     * @param rasArrayIds Set of RasArrayIds to select from
+     * @param consumer receives the tiles in linear cell order
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static void fetchTiled(Session session, String selector, RasArrayIdSet rasArrayIds,
+            RasTileConsumer consumer) throws HsqlException {
+        if (tileSize <= 0) {
+            final Object ret = executeHsqlArrayQuery(session, selector, rasArrayIds);
+            if (!(ret instanceof RasGMArray)) {
+                throw Error.error(ErrorCode.MDA_NOARRAY, selector);
+            }
+            consumer.consume((RasGMArray) ret);
+        } else {
+            RasTiledArray.open(session, selector, rasArrayIds, tileSize).fetch(consumer);
+        }
+    }
+
     /**
      * Executes an Hsql multidimensional array query.
      * @param selector Selector string with rasql expressions
@@ -188,17 +590,60 @@ public class RasUtil {
      * @throws HsqlException If any error occurs processing the query, this exception is thrown.
      */
     public static Object executeHsqlArrayQuery(final String selector, final String extension, final RasArrayIdSet rasArrayIds) throws HsqlException {
-        final String query;
-        if (rasArrayIds.isEmpty()) {
-            query = String.format("SELECT "+ selector);
-        } else {
-            query = String.format("SELECT %s FROM %s WHERE %s", selector, rasArrayIds.stringifyRasColls(), rasArrayIds.stringifyOids());
+        return executeHsqlArrayQuery(null, selector, extension, rasArrayIds);
+    }
+
+    /**
+     * Executes an Hsql multidimensional array query on the rasdaman
+     * connection of the given session.
+     * @param session the session executing the query, or null
+     * @param selector Selector string with rasql expressions
+     * @param extension extension for the output file(s)
+     * @param rasArrayIds Set of RasArrayIds to select from
+     * @return the first element of the query result.
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Object executeHsqlArrayQuery(final Session session, final String selector, final String extension, final RasArrayIdSet rasArrayIds) throws HsqlException {
+        return executeHsqlArrayQuery(session, new RasqlTemplate(selector, rasArrayIds, false), rasArrayIds);
+    }
+
+    /**
+     * Executes an Hsql multidimensional array query compiled to a template,
+     * filled in with the OIDs of the given arrays, on the MDA storage engine.
+     * @param session the session executing the query, or null
+     * @param template query template matching the given arrays
+     * @param rasArrayIds Set of RasArrayIds to select from
+     * @return the first element of the query result.
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Object executeHsqlArrayQuery(final Session session, final RasqlTemplate template, final RasArrayIdSet rasArrayIds) throws HsqlException {
+        final String selector = template.getSelector();
+        final Object cached = resultCache.get(selector, rasArrayIds);
+        if (cached != null) {
+            return cached;
         }
+
+        final Object obj = MDAStorage.get().evaluate(session, template, rasArrayIds);
+        resultCache.put(selector, rasArrayIds, obj);
+        return obj;
+    }
+
+    /**
+     * Executes a rasql query template on rasdaman, bypassing the result
+     * cache.
+     * @param session the session executing the query, or null
+     * @param template query template matching the given arrays
+     * @param rasArrayIds Set of RasArrayIds to select from
+     * @return the first element of the query result.
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Object executeRasqlTemplate(final Session session, final RasqlTemplate template, final RasArrayIdSet rasArrayIds) throws HsqlException {
+        final String query = template.fill(rasArrayIds);
         if(printLog) queryOutputStream.println(query);
 
-        //important: rasdaman database is close in the session.execute method,
-        //aka after the entire query is executed
-        DBag result = (DBag) executeRasqlQuery(query, false, false);
+        //the session keeps its rasdaman connection until the end of the
+        //transaction, the connection is returned to the pool on commit
+        DBag result = (DBag) executeRasqlQuery(session, query, false, false);
 
         final Iterator it = result.iterator();
         if (!(it.hasNext()))
@@ -215,6 +660,294 @@ public class RasUtil {
         return obj;
     }
 
+    /**
+     * Fetch a single array through the result cache, under the column name
+     * as selector.
+     * @param session the session executing the query, or null
+     * @param rasArrayId the array to fetch
+     * @return the array
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Object fetchArray(final Session session, final RasArrayId rasArrayId) throws HsqlException {
+        final RasArrayIdSet ids = new RasArrayIdSet();
+        ids.add(rasArrayId);
+        final Object cached = resultCache.get(rasArrayId.getHsqlField(), ids);
+        if (cached != null) {
+            return cached;
+        }
+        final Object ret = MDAStorage.get().fetch(session, rasArrayId.getRasColl(), rasArrayId.getRasOid());
+        resultCache.put(rasArrayId.getHsqlField(), ids, ret);
+        return ret;
+    }
+
+    /**
+     * @return true if the array is in the result cache, see {@link #fetchArray(Session, RasArrayId)}
+     */
+    public static boolean isArrayCached(final RasArrayId rasArrayId) {
+        final RasArrayIdSet ids = new RasArrayIdSet();
+        ids.add(rasArrayId);
+        return resultCache.contains(rasArrayId.getHsqlField(), ids);
+    }
+
+    /**
+     * Fetch the arrays with the given OIDs from a collection, using one rasql
+     * query per {@link #fetchSize} OIDs instead of one query per array.
+     *
+     * @param coll rasdaman collection name
+     * @param oids OIDs of the arrays to fetch
+     * @return map from OID to the corresponding array
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Map<Integer, Object> fetchArrays(final String coll, final Collection<Integer> oids) throws HsqlException {
+        return fetchArrays(null, coll, oids);
+    }
+
+    /**
+     * Fetch the arrays with the given OIDs from a collection on the rasdaman
+     * connection of the given session.
+     *
+     * @param session the session executing the query, or null
+     * @param coll rasdaman collection name
+     * @param oids OIDs of the arrays to fetch
+     * @return map from OID to the corresponding array
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Map<Integer, Object> fetchArrays(final Session session, final String coll, final Collection<Integer> oids) throws HsqlException {
+        final Map<Integer, Object> ret = new HashMap<Integer, Object>();
+        final List<Integer> remaining = new ArrayList<Integer>(new LinkedHashSet<Integer>(oids));
+
+        for (int from = 0; from < remaining.size(); from += fetchSize) {
+            final List<Integer> chunk = remaining.subList(from, Math.min(from + fetchSize, remaining.size()));
+            final String query = "select c from " + coll + " as c where " + oidFilter("c", chunk);
+            if(printLog) queryOutputStream.println(query);
+
+            final DBag result = (DBag) executeRasqlQuery(session, query, false, false);
+            if (result != null) {
+                final Iterator<?> it = result.iterator();
+                while (it.hasNext()) {
+                    final Object obj = it.next();
+                    final Integer oid = getLocalOid(obj);
+                    if (oid != null) {
+                        ret.put(oid, obj);
+                    }
+                }
+            }
+        }
+
+        // rasj did not report the OID of some arrays, fetch these one by one
+        for (Integer oid : remaining) {
+            if (!ret.containsKey(oid)) {
+                final String query = "select c from " + coll + " as c where oid(c) = " + oid;
+                final Object result = executeRasqlQuery(session, query, false, false);
+                ret.put(oid, head(result));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Evaluate a rasql selector over the arrays with the given OIDs with a
+     * single collection-level query, instead of one query per array.
+     * rasdaman does not report which array a scalar result belongs to, so
+     * the OIDs are selected with the same condition next to the results.
+     * Both queries run on the same connection within one rasdaman
+     * transaction, the one of the session or one opened just for the
+     * batch, where they see the same arrays and scan the collection in the
+     * same order; results are paired in that order.
+     *
+     * @param session the session executing the query, or null
+     * @param selector rasql selector, referring to the arrays as field
+     * @param coll rasdaman collection name
+     * @param field name of the collection iterator used in the selector
+     * @param oids OIDs of the arrays, possibly repeated
+     * @return the result for each of the distinct OIDs, keyed by OID
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Map<Integer, Object> executeBatchArrayQuery(final Session session, final String selector,
+            final String coll, final String field, final Collection<Integer> oids) throws HsqlException {
+        final List<Integer> unique = new ArrayList<Integer>(new LinkedHashSet<Integer>(oids));
+
+        // the results are cached together, as the key can not be attributed
+        // to individual arrays
+        final String batchSelector = String.format("SELECT %s FROM %s AS %s", selector, coll, field);
+        final RasArrayIdSet batchIds = new RasArrayIdSet();
+        for (Integer oid : unique) {
+            batchIds.add(new RasArrayId(coll, oid, field));
+        }
+        final Object cached = resultCache.get(batchSelector, batchIds);
+        if (cached instanceof Map) {
+            final Map<Integer, Object> ret = new HashMap<Integer, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) cached).entrySet()) {
+                ret.put((Integer) entry.getKey(), entry.getValue());
+            }
+            return ret;
+        }
+
+        // the session keeps its rasdaman transaction open on its connection
+        // until the session transaction ends
+        final RasConnection connection = session == null ? getConnection(false) : null;
+        final Map<Integer, Object> ret = new HashMap<Integer, Object>(unique.size() * 2);
+        try {
+            if (connection != null) {
+                connection.begin();
+            }
+            for (int from = 0; from < unique.size(); from += fetchSize) {
+                final List<Integer> chunk = unique.subList(from, Math.min(from + fetchSize, unique.size()));
+                final String filter = oidFilter(field, chunk);
+                final String query = String.format("%s WHERE %s", batchSelector, filter);
+                final String oidQuery = String.format("SELECT oid(%s) FROM %s AS %s WHERE %s", field, coll, field, filter);
+                if(printLog) queryOutputStream.println(query);
+
+                final DBag result;
+                final DBag resultOids;
+                if (connection != null) {
+                    result = (DBag) executeRasqlQuery(connection, query, false, null);
+                    resultOids = (DBag) executeRasqlQuery(connection, oidQuery, false, null);
+                } else {
+                    result = (DBag) executeRasqlQuery(session, query, false, false);
+                    resultOids = (DBag) executeRasqlQuery(session, oidQuery, false, false);
+                }
+                final int size = result == null ? 0 : result.size();
+                if (size != chunk.size() || resultOids == null || resultOids.size() != size) {
+                    throw Error.error(ErrorCode.MDA_OIDNOTFOUND, query);
+                }
+                final Iterator<?> it = result.iterator();
+                for (Iterator<?> oidIt = resultOids.iterator(); oidIt.hasNext(); ) {
+                    ret.put(Integer.valueOf(((Number) oidIt.next()).intValue()), it.next());
+                }
+            }
+        } finally {
+            if (connection != null) {
+                connection.abort();
+                releaseConnection(connection);
+            }
+        }
+        resultCache.put(batchSelector, batchIds, new HashMap<Integer, Object>(ret));
+        return ret;
+    }
+
+    /**
+     * Evaluate a rasql condition over all arrays of a collection with a
+     * single query, e.g. to filter the rows of a table by a predicate on
+     * their arrays instead of evaluating it for every row.
+     *
+     * @param session the session executing the query, or null
+     * @param coll rasdaman collection name
+     * @param field name of the collection iterator used in the condition
+     * @param condition rasql condition, referring to the arrays as field
+     * @return the OIDs of the arrays satisfying the condition
+     * @throws HsqlException If any error occurs processing the query, this exception is thrown.
+     */
+    public static Set<Integer> executeOidQuery(final Session session, final String coll,
+            final String field, final String condition) throws HsqlException {
+        final String query = String.format("SELECT oid(%s) FROM %s AS %s WHERE %s", field, coll, field, condition);
+        if(printLog) queryOutputStream.println(query);
+
+        final Set<Integer> ret = new HashSet<Integer>();
+        final Object result = executeRasqlQuery(session, query, false, false);
+        if (result instanceof DBag) {
+            for (Iterator<?> it = ((DBag) result).iterator(); it.hasNext(); ) {
+                final Object oid = it.next();
+                if (oid instanceof Number) {
+                    ret.add(Integer.valueOf(((Number) oid).intValue()));
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the queue removing deleted arrays and dropped collections in
+     * the background
+     */
+    public static synchronized RasCleanupQueue getCleanupQueue() {
+        if (cleanupQueue == null) {
+            cleanupQueue = new RasCleanupQueue();
+        }
+        return cleanupQueue;
+    }
+
+    /**
+     * Delete the arrays with the given OIDs from a collection; more than
+     * {@link #cleanupThreshold} arrays are deleted in the background.
+     *
+     * @param session the session whose transaction deleted the arrays, or null
+     * @param coll rasdaman collection name
+     * @param oids OIDs of the arrays to delete
+     */
+    public static void deleteArrays(final Session session, final String coll, final List<Integer> oids) throws HsqlException {
+        if (cleanupThreshold > 0 && oids.size() > cleanupThreshold) {
+            getCleanupQueue().delete(coll, oids);
+        } else {
+            deleteArraysNow(session, coll, oids);
+        }
+    }
+
+    /**
+     * Delete the arrays with the given OIDs from a collection, using one
+     * rasql query per {@link #fetchSize} OIDs. Failed deletes are ignored,
+     * they only leave unreferenced arrays behind.
+     *
+     * @param session the session whose transaction deleted the arrays, or null
+     * @param coll rasdaman collection name
+     * @param oids OIDs of the arrays to delete
+     */
+    public static void deleteArraysNow(final Session session, final String coll, final List<Integer> oids) throws HsqlException {
+        for (int from = 0; from < oids.size(); from += fetchSize) {
+            final List<Integer> chunk = oids.subList(from, Math.min(from + fetchSize, oids.size()));
+            final String query = "DELETE FROM " + coll + " AS c WHERE " + oidFilter("c", chunk);
+            executeRasqlQuery(session, query, true, true);
+        }
+    }
+
+    /**
+     * Drop a collection, in the background unless background cleanup is
+     * disabled. Cached results referring to the collection are discarded
+     * right away.
+     *
+     * @param session the session dropping the collection, or null
+     * @param coll rasdaman collection name
+     */
+    public static void dropCollection(final Session session, final String coll) throws HsqlException {
+        if (cleanupThreshold > 0) {
+            getCleanupQueue().drop(coll);
+        } else {
+            executeRasqlQuery(session, "drop collection " + coll, true, true);
+        }
+        invalidateCache(coll);
+    }
+
+    /**
+     * @return a rasql condition selecting the given OIDs from the collection
+     * iterator, e.g. (oid(c) = 1 or oid(c) = 2)
+     */
+    public static String oidFilter(final String iterator, final Collection<Integer> oids) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append('(');
+        for (Iterator<Integer> it = oids.iterator(); it.hasNext(); ) {
+            sb.append("oid(").append(iterator).append(") = ").append(it.next());
+            if (it.hasNext()) {
+                sb.append(" or ");
+            }
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * @return the local OID of an array returned by rasj, or null if it is
+     * not known.
+     */
+    private static Integer getLocalOid(final Object obj) {
+        if (obj instanceof RasObject) {
+            final RasOID oid = ((RasObject) obj).getOID();
+            if (oid != null) {
+                return Integer.valueOf((int) oid.getLocalOID());
+            }
+        }
+        return null;
+    }
+
     private static void writeToFile(final RasGMArray arr, final String filename) throws HsqlException {
         byte dataToWrite[] = arr.getArray();
         FileOutputStream out = null;
@@ -237,100 +970,57 @@ public class RasUtil {
         }
     }
 
-    public static void openDatabase(final String username, final String password,
-                                    final boolean writeAccess) throws HsqlException{
-        if (db!= null)
-            closeDatabase();
-        rasImplementation = new RasImplementation("http://"+ server +":"+ port);
-        rasImplementation.setUserIdentification(username, password);
-
-
-        db = rasImplementation.newDatabase();
-        int attempts = 0;
-
-        //Try to connect until the maximum number of attempts is reached
-        //This loop handles connection attempts to a saturated rasdaman
-        //complex which will refuse the connection until a server becomes
-        //available.
-        boolean dbOpened = false;
+    /**
+     * @return the pool of read-only or read-write rasdaman connections of
+     * the first rasdaman server
+     */
+    public static RasConnectionPool getPool(boolean writeAccess) {
+        return endpoints[0].getPool(writeAccess);
+    }
 
-        while(!dbOpened) {
+    /**
+     * @return the configured rasdaman servers
+     */
+    public static RasEndpoint[] getEndpoints() {
+        return endpoints.clone();
+    }
 
-            //Try to obtain a free rasdaman server
-            try {
-                if(printLog) log.finer("Opening database ...");
-                db.open(database, writeAccess ? Database.OPEN_READ_WRITE : Database.OPEN_READ_ONLY);
-                dbOpened = true;
-            } catch(RasConnectionFailedException ex) {
-
-                //A connection with a Rasdaman server could not be established
-                //retry shortly unless connection attempts exceeded the maximum
-                //possible connection attempts.
-                attempts++;
-                dbOpened = false;
-                if(!(attempts < MDA_MAX_ATTEMPTS))
-                    //Throw a RasConnectionFailedException if the connection
-                    //attempts exceeds the maximum connection attempts.
-                    throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, attempts+" attempts");
-
-                //Sleep before trying to open another connection
-                try {
-                    Thread.sleep(MDA_TIMEOUT);
-                } catch(InterruptedException e) {
-                    if(printLog) log.error("Thread " + Thread.currentThread().getName() +
-                            " was interrupted while searching a free server.");
-                    throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, attempts+" attempts");
-                }
-            } catch(ODMGException ex) {
-
-                //The maximum amount of connection attempts was exceeded
-                //and a connection could not be established. Return
-                //an exception indicating Rasdaman is unavailable.
-
-                if(printLog) log.info("A Rasdaman request could not be fulfilled since no "+
-                        "free Rasdaman server were available. Consider adjusting "+
-                        "the values of rasdaman_retry_attempts and rasdaman_retry_timeout "+
-                        "or adding more Rasdaman servers.",ex);
-                throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, attempts+" attempts");
-            } catch (RasClientInternalException ex) {
-                //A connection with a Rasdaman server could not be established
-                //retry shortly unless connection attempts exceeded the maximum
-                //possible connection attempts.
-                System.out.println("WARNING: internal ras client exception..., "+attempts+" attempts");
-                attempts++;
-                dbOpened = false;
-                if(!(attempts < MDA_MAX_ATTEMPTS))
-                    //Throw a RasConnectionFailedException if the connection
-                    //attempts exceeds the maximum connection attempts.
-                {
-                    throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, attempts + " attempts");
-                }
+    /**
+     * Check out a read-only connection from the least loaded available
+     * rasdaman server, or a read-write connection from the first server;
+     * it must be returned with {@link #releaseConnection(RasConnection)}.
+     */
+    public static RasConnection getConnection(boolean writeAccess) throws HsqlException {
+        if (writeAccess) {
+            return endpoints[0].acquire(true, RasConnection.MAX_ATTEMPTS);
+        }
+        return RasEndpoint.acquireRead(endpoints, workerThread.get() != null);
+    }
 
-                //Sleep before trying to open another connection
-                try {
-                    Thread.sleep(MDA_TIMEOUT);
-                } catch(InterruptedException e) {
-                    if(printLog) log.error("Thread " + Thread.currentThread().getName() +
-                            " was interrupted while searching a free server.");
-                    throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, attempts+" attempts");
-                }
-            }
+    /**
+     * Return a connection to the pool it was checked out from.
+     */
+    public static void releaseConnection(RasConnection connection) {
+        if (connection != null) {
+            connection.getEndpoint().release(connection);
         }
     }
 
+    /**
+     * Make sure that a connection with the given access mode can be
+     * established; the connection is kept open in the pool.
+     */
+    public static void openDatabase(final boolean writeAccess) throws HsqlException {
+        releaseConnection(getConnection(writeAccess));
+    }
+
+    /**
+     * Close all idle pooled connections.
+     */
     public static void closeDatabase() throws HsqlException {
-        try {
-            if(printLog) log.finer("Closing database ...");
-            if (db != null)
-                db.close();
-            else
-                System.out.println("Db was already closed.");
-        } catch (final Exception ex) {
-            if(printLog) log.info("Error closing database connection: ", ex);
-            throw Error.error(ex, ErrorCode.MDA_CONNECTION, "Count not close database");
+        for (RasEndpoint endpoint : endpoints) {
+            endpoint.close();
         }
-        rasImplementation = null;
-        db = null;
     }
 
     /**
@@ -355,7 +1045,7 @@ public class RasUtil {
      * @throws org.hsqldb.HsqlException
      */
     public static Object executeRasqlQuery(final String query, boolean ignoreFailedQuery, boolean writeAccess) throws HsqlException {
-        return executeRasqlQuery(query, ignoreFailedQuery, writeAccess, null);
+        return executeRasqlQuery(null, query, ignoreFailedQuery, writeAccess, null);
     }
 
     /**
@@ -368,36 +1058,185 @@ public class RasUtil {
      * @throws org.hsqldb.HsqlException
      */
     public static Object executeRasqlQuery(final String query, boolean ignoreFailedQuery, boolean writeAccess, Object data) throws HsqlException {
-        //The result of the query will be assigned to ret
-        //Should always return a result (empty result possible)
-        //since a RasdamanException will be thrown in case of error
-        Object ret = null;
+        return executeRasqlQuery(null, query, ignoreFailedQuery, writeAccess, data);
+    }
+
+    /**
+     * Execute a RasQL query on a connection checked out by the session.
+     *
+     * @param session the session; if null a connection is checked out of
+     * the pool just for this query
+     * @param query The rasql query string.
+     * @param ignoreFailedQuery if true, a failed query will be silently ignored
+     * @param writeAccess open database with write access
+     * @return result object.
+     * @throws org.hsqldb.HsqlException
+     */
+    public static Object executeRasqlQuery(final Session session, final String query,
+            boolean ignoreFailedQuery, boolean writeAccess) throws HsqlException {
+        return executeRasqlQuery(session, query, ignoreFailedQuery, writeAccess, null);
+    }
 
+    /**
+     * Execute a RasQL query on a connection checked out by the session.
+     *
+     * @param session the session; if null a connection is checked out of
+     * the pool just for this query
+     * @param query The rasql query string.
+     * @param ignoreFailedQuery if true, a failed query will be silently ignored
+     * @param writeAccess open database with write access
+     * @param data parameter bound to $1 in the query, or null
+     * @return result object.
+     * @throws org.hsqldb.HsqlException
+     */
+    public static Object executeRasqlQuery(final Session session, final String query,
+            boolean ignoreFailedQuery, boolean writeAccess, Object data) throws HsqlException {
+        if (session != null) {
+            return executeSessionQuery(session, query, ignoreFailedQuery, writeAccess, data);
+        }
+        final RasConnection connection = getConnection(writeAccess);
         try {
-            TimerUtil.startTimer("RasUtil.executeRasqlQuery");
+            return executeRasqlQuery(connection, query, ignoreFailedQuery, data);
+        } finally {
+            releaseConnection(connection);
+        }
+    }
 
-            String user = username;
-            String pass = password;
-            if (writeAccess) {
-                user = adminUsername;
-                pass = adminPassword;
+    /**
+     * Execute a RasQL query on the connection of the session, under the
+     * deadline of the current statement. If the statement has a timeout or
+     * the session has had statements cancelled, the query is executed by
+     * another thread while the session thread waits for it; when the
+     * deadline passes or the statement is cancelled, the session abandons
+     * the query and its connection. rasdaman can't interrupt a running
+     * query, so the executing thread aborts the rasdaman transaction and
+     * closes the connection once the query has ended.
+     * <p>
+     * Otherwise the query runs on the session thread, and a cancel takes
+     * effect before the next query of the statement.
+     */
+    private static Object executeSessionQuery(final Session session, final String query,
+            final boolean ignoreFailedQuery, boolean writeAccess, final Object data) throws HsqlException {
+        checkDeadline(session, query);
+        final RasConnection connection = session.getRasConnection(writeAccess);
+        if (session.getRasDeadline() == 0 && !session.isRasCancellable()) {
+            return executeRasqlQuery(connection, query, ignoreFailedQuery, data);
+        }
+        connection.startQuery();
+        final Future<Object> task;
+        try {
+            task = getQueryExecutor().submit(RasQueryStats.wrap(new Callable<Object>() {
+                public Object call() {
+                    try {
+                        return executeRasqlQuery(connection, query, ignoreFailedQuery, data);
+                    } finally {
+                        if (connection.endQuery()) {
+                            connection.abort();
+                            releaseConnection(connection);
+                        }
+                    }
+                }
+            }));
+        } catch (RuntimeException ex) {
+            connection.endQuery();
+            throw Error.error(ex, ErrorCode.MDA_UNAVAILABLE, query);
+        }
+
+        session.setRasQuery(task);
+        try {
+            final long deadline = session.getRasDeadline();
+            if (deadline == 0) {
+                return task.get();
             }
-            if (rasImplementation == null || db == null) {
-                openDatabase(user, pass, writeAccess);
+            return task.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            return abandon(session, connection, task, ErrorCode.X_40502, query);
+        } catch (CancellationException ex) {
+            return abandon(session, connection, task, ErrorCode.MDA_CANCELLED, query);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return abandon(session, connection, task, ErrorCode.MDA_CANCELLED, query);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof HsqlException) {
+                throw (HsqlException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof java.lang.Error) {
+                throw (java.lang.Error) cause;
             }
+            throw Error.error(cause, ErrorCode.MDA_CONNECTION, query);
+        } finally {
+            session.setRasQuery(null);
+        }
+    }
+
+    /**
+     * Hand the connection of an abandoned query over to the thread executing
+     * it, unless the query has ended in the meantime.
+     * @return the result of the query if it has ended
+     */
+    private static Object abandon(Session session, RasConnection connection,
+            Future<Object> task, int errorCode, String query) throws HsqlException {
+        if (!connection.cancel()) {
+            // the query has just ended, its result is complete
+            return await(task);
+        }
+        session.detachRasConnection(connection);
+        CANCELLED_QUERIES.increment();
+        throw Error.error(errorCode, query);
+    }
 
-            Transaction tr;
+    /**
+     * @throws HsqlException if the current statement of the session was
+     * cancelled or has passed its deadline
+     */
+    public static void checkDeadline(Session session, String query) throws HsqlException {
+        if (session.isRasCancelled()) {
+            throw Error.error(ErrorCode.MDA_CANCELLED, query);
+        }
+        final long deadline = session.getRasDeadline();
+        if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+            throw Error.error(ErrorCode.X_40502, query);
+        }
+    }
 
-            if (printLog) {
-                log.finer("Starting transaction ...");
+    /**
+     * Execute a RasQL query on the given connection.
+     *
+     * @param connection an open rasdaman connection
+     * @param query The rasql query string.
+     * @param ignoreFailedQuery if true, a failed query will be silently ignored
+     * @param data parameter bound to $1 in the query, or null
+     * @return result object.
+     * @throws org.hsqldb.HsqlException
+     */
+    public static Object executeRasqlQuery(final RasConnection connection, final String query,
+            boolean ignoreFailedQuery, Object data) throws HsqlException {
+        //The result of the query will be assigned to ret
+        //Should always return a result (empty result possible)
+        //since a RasdamanException will be thrown in case of error
+        Object ret = null;
+        boolean failed = true;
+        final long start = System.nanoTime();
+
+        try {
+
+            //queries inside a transaction opened with RasConnection.begin()
+            //are sent back-to-back, the transaction is ended by its owner,
+            //e.g. the session when its transaction ends
+            final boolean ownTransaction = !connection.inTransaction();
+            if (ownTransaction) {
+                if (printLog) {
+                    log.finer("Starting transaction ...");
+                }
+                connection.begin();
             }
-            tr = rasImplementation.newTransaction();
-            tr.begin();
 
             if (printLog) {
                 log.finer("Instantiating query ...");
             }
-            OQLQuery q = rasImplementation.newOQLQuery();
+            OQLQuery q = connection.newOQLQuery();
 
             //A free rasdaman server was obtained, executing query
             try {
@@ -411,32 +1250,105 @@ public class RasUtil {
                 }
                 ret = q.execute();
 
-                if (printLog) {
-                    log.finer("Committing transaction ...");
+                if (ownTransaction) {
+                    if (printLog) {
+                        log.finer("Committing transaction ...");
+                    }
+                    connection.commit();
                 }
-                tr.commit();
-                RasCollCatalog.update(query);
+                final String coll = RasCollCatalog.update(query);
+                if (!ownTransaction) {
+                    connection.modified(coll);
+                }
+                failed = false;
             } catch (QueryException ex) {
                 //Executing a rasdaman query failed
-                tr.abort();
+                if (ownTransaction) {
+                    connection.abort();
+                }
                 if (!ignoreFailedQuery) {
                     throw Error.error(ex, ErrorCode.MDA_QUERY, query);
                 }
             } catch (java.lang.Error ex) {
                 ex.printStackTrace();
-                tr.abort();
+                connection.invalidate();
+                if (ownTransaction) {
+                    connection.abort();
+                }
                 throw Error.error(ErrorCode.MDA_OVERLOAD, query);
             } catch (NullPointerException ex) {
                 //there is a rasj bug that throws a NullPointerException for queries that retrieve scalars
-                tr.abort();
+                if (ownTransaction) {
+                    connection.abort();
+                }
                 throw Error.error(ErrorCode.MDA_RASJ_BUG, query);
+            } catch (RasRuntimeException ex) {
+                //the connection is in an unknown state after a client failure
+                connection.invalidate();
+                if (ownTransaction) {
+                    connection.abort();
+                }
+                throw Error.error(ex, ErrorCode.MDA_CONNECTION, query);
+            } catch (ODMGRuntimeException ex) {
+                connection.invalidate();
+                if (ownTransaction) {
+                    connection.abort();
+                }
+                throw Error.error(ex, ErrorCode.MDA_CONNECTION, query);
             }
         } finally {
-            TimerUtil.stopTimer("RasUtil.executeRasqlQuery");
+            final long nanos = System.nanoTime() - start;
+            long received = 0;
+            long sent = 0;
+            LATENCY.record(nanos / 1000);
+            QUERIES.increment();
+            if (failed) {
+                FAILED_QUERIES.increment();
+            } else {
+                RESULT_ROWS.record(ret instanceof Collection ? ((Collection) ret).size() : 1);
+                received = RasResultCache.estimateSize(ret);
+                BYTES_RECEIVED.add(received);
+            }
+            if (data != null) {
+                sent = RasResultCache.estimateSize(data);
+                BYTES_SENT.add(sent);
+            }
+            RasQueryStats.recordQuery(nanos, failed, sent, received);
         }
         return ret;
     }
     
+    /**
+     * Largest array that can be sent to rasdaman in one transfer: rasj
+     * holds the data of an array in a single Java byte array.
+     */
+    private static final long MAX_TRANSFER_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Read a BLOB into a rasj array, e.g. an encoded file passed to decode.
+     * The array buffer of the full BLOB length is allocated once and filled
+     * in chunks of the session stream block size. Each chunk is still
+     * returned by the LobManager as a temporary byte array, so the peak
+     * heap use is the BLOB plus one chunk rather than two copies of the
+     * BLOB.
+     * @throws HsqlException MDA_OVERLOAD if the BLOB is larger than a single
+     * rasj transfer allows
+     */
+    public static RasGMArray convertBlobToArray(Session session, BlobData blob) throws HsqlException {
+        final long length = blob.length(session);
+        if (length > MAX_TRANSFER_SIZE) {
+            throw Error.error(ErrorCode.MDA_OVERLOAD, "BLOB of " + length
+                    + " bytes exceeds the maximum transfer size of " + MAX_TRANSFER_SIZE + " bytes");
+        }
+        final byte[] data = new byte[(int) length];
+        final int chunkSize = session.getStreamBlockSize();
+        for (int pos = 0; pos < data.length; pos += chunkSize) {
+            final int n = Math.min(chunkSize, data.length - pos);
+            System.arraycopy(blob.getBytes(session, pos, n), 0, data, pos, n);
+        }
+        return convertBlobToArray(data);
+    }
+
     public static RasGMArray convertBlobToArray(byte[] data) {
         RasMInterval domain = new RasMInterval(1);
         try {
@@ -490,9 +1402,7 @@ public class RasUtil {
      * @return true if coll exists, false otherwise.
      */
     public static boolean collectionExists(String coll) {
-        Set<String> colls = RasUtil.dbagArrayToSetString(
-                RasUtil.executeRasqlQuery("select c from RAS_COLLECTIONNAMES as c", false, true));
-        return colls.contains(coll);
+        return RasCollCatalog.contains(coll);
     }
     
     /**
@@ -599,19 +1509,13 @@ public class RasUtil {
      * Convert RasGMArray to a Java array that contains the array values.
      */
     public static Object[] gmarrayToArray(Object gmarray) {
-        Object[] ret = null;
-        if (gmarray instanceof RasMArrayByte) {
-            ret = TypeUtil.convertArray(((RasMArrayByte)gmarray).getArray());
-        } else if (gmarray instanceof RasMArrayShort) {
-            ret = TypeUtil.convertArray(((RasMArrayShort)gmarray).getShortArray());
-        } else if (gmarray instanceof RasMArrayInteger) {
-            ret = TypeUtil.convertArray(((RasMArrayInteger)gmarray).getIntArray());
-        } else if (gmarray instanceof RasMArrayLong) {
-            ret = TypeUtil.convertArray(((RasMArrayLong)gmarray).getLongArray());
-        } else if (gmarray instanceof RasMArrayFloat) {
-            ret = TypeUtil.convertArray(((RasMArrayFloat)gmarray).getFloatArray());
-        } else if (gmarray instanceof RasMArrayDouble) {
-            ret = TypeUtil.convertArray(((RasMArrayDouble)gmarray).getDoubleArray());
+        final RasCellBuffer cells = RasCellBuffer.wrap(gmarray);
+        if (cells == null) {
+            return null;
+        }
+        final Object[] ret = new Object[cells.length()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = cells.get(i);
         }
         return ret;
     }
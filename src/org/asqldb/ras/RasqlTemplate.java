@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.ras;
+
+import java.util.Iterator;
+
+/**
+ * The rasql query of an MDA root node, compiled once and filled in with the
+ * array OIDs of every row it is evaluated on. The selector and the FROM
+ * clause only depend on the expression and the columns it refers to, so
+ * they are rendered on the first evaluation; per row only the OIDs are
+ * appended to the WHERE clause.<p>
+ *
+ * If the selector contains no per-row values, i.e. it refers only to
+ * constants and MDA columns, the template is marked as invariant and the
+ * selector does not need to be rendered again for the following rows.
+ *
+ * @author Dimitar Misev
+ */
+public class RasqlTemplate {
+
+    private final String selector;
+    private final boolean invariant;
+
+    /**
+     * Collection and field of each array slot, in iteration order of the
+     * RasArrayIdSet the template was compiled for.
+     */
+    private final String[] colls;
+    private final String[] fields;
+
+    /**
+     * Query text before the first OID, and the text before each further OID.
+     */
+    private final String prefix;
+    private final String[] slots;
+
+    /**
+     * @param selector rasql selector rendered for the first row
+     * @param rasArrayIds arrays of the first row
+     * @param invariant true if the selector is the same for every row
+     */
+    public RasqlTemplate(String selector, RasArrayIdSet rasArrayIds, boolean invariant) {
+        this.selector = selector;
+        this.invariant = invariant;
+        final int n = rasArrayIds.size();
+        this.colls = new String[n];
+        this.fields = new String[n];
+        this.slots = new String[n];
+        int i = 0;
+        for (RasArrayId id : rasArrayIds) {
+            colls[i] = id.getRasColl();
+            fields[i] = id.getHsqlField();
+            slots[i] = (i == 0 ? "" : " and ") + "oid(" + fields[i] + ") = ";
+            ++i;
+        }
+        if (n == 0) {
+            this.prefix = "SELECT " + selector;
+        } else {
+            this.prefix = "SELECT " + selector + " FROM "
+                    + rasArrayIds.stringifyRasColls() + " WHERE ";
+        }
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    /**
+     * @return true if the selector does not depend on the row
+     */
+    public boolean isInvariant() {
+        return invariant;
+    }
+
+    /**
+     * @return true if the template was compiled for arrays of the same
+     * collections and columns as the given ones
+     */
+    public boolean matches(RasArrayIdSet rasArrayIds) {
+        if (rasArrayIds.size() != colls.length) {
+            return false;
+        }
+        int i = 0;
+        for (RasArrayId id : rasArrayIds) {
+            if (!colls[i].equals(id.getRasColl()) || !fields[i].equals(id.getHsqlField())) {
+                return false;
+            }
+            ++i;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the template can be filled in for the given selector
+     * and arrays
+     */
+    public boolean matches(String selector, RasArrayIdSet rasArrayIds) {
+        return this.selector.equals(selector) && matches(rasArrayIds);
+    }
+
+    /**
+     * @param rasArrayIds arrays of the current row, accepted by {@link #matches(RasArrayIdSet)}
+     * @return the rasql query selecting the template selector over the arrays
+     */
+    public String fill(RasArrayIdSet rasArrayIds) {
+        if (slots.length == 0) {
+            return prefix;
+        }
+        final StringBuilder sb = new StringBuilder(prefix.length() + slots.length * 24);
+        sb.append(prefix);
+        final Iterator<RasArrayId> it = rasArrayIds.iterator();
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(slots[i]).append(it.next().getRasOid());
+        }
+        return sb.toString();
+    }
+}
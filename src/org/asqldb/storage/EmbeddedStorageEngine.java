@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.asqldb.ras.RasArrayId;
+import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasCollInfo;
+import org.asqldb.ras.RasLocalArray;
+import org.asqldb.ras.RasqlTemplate;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.MDADomainIndex;
+import rasj.RasGMArray;
+import rasj.RasMArrayByte;
+import rasj.RasMArrayDouble;
+import rasj.RasMArrayFloat;
+import rasj.RasMArrayInteger;
+import rasj.RasMArrayShort;
+import rasj.RasMInterval;
+
+/**
+ * Stores the arrays in files under a local directory, without a rasdaman
+ * server. Every collection is a directory holding its set type in the file
+ * <code>type</code>, and each array in a file <code>&lt;oid&gt;.mda</code>
+ * with a small header (magic number, length and text of the spatial domain)
+ * followed by the cells in the rasj byte order. Arrays are not tiled: an
+ * array file is read whole into the byte array of the rasj array, which
+ * owns its cells on the heap.<p>
+ *
+ * Only array literals can be inserted. Queries are not evaluated by the
+ * engine: MDA expressions supported by RasLocalEvaluator are computed in
+ * the JVM, other MDA expressions fail with MDA_UNSUPPORTED.
+ * Writes are not part of the session transaction: inserted arrays are
+ * written immediately, deleted arrays are removed on commit.
+ *
+ * @author Dimitar Misev
+ */
+public class EmbeddedStorageEngine implements MDAStorageEngine {
+
+    private static final int MAGIC = 0x4D444131;
+    private static final String TYPE_FILE = "type";
+    private static final String ARRAY_SUFFIX = ".mda";
+
+    private final File dir;
+
+    /**
+     * Set type and last OID of each collection read or created so far.
+     */
+    private final ConcurrentMap<String, String> types = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, AtomicInteger> lastOids = new ConcurrentHashMap<String, AtomicInteger>();
+
+    public EmbeddedStorageEngine(File dir) {
+        this.dir = dir;
+    }
+
+    public String getName() {
+        return MDAStorage.EMBEDDED;
+    }
+
+    public synchronized void createCollection(Session session, String coll, String setType) throws HsqlException {
+        final File collDir = getCollectionDir(coll);
+        if (new File(collDir, TYPE_FILE).isFile()) {
+            return;
+        }
+        if (!collDir.isDirectory() && !collDir.mkdirs()) {
+            throw Error.error(ErrorCode.MDA_IOERROR, collDir.getPath());
+        }
+        getCellType(setType);
+        writeString(new File(collDir, TYPE_FILE), setType);
+        types.put(coll, setType);
+        lastOids.put(coll, new AtomicInteger());
+        MDADomainIndex.created(coll);
+    }
+
+    public synchronized void dropCollection(Session session, String coll) throws HsqlException {
+        MDADomainIndex.dropped(coll);
+        types.remove(coll);
+        lastOids.remove(coll);
+        final File collDir = getCollectionDir(coll);
+        final File[] files = collDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        collDir.delete();
+    }
+
+    public boolean collectionExists(String coll) throws HsqlException {
+        return types.containsKey(coll) || new File(getCollectionDir(coll), TYPE_FILE).isFile();
+    }
+
+    public Integer insert(Session session, String coll, String value, Object data) throws HsqlException {
+        if (data != null) {
+            // decoding of encoded files is left to rasdaman
+            throw Error.error(ErrorCode.MDA_UNSUPPORTED, value);
+        }
+        final RasLocalArray array = RasLocalArray.parseLiteral(value, getCellType(getSetType(coll)));
+        final Integer oid = Integer.valueOf(getLastOid(coll).incrementAndGet());
+        writeArray(getArrayFile(coll, oid), array.getDomain(), array.toBytes());
+        MDADomainIndex.get(coll).insert(oid, RasCollInfo.parseDomain(array.getDomain()));
+        return oid;
+    }
+
+    public Object fetch(Session session, String coll, Integer oid) throws HsqlException {
+        final File file = getArrayFile(coll, oid);
+        if (!file.isFile()) {
+            throw Error.error(ErrorCode.MDA_OIDNOTFOUND, coll + ":" + oid);
+        }
+        return readArray(file, getSetType(coll));
+    }
+
+    public Map<Integer, Object> fetch(Session session, String coll, Collection<Integer> oids) throws HsqlException {
+        final Map<Integer, Object> ret = new HashMap<Integer, Object>(oids.size() * 2);
+        final String setType = getSetType(coll);
+        for (Integer oid : oids) {
+            final File file = getArrayFile(coll, oid);
+            if (file.isFile()) {
+                ret.put(oid, readArray(file, setType));
+            }
+        }
+        return ret;
+    }
+
+    public String getDomain(Session session, String coll, Integer oid) throws HsqlException {
+        final File file = getArrayFile(coll, oid);
+        if (!file.isFile()) {
+            throw Error.error(ErrorCode.MDA_OIDNOTFOUND, coll + ":" + oid);
+        }
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            if (in.readInt() != MAGIC) {
+                throw Error.error(ErrorCode.MDA_IOERROR, file.getPath());
+            }
+            final byte[] sdom = new byte[in.readInt()];
+            in.readFully(sdom);
+            return new String(sdom);
+        } catch (IOException ex) {
+            throw Error.error(ErrorCode.MDA_IOERROR, ex);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    public void delete(Session session, String coll, List<Integer> oids) throws HsqlException {
+        for (Integer oid : oids) {
+            getArrayFile(coll, oid).delete();
+        }
+        MDADomainIndex.get(coll).delete(oids);
+    }
+
+    public boolean supportsQueries() {
+        return false;
+    }
+
+    public Object evaluate(Session session, RasqlTemplate template, RasArrayIdSet rasArrayIds) throws HsqlException {
+        if (rasArrayIds.size() == 1) {
+            final RasArrayId id = rasArrayIds.iterator().next();
+            if (template.getSelector().trim().equals(id.getHsqlField())) {
+                return fetch(session, id.getRasColl(), id.getRasOid());
+            }
+        }
+        throw Error.error(ErrorCode.MDA_UNSUPPORTED, template.getSelector());
+    }
+
+    public Set<Integer> select(Session session, String coll, String field, String condition) throws HsqlException {
+        throw Error.error(ErrorCode.MDA_UNSUPPORTED, condition);
+    }
+
+    private File getCollectionDir(String coll) {
+        return new File(dir, coll);
+    }
+
+    private File getArrayFile(String coll, Integer oid) {
+        return new File(getCollectionDir(coll), oid + ARRAY_SUFFIX);
+    }
+
+    private String getSetType(String coll) throws HsqlException {
+        String ret = types.get(coll);
+        if (ret == null) {
+            final File typeFile = new File(getCollectionDir(coll), TYPE_FILE);
+            if (!typeFile.isFile()) {
+                throw Error.error(ErrorCode.MDA_QUERY, "Collection " + coll + " does not exist");
+            }
+            ret = readString(typeFile);
+            types.put(coll, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the counter of the last OID in a collection, initialized from
+     * the array files on the first access
+     */
+    private AtomicInteger getLastOid(String coll) {
+        AtomicInteger ret = lastOids.get(coll);
+        if (ret == null) {
+            int max = 0;
+            final String[] names = getCollectionDir(coll).list();
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(ARRAY_SUFFIX)) {
+                        try {
+                            max = Math.max(max, Integer.parseInt(
+                                    name.substring(0, name.length() - ARRAY_SUFFIX.length())));
+                        } catch (NumberFormatException ex) {
+                        }
+                    }
+                }
+            }
+            final AtomicInteger existing = lastOids.putIfAbsent(coll, new AtomicInteger(max));
+            ret = existing != null ? existing : lastOids.get(coll);
+        }
+        return ret;
+    }
+
+    private static int getCellType(String setType) throws HsqlException {
+        final int ret = RasLocalArray.getCellType(setType);
+        if (ret < 0) {
+            throw Error.error(ErrorCode.MDA_UNSUPPORTED, setType);
+        }
+        return ret;
+    }
+
+    private static RasGMArray newArray(String setType, RasMInterval domain) {
+        if (setType.startsWith("Double")) {
+            return new RasMArrayDouble(domain);
+        } else if (setType.startsWith("Float")) {
+            return new RasMArrayFloat(domain);
+        } else if (setType.startsWith("Long")) {
+            return new RasMArrayInteger(domain);
+        } else if (setType.startsWith("Short")) {
+            return new RasMArrayShort(domain);
+        }
+        return new RasMArrayByte(domain);
+    }
+
+    private static void writeArray(File file, String sdom, byte[] cells) throws HsqlException {
+        final byte[] sdomBytes = sdom.getBytes();
+        final File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(tmp, "rw");
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(sdomBytes.length);
+            out.write(sdomBytes);
+            out.write(cells);
+            out.getFD().sync();
+        } catch (IOException ex) {
+            throw Error.error(ErrorCode.MDA_IOERROR, ex);
+        } finally {
+            closeQuietly(out);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw Error.error(ErrorCode.MDA_IOERROR, file.getPath());
+        }
+    }
+
+    private static RasGMArray readArray(File file, String setType) throws HsqlException {
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            if (in.readInt() != MAGIC) {
+                throw Error.error(ErrorCode.MDA_IOERROR, file.getPath());
+            }
+            final byte[] sdom = new byte[in.readInt()];
+            in.readFully(sdom);
+            final byte[] cells = new byte[(int) (in.length() - in.getFilePointer())];
+            in.readFully(cells);
+
+            final RasGMArray ret = newArray(setType, new RasMInterval(new String(sdom)));
+            ret.setArray(cells);
+            return ret;
+        } catch (IOException ex) {
+            throw Error.error(ErrorCode.MDA_IOERROR, ex);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void writeString(File file, String value) throws HsqlException {
+        Writer out = null;
+        try {
+            out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            out.write(value);
+        } catch (IOException ex) {
+            throw Error.error(ErrorCode.MDA_IOERROR, ex);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static String readString(File file) throws HsqlException {
+        Reader in = null;
+        try {
+            in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            final StringBuilder sb = new StringBuilder();
+            final char[] buf = new char[64];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                sb.append(buf, 0, n);
+            }
+            return sb.toString().trim();
+        } catch (IOException ex) {
+            throw Error.error(ErrorCode.MDA_IOERROR, ex);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
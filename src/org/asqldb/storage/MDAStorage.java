@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.storage;
+
+import java.io.File;
+import org.asqldb.ras.RasUtil;
+import org.hsqldb.Database;
+import org.hsqldb.DatabaseURL;
+
+/**
+ * Gives access to the MDA storage engine configured with the ras.engine
+ * property: <code>rasdaman</code> (default) stores the arrays in a rasdaman
+ * server, <code>embedded</code> in files under ras.embedded.dir. Without
+ * ras.embedded.dir, the embedded engine keeps the arrays of a file database
+ * <code>&lt;path&gt;</code> in the directory <code>&lt;path&gt;.mda</code>
+ * next to the database files, and those of a memory database in a temporary
+ * directory of its own.
+ *
+ * @author Dimitar Misev
+ */
+public class MDAStorage {
+
+    public static final String RASDAMAN = "rasdaman";
+    public static final String EMBEDDED = "embedded";
+
+    private static final String EMBEDDED_DIR_SUFFIX = ".mda";
+
+    private static MDAStorageEngine engine;
+
+    /**
+     * Default directory of the embedded engine, derived from the last
+     * opened database.
+     */
+    private static File databaseDir;
+
+    public static synchronized MDAStorageEngine get() {
+        if (engine == null) {
+            if (EMBEDDED.equalsIgnoreCase(RasUtil.engine)) {
+                engine = new EmbeddedStorageEngine(getEmbeddedDir());
+            } else {
+                engine = new RasdamanStorageEngine();
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Called when a database is opened; the embedded engine stores the
+     * arrays next to its files unless ras.embedded.dir is set.
+     */
+    public static synchronized void open(Database database) {
+        final File dir;
+        if (DatabaseURL.S_FILE.equals(database.getType())) {
+            dir = new File(database.getPath() + EMBEDDED_DIR_SUFFIX);
+        } else {
+            dir = new File(System.getProperty("java.io.tmpdir"),
+                    "asqldb-" + database.getUniqueName() + EMBEDDED_DIR_SUFFIX);
+        }
+        if (!dir.equals(databaseDir)) {
+            databaseDir = dir;
+            if (engine instanceof EmbeddedStorageEngine && RasUtil.embeddedDir == null) {
+                engine = null;
+            }
+        }
+    }
+
+    private static File getEmbeddedDir() {
+        if (RasUtil.embeddedDir != null) {
+            return new File(RasUtil.embeddedDir);
+        }
+        if (databaseDir != null) {
+            return databaseDir;
+        }
+        return new File(System.getProperty("java.io.tmpdir"), "asqldb" + EMBEDDED_DIR_SUFFIX);
+    }
+
+    /**
+     * Replace the engine in use, e.g. in tests; null restores the configured
+     * engine.
+     */
+    public static synchronized void set(MDAStorageEngine engine) {
+        MDAStorage.engine = engine;
+    }
+}
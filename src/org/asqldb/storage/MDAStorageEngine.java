@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.storage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasqlTemplate;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+
+/**
+ * Storage of the arrays of MDARRAY columns. Every MDARRAY column is backed
+ * by a collection of the engine, and a row holds the OID of its array in
+ * that collection. The engine in use is returned by {@link MDAStorage#get()}.
+ *
+ * @author Dimitar Misev
+ */
+public interface MDAStorageEngine {
+
+    /**
+     * @return name of the engine as given in the ras.engine property
+     */
+    String getName();
+
+    /**
+     * Create the collection of an MDARRAY column, unless it exists already.
+     * @param session the session executing the DDL statement
+     * @param coll collection name
+     * @param setType rasdaman set type of the collection, e.g. DoubleSet1
+     */
+    void createCollection(Session session, String coll, String setType) throws HsqlException;
+
+    /**
+     * Drop the collection of an MDARRAY column with all its arrays.
+     */
+    void dropCollection(Session session, String coll) throws HsqlException;
+
+    boolean collectionExists(String coll) throws HsqlException;
+
+    /**
+     * Insert an array given by a rasql array expression, e.g. a literal
+     * <code>&lt;[0:2] 1d,2d,3d&gt;</code>.
+     * @param session the session executing the insert
+     * @param coll collection name
+     * @param value rasql expression of the new array
+     * @param data array bound to $1 in the expression, a BlobData to be read
+     * by the engine, e.g. the encoded file of a decode, or null
+     * @return the OID of the new array
+     */
+    Integer insert(Session session, String coll, String value, Object data) throws HsqlException;
+
+    /**
+     * @return the array with the given OID
+     */
+    Object fetch(Session session, String coll, Integer oid) throws HsqlException;
+
+    /**
+     * @return map from OID to the corresponding array
+     */
+    Map<Integer, Object> fetch(Session session, String coll, Collection<Integer> oids) throws HsqlException;
+
+    /**
+     * @return the spatial domain of the array with the given OID, e.g.
+     * [0:99,0:49], without fetching its cells
+     */
+    String getDomain(Session session, String coll, Integer oid) throws HsqlException;
+
+    /**
+     * Delete the arrays of rows deleted by a committed transaction.
+     */
+    void delete(Session session, String coll, List<Integer> oids) throws HsqlException;
+
+    /**
+     * @return true if {@link #evaluate(Session, RasqlTemplate, RasArrayIdSet)}
+     * accepts any rasql selector, so that MDA expressions can be pushed down
+     */
+    boolean supportsQueries();
+
+    /**
+     * Evaluate the rasql selector of an MDA root node over the arrays of
+     * the current row.
+     * @return the first element of the result
+     */
+    Object evaluate(Session session, RasqlTemplate template, RasArrayIdSet rasArrayIds) throws HsqlException;
+
+    /**
+     * Evaluate a rasql condition over all arrays of a collection; only
+     * called if {@link #supportsQueries()} holds.
+     * @param field iterator name of the collection in the condition
+     * @return the OIDs of the arrays satisfying the condition
+     */
+    Set<Integer> select(Session session, String coll, String field, String condition) throws HsqlException;
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.storage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasCollCatalog;
+import org.asqldb.ras.RasLocalArray;
+import org.asqldb.ras.RasUtil;
+import org.asqldb.ras.RasqlTemplate;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.MDADomainIndex;
+import org.hsqldb.types.BlobData;
+
+/**
+ * Stores the arrays in a rasdaman server through rasj.
+ *
+ * @author Dimitar Misev
+ */
+public class RasdamanStorageEngine implements MDAStorageEngine {
+
+    public String getName() {
+        return MDAStorage.RASDAMAN;
+    }
+
+    public void createCollection(Session session, String coll, String setType) throws HsqlException {
+        // a table of the same name may just have been dropped
+        RasUtil.getCleanupQueue().awaitDrop(coll);
+        if (!RasCollCatalog.contains(coll)) {
+            RasUtil.executeRasqlQuery(session, "create collection " + coll + " " + setType, true, true);
+            MDADomainIndex.created(coll);
+        }
+    }
+
+    public void dropCollection(Session session, String coll) throws HsqlException {
+        MDADomainIndex.dropped(coll);
+        RasUtil.dropCollection(session, coll);
+    }
+
+    public boolean collectionExists(String coll) throws HsqlException {
+        return RasCollCatalog.contains(coll);
+    }
+
+    public Integer insert(Session session, String coll, String value, Object data) throws HsqlException {
+        if (data instanceof BlobData) {
+            data = RasUtil.convertBlobToArray(session, (BlobData) data);
+        }
+        final Object result = RasUtil.executeRasqlQuery(session, "INSERT INTO " + coll + " VALUES " + value, false, true, data);
+        final Integer oid = RasUtil.dbagToOid(result);
+        // results of an earlier array with the same oid are stale
+        RasUtil.invalidateCache(coll, oid);
+        MDADomainIndex.get(coll).insert(oid, RasLocalArray.parseLiteralDomain(value));
+        return oid;
+    }
+
+    public Object fetch(Session session, String coll, Integer oid) throws HsqlException {
+        final String rasql = "select c from " + coll + " as c where oid(c) = " + oid;
+        return RasUtil.head(RasUtil.executeRasqlQuery(session, rasql, false, false));
+    }
+
+    public Map<Integer, Object> fetch(Session session, String coll, Collection<Integer> oids) throws HsqlException {
+        return RasUtil.fetchArrays(session, coll, oids);
+    }
+
+    public String getDomain(Session session, String coll, Integer oid) throws HsqlException {
+        final String rasql = "select sdom(c) from " + coll + " as c where oid(c) = " + oid;
+        final Object ret = RasUtil.head(RasUtil.executeRasqlQuery(session, rasql, false, false));
+        if (ret == null) {
+            throw Error.error(ErrorCode.MDA_OIDNOTFOUND, coll + ":" + oid);
+        }
+        return ret.toString();
+    }
+
+    public void delete(Session session, String coll, List<Integer> oids) throws HsqlException {
+        RasUtil.deleteArrays(session, coll, oids);
+        MDADomainIndex.get(coll).delete(oids);
+    }
+
+    public boolean supportsQueries() {
+        return true;
+    }
+
+    public Object evaluate(Session session, RasqlTemplate template, RasArrayIdSet rasArrayIds) throws HsqlException {
+        return RasUtil.executeRasqlTemplate(session, template, rasArrayIds);
+    }
+
+    public Set<Integer> select(Session session, String coll, String field, String condition) throws HsqlException {
+        return RasUtil.executeOidQuery(session, coll, field, condition);
+    }
+}
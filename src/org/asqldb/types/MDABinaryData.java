@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.types;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import rasj.RasGMArray;
+import rasj.RasIndexOutOfBoundsException;
+import rasj.RasMArrayByte;
+import rasj.RasMArrayDouble;
+import rasj.RasMArrayFloat;
+import rasj.RasMArrayInteger;
+import rasj.RasMArrayLong;
+import rasj.RasMArrayShort;
+import rasj.RasMInterval;
+import rasj.RasSInterval;
+
+/**
+ * Compact binary form of an MDARRAY value, in which arrays are sent to
+ * clients over the HSQL protocol: the spatial domain followed by the raw
+ * cells in row-major order and little-endian byte order. Clients read the
+ * cells with {@link #getBuffer()} or as a primitive array with
+ * {@link #getCells()}, without rasj objects or boxed values.<p>
+ *
+ * The cell types follow rasdaman: LONG cells are 32 bit signed integers,
+ * ULONG cells are 32 bit unsigned integers returned as longs. Cells of
+ * other types, e.g. structs of multiband arrays, are kept as OPAQUE bytes
+ * in the layout rasj returns them.
+ *
+ * @author Dimitar Misev
+ */
+public class MDABinaryData {
+
+    public static final int BOOL = 0;
+    public static final int CHAR = 1;
+    public static final int SHORT = 2;
+    public static final int LONG = 3;
+    public static final int FLOAT = 4;
+    public static final int DOUBLE = 5;
+    public static final int ULONG = 6;
+    public static final int OPAQUE = 7;
+
+    private static final int[] CELL_SIZES = {1, 1, 2, 4, 4, 8, 4, 1};
+
+    private final int cellType;
+
+    /**
+     * Lower and upper bound of each dimension, alternating.
+     */
+    private final long[] domain;
+
+    /**
+     * Cells in little-endian byte order.
+     */
+    private final byte[] cells;
+
+    public MDABinaryData(int cellType, long[] domain, byte[] cells) {
+        if (cellType < BOOL || cellType > OPAQUE || (domain.length & 1) != 0) {
+            throw Error.error(ErrorCode.MDA_INVALID_PARAMETER);
+        }
+        this.cellType = cellType;
+        this.domain = domain;
+        this.cells = cells;
+    }
+
+    /**
+     * Convert an array returned by rasj.
+     * @param gmarray array returned by rasj
+     * @return the binary form of the array, or null if gmarray is not a
+     * rasj array
+     */
+    public static MDABinaryData fromRas(Object gmarray) {
+        if (!(gmarray instanceof RasGMArray)) {
+            return null;
+        }
+        final RasGMArray array = (RasGMArray) gmarray;
+        final long[] domain = toDomain(array.spatialDomain());
+        final ByteBuffer buf;
+        final int cellType;
+        if (array instanceof RasMArrayDouble) {
+            final double[] src = ((RasMArrayDouble) array).getDoubleArray();
+            cellType = DOUBLE;
+            buf = allocate(src.length * 8);
+            buf.asDoubleBuffer().put(src);
+        } else if (array instanceof RasMArrayFloat) {
+            final float[] src = ((RasMArrayFloat) array).getFloatArray();
+            cellType = FLOAT;
+            buf = allocate(src.length * 4);
+            buf.asFloatBuffer().put(src);
+        } else if (array instanceof RasMArrayInteger) {
+            final int[] src = ((RasMArrayInteger) array).getIntArray();
+            cellType = LONG;
+            buf = allocate(src.length * 4);
+            buf.asIntBuffer().put(src);
+        } else if (array instanceof RasMArrayLong) {
+            final long[] src = ((RasMArrayLong) array).getLongArray();
+            cellType = ULONG;
+            buf = allocate(src.length * 4);
+            for (int i = 0; i < src.length; i++) {
+                buf.putInt(i * 4, (int) src[i]);
+            }
+        } else if (array instanceof RasMArrayShort) {
+            final short[] src = ((RasMArrayShort) array).getShortArray();
+            cellType = SHORT;
+            buf = allocate(src.length * 2);
+            buf.asShortBuffer().put(src);
+        } else {
+            final String schema = array.getBaseTypeSchema();
+            if (array instanceof RasMArrayByte && schema != null && schema.contains("bool")) {
+                cellType = BOOL;
+            } else if (array instanceof RasMArrayByte && array.getTypeLength() <= 1) {
+                cellType = CHAR;
+            } else {
+                cellType = OPAQUE;
+            }
+            buf = ByteBuffer.wrap(array.getArray());
+        }
+        return new MDABinaryData(cellType, domain, buf.array());
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long[] toDomain(RasMInterval sdom) {
+        final long[] ret = new long[sdom.dimension() * 2];
+        for (int i = 0; i < ret.length; i += 2) {
+            try {
+                final RasSInterval dim = sdom.item(i / 2);
+                ret[i] = dim.low();
+                ret[i + 1] = dim.high();
+            } catch (RasIndexOutOfBoundsException ex) {
+                throw Error.error(ErrorCode.MDA_INVALID_PARAMETER, sdom.toString());
+            }
+        }
+        return ret;
+    }
+
+    public int getCellType() {
+        return cellType;
+    }
+
+    /**
+     * @return size of a cell in bytes; for OPAQUE cells it is derived from
+     * the number of cells.
+     */
+    public int getCellSize() {
+        if (cellType == OPAQUE) {
+            final long count = getCellCount();
+            return count == 0 ? 1 : (int) (cells.length / count);
+        }
+        return CELL_SIZES[cellType];
+    }
+
+    public int getDimension() {
+        return domain.length / 2;
+    }
+
+    public long getLow(int dimension) {
+        return domain[dimension * 2];
+    }
+
+    public long getHigh(int dimension) {
+        return domain[dimension * 2 + 1];
+    }
+
+    public long getCellCount() {
+        long ret = 1;
+        for (int i = 0; i < domain.length; i += 2) {
+            ret *= domain[i + 1] - domain[i] + 1;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the spatial domain in rasql notation, e.g. [0:9,1:5]
+     */
+    public String getDomain() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < domain.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(domain[i]).append(':').append(domain[i + 1]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @return a read-only little-endian buffer over the cells
+     */
+    public ByteBuffer getBuffer() {
+        return ByteBuffer.wrap(cells).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the cells as a new primitive array: boolean[] for BOOL,
+     * byte[] for CHAR and OPAQUE, short[] for SHORT, int[] for LONG, long[]
+     * for ULONG, float[] for FLOAT and double[] for DOUBLE cells.
+     */
+    public Object getCells() {
+        final ByteBuffer buf = getBuffer();
+        switch (cellType) {
+            case BOOL: {
+                final boolean[] ret = new boolean[cells.length];
+                for (int i = 0; i < ret.length; i++) {
+                    ret[i] = cells[i] != 0;
+                }
+                return ret;
+            }
+            case SHORT: {
+                final short[] ret = new short[cells.length / 2];
+                buf.asShortBuffer().get(ret);
+                return ret;
+            }
+            case LONG: {
+                final int[] ret = new int[cells.length / 4];
+                buf.asIntBuffer().get(ret);
+                return ret;
+            }
+            case ULONG: {
+                final long[] ret = new long[cells.length / 4];
+                for (int i = 0; i < ret.length; i++) {
+                    ret[i] = buf.getInt(i * 4) & 0xFFFFFFFFL;
+                }
+                return ret;
+            }
+            case FLOAT: {
+                final float[] ret = new float[cells.length / 4];
+                buf.asFloatBuffer().get(ret);
+                return ret;
+            }
+            case DOUBLE: {
+                final double[] ret = new double[cells.length / 8];
+                buf.asDoubleBuffer().get(ret);
+                return ret;
+            }
+            default: {
+                final byte[] ret = new byte[cells.length];
+                System.arraycopy(cells, 0, ret, 0, ret.length);
+                return ret;
+            }
+        }
+    }
+
+    /**
+     * @return the cells in little-endian byte order; not copied, for
+     * serialization.
+     */
+    public byte[] getBytes() {
+        return cells;
+    }
+
+    @Override
+    public String toString() {
+        return "MDARRAY" + getDomain();
+    }
+}
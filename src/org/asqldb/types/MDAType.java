@@ -26,6 +26,7 @@
 package org.asqldb.types;
 
 import java.sql.Array;
+import org.asqldb.ras.RasCellBuffer;
 import org.hsqldb.OpTypes;
 import org.hsqldb.Session;
 import org.hsqldb.SessionInterface;
@@ -36,8 +37,10 @@ import org.hsqldb.error.ErrorCode;
 import org.hsqldb.jdbc.JDBCArray;
 import org.hsqldb.jdbc.JDBCArrayBasic;
 import org.hsqldb.lib.ArraySort;
+import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.types.Type;
 import org.hsqldb.types.Types;
+import rasj.RasGMArray;
 
 /**
  * Class for MDARRAY type objects (multidimensional arrays). An MDARRAY has a
@@ -198,6 +201,10 @@ public class MDAType extends Type {
             return 1;
         }
 
+        if (a instanceof RasGMArray && b instanceof RasGMArray) {
+            return compareCells((RasGMArray) a, (RasGMArray) b);
+        }
+
         Object[] arra = (Object[]) a;
         Object[] arrb = (Object[]) b;
         int length = arra.length;
@@ -223,6 +230,38 @@ public class MDAType extends Type {
         return 0;
     }
 
+    /**
+     * Compares the cells of two arrays in linear order, without boxing.
+     * Arrays of composite cell types are compared by their binary data.
+     */
+    private static int compareCells(RasGMArray arra, RasGMArray arrb) {
+
+        RasCellBuffer a = RasCellBuffer.wrap(arra);
+        RasCellBuffer b = RasCellBuffer.wrap(arrb);
+
+        if (a == null || b == null) {
+            return ArrayUtil.compare(arra.getArray(), arrb.getArray());
+        }
+
+        int length = Math.min(a.length(), b.length());
+
+        for (int i = 0; i < length; i++) {
+            int result = a.compare(i, b, i);
+
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        if (a.length() > b.length()) {
+            return 1;
+        } else if (a.length() < b.length()) {
+            return -1;
+        }
+
+        return 0;
+    }
+
     /**
      * @TODO
      */
@@ -336,7 +375,8 @@ public class MDAType extends Type {
     }
 
     /**
-     * @TODO
+     * Arrays of query results are returned as they are, or in their binary
+     * form if the result was sent over the network.
      */
     @Override
     public Object convertSQLToJava(SessionInterface session, Object a) {
@@ -348,6 +388,10 @@ public class MDAType extends Type {
                     session);
         }
 
+        if (a instanceof MDABinaryData || a instanceof RasGMArray) {
+            return a;
+        }
+
         throw Error.error(ErrorCode.X_42561);
     }
 
@@ -573,6 +617,17 @@ public class MDAType extends Type {
         }
 
         int hash = 0;
+
+        if (a instanceof RasGMArray) {
+            RasCellBuffer cells = RasCellBuffer.wrap(a);
+
+            for (int i = 0; cells != null && i < cells.length() && i < 4; i++) {
+                hash += cells.hashCode(i);
+            }
+
+            return hash;
+        }
+
         Object[] array = (Object[]) a;
 
         for (int i = 0; i < array.length && i < 4; i++) {
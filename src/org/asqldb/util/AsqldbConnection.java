@@ -67,7 +67,7 @@ public class AsqldbConnection {
     }
 
     protected static void openRasConnection() {
-        RasUtil.openDatabase(RasUtil.adminUsername, RasUtil.adminPassword, true);
+        RasUtil.openDatabase(true);
     }
 
     protected static void openHsqlConnection(String jdbcUrl) {
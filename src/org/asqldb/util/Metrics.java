@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.asqldb.util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Global counters and histograms, identified by string names. Updates are
+ * lock-free, so metrics can be recorded on every rasql query from any number
+ * of sessions; the current values are available to SQL in the
+ * INFORMATION_SCHEMA.SYSTEM_MDA_METRICS table.
+ *
+ * @author Dimitar Misev
+ */
+public final class Metrics {
+
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the counter with the given name, created if it does not exist
+     */
+    public static Counter counter(String name) {
+        Counter ret = counters.get(name);
+        if (ret == null) {
+            ret = new Counter(name);
+            final Counter existing = counters.putIfAbsent(name, ret);
+            if (existing != null) {
+                ret = existing;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the histogram with the given name, created if it does not exist
+     */
+    public static Histogram histogram(String name) {
+        Histogram ret = histograms.get(name);
+        if (ret == null) {
+            ret = new Histogram(name);
+            final Histogram existing = histograms.putIfAbsent(name, ret);
+            if (existing != null) {
+                ret = existing;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return all counters, ordered by name
+     */
+    public static List<Counter> getCounters() {
+        final List<Counter> ret = new ArrayList<Counter>(counters.values());
+        Collections.sort(ret, new Comparator<Counter>() {
+            public int compare(Counter o1, Counter o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * @return all histograms, ordered by name
+     */
+    public static List<Histogram> getHistograms() {
+        final List<Histogram> ret = new ArrayList<Histogram>(histograms.values());
+        Collections.sort(ret, new Comparator<Histogram>() {
+            public int compare(Histogram o1, Histogram o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Set all metrics back to zero; the metrics stay registered.
+     */
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    public static void print(PrintStream out) {
+        out.println("Metrics:");
+        for (Counter counter : getCounters()) {
+            out.println(" " + counter);
+        }
+        for (Histogram histogram : getHistograms()) {
+            out.println(" " + histogram);
+        }
+        out.println("");
+    }
+
+    /**
+     * A monotonically increasing count, e.g. of queries or bytes.
+     */
+    public static final class Counter {
+
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        public void reset() {
+            value.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + name + "] " + get();
+        }
+    }
+
+    /**
+     * Distribution of non-negative values, e.g. latencies. Values are
+     * counted in buckets with three significant bits, i.e. every power of two
+     * is split into eight buckets, so percentiles are accurate to within
+     * 12.5% at a fixed memory cost.
+     */
+    public static final class Histogram {
+
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = SUB_COUNT + (64 - SUB_BITS) * SUB_COUNT;
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(bucket(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getSum() {
+            return sum.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            final long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket containing the percentile,
+         * or 0 if nothing has been recorded
+         */
+        public long getPercentile(double percentile) {
+            final long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        public void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_COUNT) {
+                return (int) value;
+            }
+            final int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            final int sub = (int) (value >>> exponent) & (SUB_COUNT - 1);
+            return SUB_COUNT + exponent * SUB_COUNT + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_COUNT) {
+                return bucket;
+            }
+            final int exponent = (bucket - SUB_COUNT) / SUB_COUNT;
+            final long sub = (bucket - SUB_COUNT) % SUB_COUNT;
+            final long lower = (SUB_COUNT + sub) << exponent;
+            return lower + (1L << exponent) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + name + "] count " + getCount() + ", mean " + (long) getMean()
+                    + ", p50 " + getPercentile(50) + ", p99 " + getPercentile(99) + ", max " + getMax();
+        }
+    }
+}
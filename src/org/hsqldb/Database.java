@@ -51,6 +51,7 @@ import org.hsqldb.rights.GranteeManager;
 import org.hsqldb.rights.User;
 import org.hsqldb.rights.UserManager;
 import org.hsqldb.types.Collation;
+import org.asqldb.storage.MDAStorage;
 
 // incorporates following contributions
 // boucherb@users - javadoc comments
@@ -252,6 +253,7 @@ public class Database {
 
             lobManager.open();
             dbInfo.setWithContent(true);
+            MDAStorage.open(this);
 
             checkpointRunner = new CheckpointRunner();
             timeoutRunner    = new TimeoutRunner();
@@ -58,6 +58,9 @@ import org.hsqldb.types.Type;
 import org.hsqldb.types.Types;
 
 import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasLocalEvaluator;
+import org.asqldb.ras.RasUtil;
+import org.asqldb.ras.RasqlTemplate;
 
 /**
  * Expression class.
@@ -216,6 +219,11 @@ public class Expression implements Cloneable {
     // rasdaman column to be inserted
     protected ColumnSchema insertColumn = null;
 
+    // rasql query of this MDA root node, compiled on first evaluation; the
+    // compiled statement may be executed by several sessions at once, so
+    // the immutable template is published through a volatile field
+    private volatile RasqlTemplate rasqlTemplate;
+
     public Expression(int type) {
         opType = type;
         nodes  = emptyArray;
@@ -293,7 +301,178 @@ public class Expression implements Cloneable {
         }
         return rasArrayIds;
     }
-    
+
+    /**
+     * Checks whether this MDA expression, when it is the root node, executes
+     * exactly the rasql selector returned by getValue(session, false) over
+     * the arrays of the current row. The selector can then be evaluated for
+     * many rows with a single collection-level rasql query.
+     */
+    public boolean isMDAPushdown() {
+        return false;
+    }
+
+    /**
+     * Converts one element of the result of a pushed down rasql query to the
+     * value that getValue(session, true) returns for a single row.
+     * @param value element of the rasql result
+     * @return converted value
+     */
+    public Object convertMDAPushdownValue(Object value) {
+        return value;
+    }
+
+    /**
+     * Checks whether getValue(session, false) renders the same rasql selector
+     * for every row, i.e. the subtree refers only to constants and MDA
+     * columns, but not to scalar column values or parameters.
+     */
+    public boolean isMDARowInvariant() {
+        if (opType == OpTypes.VALUE) {
+            return true;
+        }
+        if (!(this instanceof ExpressionMDA) && !isMDAPushdown()) {
+            return false;
+        }
+        for (Expression node : nodes) {
+            if (node != null && !node.isMDARowInvariant()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether this MDA expression can be evaluated by
+     * RasLocalEvaluator on arrays in the JVM, i.e. this node and all child
+     * nodes implement getMDALocalValue(session).
+     */
+    public boolean isMDALocal() {
+        return opType == OpTypes.VALUE && valueData instanceof Number;
+    }
+
+    /**
+     * Evaluates this MDA expression in the JVM; only called if isMDALocal()
+     * holds.
+     * @param session current session
+     * @return a scalar, or a RasLocalArray
+     */
+    public Object getMDALocalValue(Session session) {
+        if (opType == OpTypes.VALUE) {
+            return valueData;
+        }
+        throw Error.runtimeError(ErrorCode.U_S0500, "Expression");
+    }
+
+    /**
+     * Returns the rasql template of this MDA root node for the given arrays.
+     * The template is compiled on the first evaluation and kept with the
+     * compiled statement; the selector is rendered again for every row only
+     * if it is not row invariant. Sessions evaluating the statement
+     * concurrently may each compile the template, the last one is kept.
+     * @param session current session
+     * @param rasArrayIds arrays of the current row
+     * @return a template matching the arrays of the current row
+     */
+    public RasqlTemplate getRasqlTemplate(Session session, RasArrayIdSet rasArrayIds) {
+        RasqlTemplate template = rasqlTemplate;
+        if (template != null && template.isInvariant() && template.matches(rasArrayIds)) {
+            return template;
+        }
+        final String selector = getValue(session, false).toString();
+        if (template == null || !template.matches(selector, rasArrayIds)) {
+            template = new RasqlTemplate(selector, rasArrayIds, isMDARowInvariant());
+            rasqlTemplate = template;
+        }
+        return template;
+    }
+
+    /**
+     * Evaluates this MDA root node, for which isMDAPushdown() holds, with
+     * its rasql template instead of rendering the query for every row, or
+     * in the JVM if RasLocalEvaluator chooses so for the arrays of the row.
+     * @param session current session
+     * @return the same value as getValue(session)
+     */
+    public Object getMDAPushdownValue(Session session) {
+        final RasArrayIdSet rasArrayIds = getRasArrayIds(session);
+        if (!rasArrayIds.hasAllOids()) {
+            return getValue(session);
+        }
+        if (RasLocalEvaluator.isLocal(this, rasArrayIds)) {
+            return convertMDAPushdownValue(RasLocalEvaluator.evaluate(session, this));
+        }
+        return convertMDAPushdownValue(RasUtil.executeHsqlArrayQuery(session,
+                getRasqlTemplate(session, rasArrayIds), rasArrayIds));
+    }
+
+    /**
+     * Collects the MDA root nodes of this expression, i.e. the topmost nodes
+     * that are evaluated with a rasql query, for EXPLAIN PLAN.
+     * @param list list to add the root nodes to
+     */
+    public void collectMDARootNodes(HsqlArrayList list) {
+        if (this instanceof ExpressionMDA || isMDAPushdown()
+                || (opType == OpTypes.COLUMN && isExpressionMDA())) {
+            list.add(this);
+            return;
+        }
+        for (Expression node : nodes) {
+            if (node != null) {
+                node.collectMDARootNodes(list);
+            }
+        }
+    }
+
+    /**
+     * Renders the rasql query of this MDA root node for EXPLAIN PLAN, with
+     * the OIDs of the arrays of a row left as parameters.
+     * @param session current session
+     * @param block true to render the OID condition of a query that selects
+     * a block of arrays at a time
+     * @return the query, or null if the selector depends on the current row
+     * and is only rendered during execution
+     */
+    public String describeMDAQuery(Session session, boolean block) {
+        if (!isMDARowInvariant()) {
+            return null;
+        }
+        final String selector;
+        try {
+            selector = String.valueOf(getValue(session, false));
+        } catch (HsqlException e) {
+            return null;
+        }
+        final OrderedHashSet set = collectAllExpressions(null,
+            columnExpressionSet, emptyExpressionSet);
+        final OrderedHashSet fields = new OrderedHashSet();
+        final StringBuilder from = new StringBuilder();
+        final StringBuilder where = new StringBuilder();
+        for (int i = 0; set != null && i < set.size(); i++) {
+            final Expression e = (Expression) set.get(i);
+            if (!(e instanceof ExpressionColumn) || !e.isExpressionMDA()
+                    || ((ExpressionColumn) e).column == null) {
+                continue;
+            }
+            final String field = e.getColumnName();
+            if (!fields.add(field)) {
+                continue;
+            }
+            if (from.length() > 0) {
+                from.append(", ");
+                where.append(" and ");
+            }
+            from.append(((ExpressionColumn) e).column.getRasdamanCollectionName())
+                    .append(" AS ").append(field);
+            where.append(block ? "(oid(" + field + ") = ? or ...)"
+                               : "oid(" + field + ") = ?");
+        }
+        if (from.length() == 0) {
+            return "SELECT " + selector;
+        }
+        return "SELECT " + selector + " FROM " + from + " WHERE " + where;
+    }
+
     /**
      * @return a list of all children that are instances of the given class.
      */
@@ -45,10 +45,13 @@ import org.hsqldb.map.ValuePool;
 import org.hsqldb.navigator.RangeIterator;
 import org.hsqldb.persist.PersistentStore;
 import org.asqldb.ras.RasArrayId;
-import org.asqldb.ras.RasUtil;
 import org.hsqldb.types.Type;
 
 import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasLocalArray;
+import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.MDAStorage;
+import rasj.RasGMArray;
 
 /**
  * Implementation of column, variable, parameter, etc. access operations.
@@ -686,8 +689,7 @@ public class ExpressionColumn extends Expression {
                             + (rasStructName.isEmpty() ? "" : ("." + rasStructName));
                     if (isMDARootNode) {
                         final Integer oid = (Integer) getHsqlColumnValue(session);
-                        final String rasql = "select c from " + column.getRasdamanCollectionName() + " as c where oid(c) = " + oid;
-                        return RasUtil.executeRasqlQuery(rasql, false);
+                        return MDAStorage.get().fetch(session, column.getRasdamanCollectionName(), oid);
                     } else {
                         return columnName;
                     }
@@ -759,6 +761,40 @@ public class ExpressionColumn extends Expression {
         return value;
     }
 
+    /**
+     * @return true if this is a reference to a whole MDARRAY column, whose
+     * value is the array itself and can therefore be fetched in batches
+     * together with the arrays of other rows.
+     */
+    public boolean isMDAColumnFetch() {
+        return opType == OpTypes.COLUMN && column != null
+                && isExpressionMDA() && rasStructName.isEmpty();
+    }
+
+    @Override
+    public boolean isMDALocal() {
+        return isMDAColumnFetch() && RasLocalArray.getCellType(dataType) >= 0;
+    }
+
+    @Override
+    public Object getMDALocalValue(Session session) {
+        final RasArrayId id = getRasArrayIds(session).iterator().next();
+        final Object array = RasUtil.fetchArray(session, id);
+        if (!(array instanceof RasGMArray)) {
+            throw Error.error(ErrorCode.MDA_NOARRAY, getColumnName());
+        }
+        return RasLocalArray.fromRas((RasGMArray) array);
+    }
+
+    /**
+     * A column renders as its name if it is an MDA column, otherwise as its
+     * value in the current row.
+     */
+    @Override
+    public boolean isMDARowInvariant() {
+        return opType == OpTypes.COLUMN && isExpressionMDA();
+    }
+
     /**
      * Extracts all RasArrayIds that are used in this and the child nodes.
      * This Expression can't have children, so we can simplify this method.
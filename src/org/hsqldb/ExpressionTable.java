@@ -33,20 +33,24 @@ package org.hsqldb;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasCellBuffer;
+import org.asqldb.ras.RasTiledArray;
 import org.asqldb.ras.RasUtil;
 import org.asqldb.types.MDAType;
 import org.asqldb.util.RasMIntervalIterator;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.map.ValuePool;
+import org.hsqldb.navigator.RowIterator;
 import org.hsqldb.navigator.RowSetNavigator;
 import org.hsqldb.navigator.RowSetNavigatorData;
 import org.hsqldb.persist.PersistentStore;
 import org.hsqldb.result.Result;
 import org.hsqldb.types.RowType;
 import org.hsqldb.types.Type;
-import rasj.RasGMArray;
 import rasj.RasIndexOutOfBoundsException;
+import rasj.RasMInterval;
 import rasj.RasPoint;
 
 /**
@@ -257,65 +261,248 @@ public class ExpressionTable extends Expression {
 
     private void insertArrayValues(Session session, PersistentStore store) {
 
-        Object[][] array = new Object[nodes.length][];
-        long maxLength = -1;
-        RasMIntervalIterator iterator = null;
+        RowIterator it = new ArrayRowIterator(session);
 
-        for (int i = 0; i < array.length; i++) {
-            Object[] values = null;
-            Object value = nodes[i].getValue(session, true);
+        for (Object[] data = it.getNext(); data != null; data = it.getNext()) {
+            Row row = (Row) store.getNewCachedObject(session, data, false);
+
+            store.indexRow(session, row);
+        }
+    }
+
+    /**
+     * Returns true if this is an UNNEST of MDARRAY values, whose rows can be
+     * produced on demand instead of being inserted into the subquery table.
+     */
+    boolean isStreamed() {
+
+        if (isTable) {
+            return false;
+        }
+
+        for (int i = 0; i < nodes.length; i++) {
             if (nodes[i].dataType.isMDArrayType()) {
-                Object head = RasUtil.head(value);
-                if (head instanceof RasGMArray) {
-                    values = RasUtil.gmarrayToArray(head);
-                    if (iterator == null || values.length > maxLength) {
-                        iterator = new RasMIntervalIterator(((RasGMArray) head).spatialDomain());
-                        maxLength = values.length;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns an iterator over the rows of this UNNEST for the current values
+     * of the argument expressions. Rows are built when requested, so a scan
+     * that stops early does not convert the remaining cells.
+     */
+    RowIterator getArrayRowIterator(Session session) {
+
+        session.sessionContext.pushStatementState();
+
+        try {
+            return new ArrayRowIterator(session);
+        } finally {
+            session.sessionContext.popStatementState();
+        }
+    }
+
+    /**
+     * Produces the UNNEST rows one at a time. MDARRAY arguments are read
+     * from their cell buffers, boxing one cell per row. When tiled transfer
+     * is enabled, MDARRAY arguments are fetched from rasdaman one tile at a
+     * time as the rows are requested.
+     */
+    private class ArrayRowIterator implements RowIterator {
+
+        private final Object[][]      array;
+        private final RasCellBuffer[] cells;
+        private final int[]           lengths;
+        private final RasTiledArray[] tiled;
+        private final int[]           tileIndex;
+        private final int[]           tileOffset;
+        private RasMIntervalIterator  iterator;
+        private int                   index;
+
+        ArrayRowIterator(Session session) {
+
+            array      = new Object[nodes.length][];
+            cells      = new RasCellBuffer[nodes.length];
+            lengths    = new int[nodes.length];
+            tiled      = new RasTiledArray[nodes.length];
+            tileIndex  = new int[nodes.length];
+            tileOffset = new int[nodes.length];
+
+            long maxLength = -1;
+
+            for (int i = 0; i < array.length; i++) {
+                Object[] values = ValuePool.emptyObjectArray;
+
+                if (nodes[i].dataType.isMDArrayType()) {
+                    RasMInterval sdom = null;
+
+                    tiled[i] = openTiled(session, nodes[i]);
+
+                    if (tiled[i] != null) {
+                        lengths[i] = (int) tiled[i].cellCount();
+                        sdom       = tiled[i].spatialDomain();
+                        tileIndex[i] = -1;
+                    } else {
+                        Object value = nodes[i].getValue(session, true);
+
+                        cells[i] = RasCellBuffer.wrap(RasUtil.head(value));
+
+                        if (cells[i] != null) {
+                            lengths[i] = cells[i].length();
+                            sdom       = cells[i].spatialDomain();
+                        }
+                    }
+
+                    if (sdom != null
+                            && (iterator == null || lengths[i] > maxLength)) {
+                        iterator  = new RasMIntervalIterator(sdom);
+                        maxLength = lengths[i];
+                    }
+                } else {
+                    values = (Object[]) nodes[i].getValue(session, true);
+
+                    if (values == null) {
+                        values = ValuePool.emptyObjectArray;
                     }
                 }
-            } else {
-                values = (Object[]) value;
-                if (values == null) {
-                    values = ValuePool.emptyObjectArray;
+
+                array[i] = values;
+
+                if (cells[i] == null && tiled[i] == null) {
+                    lengths[i] = values.length;
                 }
             }
+        }
+
+        /**
+         * Returns the tiled result of an MDARRAY argument, or null if tiled
+         * transfer is disabled or the result fits in a single tile.
+         */
+        private RasTiledArray openTiled(Session session, Expression node) {
+
+            if (RasUtil.tileSize <= 0) {
+                return null;
+            }
+
+            RasArrayIdSet rasArrayIds = node.getRasArrayIds(session);
+
+            if (!rasArrayIds.hasAllOids()) {
+                return null;
+            }
+
+            RasTiledArray ret = RasTiledArray.open(session,
+                node.getValue(session, false).toString(), rasArrayIds,
+                RasUtil.tileSize);
 
-            array[i] = values;
+            return ret.getTileCount() > 1 ? ret
+                                          : null;
         }
 
-        for (int i = 0; ; i++) {
-            boolean  isRow = false;
-            Object[] data  = new Object[nodeDataTypes.length];
+        /**
+         * Returns the cell at the given linear index of a tiled argument,
+         * fetching the following tile when the current one is exhausted.
+         */
+        private Object getTiledCell(int arrayIndex, int i) {
+
+            while (cells[arrayIndex] == null
+                    || i - tileOffset[arrayIndex]
+                       >= cells[arrayIndex].length()) {
+                if (cells[arrayIndex] != null) {
+                    tileOffset[arrayIndex] += cells[arrayIndex].length();
+                }
 
-            for (int arrayIndex = 0; arrayIndex < array.length; arrayIndex++) {
-                if (i < array[arrayIndex].length) {
-                    data[arrayIndex] = array[arrayIndex][i];
-                    isRow            = true;
+                tileIndex[arrayIndex]++;
+
+                cells[arrayIndex] = RasCellBuffer.wrap(
+                    tiled[arrayIndex].fetchTile(tileIndex[arrayIndex]));
+
+                if (cells[arrayIndex] == null) {
+                    throw Error.error(ErrorCode.MDA_NOARRAY);
                 }
             }
 
-            if (!isRow) {
-                break;
+            return cells[arrayIndex].get(i - tileOffset[arrayIndex]);
+        }
+
+        public Row getNextRow() {
+
+            Object[] data = getNext();
+
+            if (data == null) {
+                return null;
+            }
+
+            Row row = new Row(table, data);
+
+            row.setPos(index - 1);
+
+            return row;
+        }
+
+        public Object[] getNext() {
+
+            if (!hasNext()) {
+                return null;
+            }
+
+            int      i    = index++;
+            Object[] data = new Object[nodeDataTypes.length];
+
+            for (int arrayIndex = 0; arrayIndex < array.length; arrayIndex++) {
+                if (i < lengths[arrayIndex]) {
+                    if (tiled[arrayIndex] != null) {
+                        data[arrayIndex] = getTiledCell(arrayIndex, i);
+                    } else {
+                        data[arrayIndex] = cells[arrayIndex] == null
+                                           ? array[arrayIndex][i]
+                                           : cells[arrayIndex].get(i);
+                    }
+                }
             }
 
             if (ordinality) {
-                
                 if (iterator != null) {
                     RasPoint p = iterator.next();
+
                     try {
-                        for (int j = nodes.length, d = 0; j < data.length; j++, d++) {
+                        for (int j = nodes.length, d = 0; j < data.length;
+                                j++, d++) {
                             data[j] = p.item(d);
                         }
-                    } catch (RasIndexOutOfBoundsException ex) {
-                    }
+                    } catch (RasIndexOutOfBoundsException ex) {}
                 } else {
                     data[nodes.length] = ValuePool.getInt(i + 1);
                 }
             }
 
-            Row row = (Row) store.getNewCachedObject(session, data, false);
+            return data;
+        }
 
-            store.indexRow(session, row);
+        public boolean hasNext() {
+
+            for (int arrayIndex = 0; arrayIndex < lengths.length;
+                    arrayIndex++) {
+                if (index < lengths[arrayIndex]) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public void removeCurrent() {}
+
+        public boolean setRowColumns(boolean[] columns) {
+            return false;
+        }
+
+        public void release() {}
+
+        public long getRowId() {
+            return index - 1;
         }
     }
 }
@@ -3452,7 +3452,7 @@ public class FunctionCustom extends FunctionSQL {
         final String functionCall = String.format("%s(%s)",
                 function, nodes[0].getValue(session, false));
         if (isMDARootNode) {
-            return RasUtil.executeHsqlArrayQuery(functionCall, nodes[0].getRasArrayIds(session));
+            return RasUtil.executeHsqlArrayQuery(session, functionCall, nodes[0].getRasArrayIds(session));
         }
         return functionCall;
     }
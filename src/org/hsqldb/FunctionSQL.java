@@ -1229,7 +1229,7 @@ public class FunctionSQL extends Expression {
         final String functionCall = String.format("%s(%s)",
                 function, nodes[0].getValue(session, false));
         if (isMDARootNode) {
-            return RasUtil.executeHsqlArrayQuery(functionCall, nodes[0].getRasArrayIds(session));
+            return RasUtil.executeHsqlArrayQuery(session, functionCall, nodes[0].getRasArrayIds(session));
         }
         return functionCall;
     }
@@ -1238,7 +1238,7 @@ public class FunctionSQL extends Expression {
         final String functionCall = String.format("%s(%s, %s)",
                 function, nodes[0].getValue(session, false), nodes[1].getValue(session, false));
         if (isMDARootNode) {
-            return RasUtil.executeHsqlArrayQuery(functionCall, getRasArrayIds(session));
+            return RasUtil.executeHsqlArrayQuery(session, functionCall, getRasArrayIds(session));
         }
         return functionCall;
     }
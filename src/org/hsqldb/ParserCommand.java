@@ -303,6 +303,7 @@ public class ParserCommand extends ParserDDL {
             case StatementTypes.ROLLBACK_WORK :
             case StatementTypes.SET_USER_PASSWORD :
             case StatementTypes.EXPLAIN_PLAN :
+            case StatementTypes.EXPLAIN_ANALYZE :
                 break;
 
             default :
@@ -1934,6 +1935,16 @@ public class ParserCommand extends ParserDDL {
                 return new StatementSession(
                     StatementTypes.SET_SESSION_RESULT_MEMORY_ROWS, args);
             }
+            case Tokens.MDARRAY : {
+                read();
+                readThis(Tokens.MDA_PREFETCH);
+
+                Integer  depth = readIntegerObject();
+                Object[] args  = new Object[]{ depth };
+
+                return new StatementSession(
+                    StatementTypes.SET_SESSION_MDA_PREFETCH, args);
+            }
             default :
                 throw unexpectedToken();
         }
@@ -2240,6 +2251,11 @@ public class ParserCommand extends ParserDDL {
         Statement cs;
 
         read();
+
+        if (Tokens.T_ANALYZE.equals(token.tokenString)) {
+            return compileExplainAnalyze();
+        }
+
         readThis(Tokens.PLAN);
         readThis(Tokens.FOR);
 
@@ -2251,6 +2267,26 @@ public class ParserCommand extends ParserDDL {
                                     new Object[]{ cs });
     }
 
+    /**
+     * EXPLAIN ANALYZE executes the statement and reports its plan together
+     * with the rasql queries it actually issued.
+     */
+    private Statement compileExplainAnalyze() {
+
+        Statement cs;
+
+        read();
+
+        cs = compilePart(ResultProperties.defaultPropsValue);
+
+        if (cs.getParametersMetaData().getColumnCount() > 0) {
+            throw Error.error(ErrorCode.X_42575);
+        }
+
+        return new StatementCommand(StatementTypes.EXPLAIN_ANALYZE,
+                                    new Object[]{ cs });
+    }
+
     private StatementCommand compileTableSource(Table t) {
 
         boolean  isSourceHeader = false;
@@ -31,6 +31,11 @@
 
 package org.hsqldb;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.HsqlNameManager.SimpleName;
 import org.hsqldb.ParserDQL.CompileContext;
@@ -57,6 +62,13 @@ import org.hsqldb.persist.PersistentStore;
 import org.hsqldb.result.Result;
 import org.hsqldb.result.ResultMetaData;
 import org.hsqldb.result.ResultProperties;
+import org.asqldb.ras.RasArrayBatch;
+import org.asqldb.ras.RasArrayIdSet;
+import org.asqldb.ras.RasParallelEvaluator;
+import org.asqldb.ras.RasqlTemplate;
+import org.asqldb.ras.RasArrayId;
+import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.MDAStorage;
 import org.hsqldb.types.Type;
 import org.hsqldb.types.Types;
 
@@ -100,6 +112,15 @@ public class QuerySpecification extends QueryExpression {
     private boolean       isSimpleCount;
     private boolean       isSingleMemoryTable;
 
+    // MDARRAY columns whose arrays are fetched in batches
+    private int[] mdaFetchColumns;
+
+    // MDARRAY column of a query evaluated as a whole by rasdaman
+    private ExpressionColumn mdaPushdownColumn;
+
+    // MDA select expressions evaluated for several rows concurrently
+    private int[] mdaParallelColumns;
+
     //
     public boolean isUniqueResultRows;
 
@@ -428,6 +449,9 @@ public class QuerySpecification extends QueryExpression {
         setRangeVariableConditions(session);
         setDistinctConditions(session);
         setAggregateConditions(session);
+        setMDAFetchColumns();
+        setMDAPushdown();
+        setMDAParallelColumns();
         sortAndSlice.setSortRange(this);
 
         for (int i = 0; i < rangeVariables.length; i++) {
@@ -443,6 +467,292 @@ public class QuerySpecification extends QueryExpression {
         isResolved        = true;
     }
 
+    /**
+     * Finds the select columns that are plain MDARRAY column references;
+     * the arrays of these columns are fetched from rasdaman for a block of
+     * rows at a time rather than row by row.
+     */
+    private void setMDAFetchColumns() {
+
+        mdaFetchColumns = null;
+
+        if (isAggregated || isGrouped || RasUtil.fetchSize <= 1) {
+            return;
+        }
+
+        int[] columns = new int[indexStartAggregates];
+        int   count   = 0;
+
+        for (int i = 0; i < indexStartAggregates; i++) {
+            if (exprColumns[i] instanceof ExpressionColumn
+                    && ((ExpressionColumn) exprColumns[i])
+                        .isMDAColumnFetch()) {
+                columns[count++] = i;
+            }
+        }
+
+        if (count > 0) {
+            mdaFetchColumns = (int[]) ArrayUtil.resizeArray(columns, count);
+        }
+    }
+
+    /**
+     * Checks whether the query is a single MDA expression over one MDARRAY
+     * column of a single table, with the WHERE clause only restricting the
+     * rows. Such a query is evaluated with one rasql query per block of
+     * qualifying arrays instead of one rasql query per row.
+     */
+    private void setMDAPushdown() {
+
+        mdaPushdownColumn = null;
+
+        if (isAggregated || isGrouped || isDistinctSelect
+                || sortAndSlice.hasOrder() || rangeVariables.length != 1
+                || indexLimitVisible != 1 || indexStartAggregates != 1
+                || RasUtil.fetchSize <= 1
+                || !MDAStorage.get().supportsQueries()) {
+            return;
+        }
+
+        Expression e = exprColumns[0];
+
+        if (!e.isMDAPushdown()) {
+            return;
+        }
+
+        if (e.collectAllExpressions(
+                null, Expression.subqueryExpressionSet,
+                Expression.emptyExpressionSet) != null) {
+            return;
+        }
+
+        OrderedHashSet set = e.collectAllExpressions(null,
+            Expression.columnExpressionSet, Expression.emptyExpressionSet);
+
+        if (set == null) {
+            return;
+        }
+
+        ExpressionColumn column = null;
+
+        for (int i = 0; i < set.size(); i++) {
+            Expression c = (Expression) set.get(i);
+
+            // the rasql selector must be the same for all rows
+            if (!(c instanceof ExpressionColumn) || !c.isExpressionMDA()
+                    || ((ExpressionColumn) c).column == null) {
+                return;
+            }
+
+            if (column != null
+                    && ((ExpressionColumn) c).column != column.column) {
+                return;
+            }
+
+            column = (ExpressionColumn) c;
+        }
+
+        mdaPushdownColumn = column;
+    }
+
+    /**
+     * Finds the select columns that are MDA expressions evaluated by a
+     * single rasql query per row; with parallel evaluation enabled these
+     * queries run on pooled connections for several rows at a time.
+     */
+    private void setMDAParallelColumns() {
+
+        mdaParallelColumns = null;
+
+        if (isAggregated || isGrouped || mdaPushdownColumn != null
+                || RasUtil.parallelism <= 1) {
+            return;
+        }
+
+        int[] columns = new int[indexStartAggregates];
+        int   count   = 0;
+
+        for (int i = 0; i < indexStartAggregates; i++) {
+            if (exprColumns[i].isMDAPushdown()) {
+                columns[count++] = i;
+            }
+        }
+
+        if (count > 0) {
+            mdaParallelColumns = (int[]) ArrayUtil.resizeArray(columns,
+                    count);
+        }
+    }
+
+    /**
+     * Submits the MDA expressions of the current row for evaluation by the
+     * worker threads. The rasql template of the expression is looked up in
+     * the session thread, as the selector may depend on the current row;
+     * expressions over NULL arrays are evaluated right away. The workers
+     * give up on the expressions once the statement has timed out or has
+     * been cancelled.
+     */
+    private void addMDAParallelColumns(final Session session,
+                                       RasParallelEvaluator evaluator,
+                                       Object[] data) {
+
+        for (int j = 0; j < mdaParallelColumns.length; j++) {
+            int                 i           = mdaParallelColumns[j];
+            final Expression    e           = exprColumns[i];
+            final RasArrayIdSet rasArrayIds = e.getRasArrayIds(session);
+
+            if (!rasArrayIds.hasAllOids()) {
+                data[i] = e.getValue(session);
+
+                continue;
+            }
+
+            final RasqlTemplate template = e.getRasqlTemplate(session,
+                rasArrayIds);
+
+            evaluator.submit(new Callable<Object>() {
+
+                public Object call() {
+
+                    RasUtil.checkDeadline(session, template.getSelector());
+
+                    return e.convertMDAPushdownValue(
+                        RasUtil.executeHsqlArrayQuery(
+                            (Session) null, template, rasArrayIds));
+                }
+            }, data, i);
+        }
+    }
+
+    /**
+     * Builds the result of a query accepted by setMDAPushdown(). The rows
+     * only contribute the OIDs of their arrays, which are evaluated in
+     * batches and matched back to the rows by OID.
+     */
+    private Result buildMDAPushdownResult(Session session, Result result,
+                                          int skipCount, int limitCount) {
+
+        RowSetNavigatorData navigator =
+            (RowSetNavigatorData) result.getNavigator();
+        RangeIterator it = rangeVariables[0].getIterator(session);
+        Expression    e        = exprColumns[0];
+        String        coll     = mdaPushdownColumn.column.getRasdamanCollectionName();
+        String        field    = mdaPushdownColumn.getColumnName();
+        String        selector = null;
+        List<Integer> oids     = new ArrayList<Integer>();
+        int           rowCount = 0;
+
+        while (rowCount < limitCount && it.next()) {
+            session.sessionData.startRowProcessing();
+
+            if (skipCount > 0) {
+                skipCount--;
+
+                continue;
+            }
+
+            rowCount++;
+
+            Integer oid = (Integer) mdaPushdownColumn.getHsqlColumnValue(
+                session);
+
+            if (oid == null) {
+                if (!oids.isEmpty()) {
+                    navigator = addMDAPushdownRows(session, result, navigator,
+                                                   selector, coll, field, oids);
+                }
+
+                navigator = addMDAPushdownRow(session, result, navigator,
+                                              null);
+
+                continue;
+            }
+
+            if (selector == null) {
+                selector = e.getValue(session, false).toString();
+            }
+
+            oids.add(oid);
+
+            if (oids.size() >= RasUtil.fetchSize) {
+                navigator = addMDAPushdownRows(session, result, navigator,
+                                               selector, coll, field, oids);
+            }
+        }
+
+        if (!oids.isEmpty()) {
+            navigator = addMDAPushdownRows(session, result, navigator,
+                                           selector, coll, field, oids);
+        }
+
+        it.reset();
+        navigator.reset();
+
+        return result;
+    }
+
+    private RowSetNavigatorData addMDAPushdownRows(Session session,
+            Result result, RowSetNavigatorData navigator, String selector,
+            String coll, String field, List<Integer> oids) {
+
+        Map<Integer, Object> values = RasUtil.executeBatchArrayQuery(session,
+            selector, coll, field, oids);
+
+        for (Integer oid : oids) {
+            navigator = addMDAPushdownRow(
+                session, result, navigator,
+                exprColumns[0].convertMDAPushdownValue(values.get(oid)));
+        }
+
+        oids.clear();
+
+        return navigator;
+    }
+
+    private RowSetNavigatorData addMDAPushdownRow(Session session,
+            Result result, RowSetNavigatorData navigator, Object value) {
+
+        Object[] data = new Object[indexLimitData];
+
+        data[0] = value;
+
+        navigator.add(data);
+
+        if (navigator.getSize() == session.resultMaxMemoryRows
+                && !isSingleMemoryTable) {
+            navigator = new RowSetNavigatorDataTable(session, this,
+                    navigator);
+
+            result.setNavigator(navigator);
+        }
+
+        return navigator;
+    }
+
+    /**
+     * Registers the arrays of the current row with the batch instead of
+     * fetching them one by one.
+     */
+    private void addMDAFetchColumns(Session session, RasArrayBatch batch,
+                                    Object[] data) {
+
+        for (int j = 0; j < mdaFetchColumns.length; j++) {
+            int              i   = mdaFetchColumns[j];
+            ExpressionColumn e   = (ExpressionColumn) exprColumns[i];
+            Object           oid = e.getHsqlColumnValue(session);
+
+            if (oid == null) {
+                data[i] = null;
+
+                continue;
+            }
+
+            batch.add(new RasArrayId(e.column.getRasdamanCollectionName(),
+                                     (Integer) oid, e.getColumnName()), data,
+                                         i);
+        }
+    }
+
     public void addExtraConditions(Expression e) {
 
         if (isAggregated || isGrouped) {
@@ -1492,6 +1802,11 @@ public class QuerySpecification extends QueryExpression {
             return result;
         }
 
+        if (mdaPushdownColumn != null && !isUpdatable) {
+            return buildMDAPushdownResult(session, result, skipCount,
+                                          limitCount);
+        }
+
         int fullJoinIndex = 0;
         RangeIterator[] rangeIterators =
             new RangeIterator[rangeVariables.length];
@@ -1502,6 +1817,15 @@ public class QuerySpecification extends QueryExpression {
 
         session.sessionContext.rownum = 1;
 
+        RasArrayBatch mdaBatch = mdaFetchColumns == null ? null
+                                                         : new RasArrayBatch();
+        // expressions over arrays written by the session transaction are
+        // evaluated on the session connection
+        RasParallelEvaluator mdaEvaluator =
+            mdaParallelColumns == null || session.hasRasWriteTransaction()
+            ? null
+            : new RasParallelEvaluator(session);
+
         for (int currentIndex = 0; ; ) {
             if (currentIndex < fullJoinIndex) {
 
@@ -1555,6 +1879,14 @@ public class QuerySpecification extends QueryExpression {
             for (int i = 0; i < indexStartAggregates; i++) {
                 if (isAggregated && aggregateCheck[i]) {
                     continue;
+                } else if (mdaBatch != null
+                           && ArrayUtil.find(mdaFetchColumns, i) != -1) {
+                    continue;
+                } else if (mdaEvaluator != null
+                           && ArrayUtil.find(mdaParallelColumns, i) != -1) {
+                    continue;
+                } else if (exprColumns[i].isMDAPushdown()) {
+                    data[i] = exprColumns[i].getMDAPushdownValue(session);
                 } else {
                     data[i] = exprColumns[i].getValue(session);
                 }
@@ -1576,6 +1908,14 @@ public class QuerySpecification extends QueryExpression {
                 continue;
             }
 
+            if (mdaBatch != null) {
+                addMDAFetchColumns(session, mdaBatch, data);
+            }
+
+            if (mdaEvaluator != null) {
+                addMDAParallelColumns(session, mdaEvaluator, data);
+            }
+
             Object[] groupData = null;
 
             if (isAggregated || resultGrouped) {
@@ -1592,6 +1932,18 @@ public class QuerySpecification extends QueryExpression {
                         data[i]);
             }
 
+            // a result moved to disk stores the row as it is added, so the
+            // arrays of the row are fetched first
+            if (navigator instanceof RowSetNavigatorDataTable) {
+                if (mdaBatch != null) {
+                    mdaBatch.flush(session);
+                }
+
+                if (mdaEvaluator != null) {
+                    mdaEvaluator.await();
+                }
+            }
+
             if (groupData == null) {
                 navigator.add(data);
             } else if (isAggregated) {
@@ -1600,6 +1952,22 @@ public class QuerySpecification extends QueryExpression {
 
             int rowCount = navigator.getSize();
 
+            if (mdaBatch != null) {
+
+                // rows are copied when the result is moved to disk
+                if (rowCount == session.resultMaxMemoryRows) {
+                    mdaBatch.flush(session);
+                } else if (mdaBatch.isFull()) {
+                    mdaBatch.flushAsync(session,
+                                        session.getMDAPrefetchDepth());
+                }
+            }
+
+            if (mdaEvaluator != null
+                    && rowCount == session.resultMaxMemoryRows) {
+                mdaEvaluator.await();
+            }
+
             if (rowCount == session.resultMaxMemoryRows && !isAggregated
                     && !isSingleMemoryTable) {
                 navigator = new RowSetNavigatorDataTable(session, this,
@@ -1619,6 +1987,14 @@ public class QuerySpecification extends QueryExpression {
             }
         }
 
+        if (mdaBatch != null) {
+            mdaBatch.flush(session);
+        }
+
+        if (mdaEvaluator != null) {
+            mdaEvaluator.await();
+        }
+
         navigator.reset();
 
         for (int i = 0; i < rangeVariables.length; i++) {
@@ -2012,6 +2388,7 @@ public class QuerySpecification extends QueryExpression {
 
         sb.append("\n");
         sb.append(b).append("]\n");
+        sb.append(describeMDA(session, b));
 
         for (int i = 0; i < rangeVariables.length; i++) {
             sb.append(b).append("[");
@@ -2083,6 +2460,82 @@ public class QuerySpecification extends QueryExpression {
         return sb.toString();
     }
 
+    /**
+     * Describes the MDA root nodes of the select list for EXPLAIN PLAN: the
+     * rasql query of each, whether it is executed per row or per block of
+     * rows, and the cache and local evaluation decisions.
+     */
+    private String describeMDA(Session session, StringBuffer b) {
+
+        StringBuffer sb = new StringBuffer();
+
+        for (int i = 0; i < indexLimitVisible; i++) {
+            Expression e = exprColumns[i];
+
+            if (e.getType() == OpTypes.SIMPLE_COLUMN
+                    || !e.isExpressionMDA()) {
+                continue;
+            }
+
+            HsqlArrayList roots = new HsqlArrayList();
+
+            e.collectMDARootNodes(roots);
+
+            if (roots.isEmpty()) {
+                continue;
+            }
+
+            boolean block = false;
+            String  evaluation;
+
+            if (mdaPushdownColumn != null && !isUpdatable) {
+                block      = true;
+                evaluation = "per statement, one query per "
+                             + RasUtil.fetchSize + " rows";
+            } else if (mdaFetchColumns != null
+                       && ArrayUtil.find(mdaFetchColumns, i) != -1) {
+                block      = true;
+                evaluation = "per block of " + RasUtil.fetchSize + " rows";
+            } else if (mdaParallelColumns != null
+                       && ArrayUtil.find(mdaParallelColumns, i) != -1) {
+                evaluation = "per row, " + RasUtil.parallelism
+                             + " queries in parallel";
+            } else {
+                evaluation = "per row";
+            }
+
+            sb.append(b).append("mda column ").append(i + 1).append("=[\n");
+            sb.append(b).append(' ').append("evaluation=[").append(
+                evaluation).append("]\n");
+
+            for (int j = 0; j < roots.size(); j++) {
+                Expression root  = (Expression) roots.get(j);
+                String     query = root.describeMDAQuery(session, block);
+
+                if (query == null) {
+                    sb.append(b).append(' ').append(
+                        "rasql=[rendered per row]\n");
+                } else {
+                    sb.append(b).append(' ').append("rasql=[").append(
+                        query).append("]\n");
+                }
+
+                if (root.isMDALocal()) {
+                    sb.append(b).append(' ').append(
+                        "local evaluation=[small or cached arrays]\n");
+                }
+            }
+
+            sb.append(b).append(' ').append("result cache=[").append(
+                RasUtil.getResultCache().getCapacity() > 0 ? "enabled"
+                                                           : "disabled").append(
+                                                               "]\n");
+            sb.append(b).append("]\n");
+        }
+
+        return sb.toString();
+    }
+
     void setMergeability() {
 
         isOrderSensitive |= sortAndSlice.hasLimit() || sortAndSlice.hasOrder();
@@ -31,11 +31,13 @@
 
 package org.hsqldb;
 
+import org.asqldb.ras.RasOidFilter;
 import org.hsqldb.HsqlNameManager.SimpleName;
 import org.hsqldb.ParserDQL.CompileContext;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.index.Index;
+import org.hsqldb.index.MDADomainIndex;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.HashMap;
 import org.hsqldb.lib.HashMappedList;
@@ -1251,6 +1253,17 @@ public class RangeVariable {
                 return;
             }
 
+            if (conditions[condIndex].indexCond == null
+                    && !conditions[condIndex].reversed
+                    && rangeVar.rangeTable instanceof TableDerived) {
+                it = ((TableDerived) rangeVar.rangeTable).getStreamedIterator(
+                    session, conditions[condIndex].rangeIndex);
+
+                if (it != null) {
+                    return;
+                }
+            }
+
             rangeVar.rangeTable.materialiseCorrelated(session);
 
             if (conditions[condIndex].indexCond == null) {
@@ -1393,12 +1406,34 @@ public class RangeVariable {
                     break;
                 }
 
+                if (joinConditions[condIndex].domainCondition != null
+                        && !joinConditions[condIndex].domainCondition.test(
+                            session, currentData)) {
+                    continue;
+                }
+
                 if (joinConditions[condIndex].nonIndexCondition != null
                         && !joinConditions[condIndex].nonIndexCondition
                             .testCondition(session)) {
                     continue;
                 }
 
+                if (joinConditions[condIndex].oidFilter != null
+                        && !joinConditions[condIndex].oidFilter.test(
+                            session, currentData)) {
+                    continue;
+                }
+
+                if (whereConditions[condIndex].domainCondition != null
+                        && !whereConditions[condIndex].domainCondition.test(
+                            session, currentData)) {
+                    hasLeftOuterRow = false;
+
+                    addFoundRow();
+
+                    continue;
+                }
+
                 if (whereConditions[condIndex].nonIndexCondition != null
                         && !whereConditions[condIndex].nonIndexCondition
                             .testCondition(session)) {
@@ -1409,6 +1444,16 @@ public class RangeVariable {
                     continue;
                 }
 
+                if (whereConditions[condIndex].oidFilter != null
+                        && !whereConditions[condIndex].oidFilter.test(
+                            session, currentData)) {
+                    hasLeftOuterRow = false;
+
+                    addFoundRow();
+
+                    continue;
+                }
+
                 Expression e = conditions[condIndex].excludeConditions;
 
                 if (e != null && e.testCondition(session)) {
@@ -1636,6 +1681,8 @@ public class RangeVariable {
         Expression          excludeConditions;
         Expression          nonIndexCondition;
         Expression          terminalCondition;
+        MDADomainIndex.Condition domainCondition;
+        RasOidFilter             oidFilter;
         int                 opType;
         int                 opTypeEnd;
         boolean             isFalse;
@@ -1652,6 +1699,8 @@ public class RangeVariable {
             this.rangeVar     = base.rangeVar;
             this.isJoin       = base.isJoin;
             nonIndexCondition = base.nonIndexCondition;
+            domainCondition   = base.domainCondition;
+            oidFilter         = base.oidFilter;
         }
 
         boolean hasIndexCondition() {
@@ -1961,6 +2010,32 @@ public class RangeVariable {
 
                 sb.append(b).append("other condition=[").append(temp).append(
                     "]\n");
+
+                if (nonIndexCondition.isExpressionMDA()) {
+                    HsqlArrayList roots = new HsqlArrayList();
+
+                    nonIndexCondition.collectMDARootNodes(roots);
+
+                    for (int i = 0; i < roots.size(); i++) {
+                        String query =
+                            ((Expression) roots.get(i)).describeMDAQuery(
+                                session, false);
+
+                        sb.append(b).append("mda condition=[per row, rasql=[");
+                        sb.append(query == null ? "rendered per row"
+                                                : query).append("]]\n");
+                    }
+                }
+            }
+
+            if (domainCondition != null) {
+                sb.append(b).append("domain condition=[").append(
+                    domainCondition.describe()).append("]\n");
+            }
+
+            if (oidFilter != null) {
+                sb.append(b).append("oid filter=[").append(
+                    oidFilter.describe(session)).append("]\n");
             }
 
             return sb.toString();
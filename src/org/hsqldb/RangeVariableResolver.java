@@ -31,12 +31,20 @@
 
 package org.hsqldb;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+import org.asqldb.FunctionMDA;
+import org.asqldb.ras.RasOidFilter;
+import org.asqldb.storage.MDAStorage;
 import org.hsqldb.ParserDQL.CompileContext;
 import org.hsqldb.RangeVariable.RangeVariableConditions;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.index.Index;
 import org.hsqldb.index.Index.IndexUse;
+import org.hsqldb.index.MDADomainIndex;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.HashMap;
 import org.hsqldb.lib.HsqlArrayList;
@@ -900,9 +908,13 @@ public class RangeVariableResolver {
                 conditions = rangeVariables[i].joinConditions[0];
 
                 joinExpressions[i].addAll(whereExpressions[i]);
+                assignOidFilter(rangeVariables[i], conditions,
+                                joinExpressions[i]);
                 assignToRangeVariable(rangeVariables[i], conditions, i,
                                       joinExpressions[i]);
                 assignToRangeVariable(conditions, joinExpressions[i]);
+                assignDomainCondition(rangeVariables[i], conditions,
+                                      joinExpressions[i]);
             } else {
                 conditions = rangeVariables[i].joinConditions[0];
 
@@ -919,6 +931,12 @@ public class RangeVariableResolver {
 
                 conditions = rangeVariables[i].whereConditions[0];
 
+                if (!rangeVariables[i].isLeftJoin
+                        && firstRightJoinIndex == rangeVariables.length) {
+                    assignOidFilter(rangeVariables[i], conditions,
+                                    whereExpressions[i]);
+                }
+
                 for (int j = i + 1; j < rangeVariables.length; j++) {
                     if (rangeVariables[j].isRightJoin) {
                         assignToRangeVariable(
@@ -933,7 +951,253 @@ public class RangeVariableResolver {
                 }
 
                 assignToRangeVariable(conditions, whereExpressions[i]);
+                assignDomainCondition(rangeVariables[i], conditions,
+                                      whereExpressions[i]);
+            }
+        }
+    }
+
+    /**
+     * Moves the MDA predicates over a single MDARRAY column of the range
+     * from the list to an OID filter, which evaluates them with one rasql
+     * query over the collection of the column instead of one query per row.
+     */
+    void assignOidFilter(RangeVariable range,
+                         RangeVariableConditions conditions,
+                         HsqlList exprList) {
+
+        if (!MDAStorage.get().supportsQueries()) {
+            return;
+        }
+
+        for (int j = 0; j < exprList.size(); j++) {
+            Expression       e      = (Expression) exprList.get(j);
+            ExpressionColumn column = getOidFilterColumn(range, e);
+
+            if (column == null) {
+                continue;
+            }
+
+            if (conditions.oidFilter == null) {
+                conditions.oidFilter = new RasOidFilter(
+                    column.getColumn().getRasdamanCollectionName(),
+                    column.getColumnName(), column.getColumnIndex());
+            } else if (conditions.oidFilter.getColumnIndex()
+                       != column.getColumnIndex()) {
+                continue;
+            }
+
+            conditions.oidFilter.add(e);
+            exprList.remove(j);
+
+            j--;
+        }
+    }
+
+    /**
+     * @return the MDARRAY column of the range that is the only column
+     * referenced by the boolean MDA expression, or null if the expression
+     * cannot be evaluated as a single rasql condition over the collection
+     */
+    private static ExpressionColumn getOidFilterColumn(RangeVariable range,
+            Expression e) {
+
+        if (e.getDataType() == null || !e.getDataType().isBooleanType()
+                || !e.isMDAPushdown() || !e.isMDARowInvariant()) {
+            return null;
+        }
+
+        if (e.collectAllExpressions(
+                null, Expression.subqueryExpressionSet,
+                Expression.emptyExpressionSet) != null) {
+            return null;
+        }
+
+        OrderedHashSet set = e.collectAllExpressions(null,
+            Expression.columnExpressionSet, Expression.emptyExpressionSet);
+
+        if (set == null) {
+            return null;
+        }
+
+        ExpressionColumn column = null;
+
+        for (int i = 0; i < set.size(); i++) {
+            Expression c = (Expression) set.get(i);
+
+            if (!(c instanceof ExpressionColumn) || !c.isExpressionMDA()
+                    || ((ExpressionColumn) c).getColumn() == null
+                    || c.getRangeVariable() != range) {
+                return null;
+            }
+
+            if (column != null && ((ExpressionColumn) c).getColumn()
+                    != column.getColumn()) {
+                return null;
+            }
+
+            column = (ExpressionColumn) c;
+        }
+
+        return column;
+    }
+
+    /**
+     * Collects comparisons of lo() or hi() of an MDARRAY column of the range
+     * with a constant into a condition that rejects rows by the spatial
+     * domain of the array, looked up in MDADomainIndex. The comparisons stay
+     * in the conditions, so the domain condition only prunes rows early.
+     */
+    void assignDomainCondition(RangeVariable range,
+                               RangeVariableConditions conditions,
+                               HsqlList exprList) {
+
+        for (int j = 0, size = exprList.size(); j < size; j++) {
+            Expression e = (Expression) exprList.get(j);
+            int        opType;
+            Expression bound;
+            Expression value;
+
+            switch (e.getType()) {
+
+                case OpTypes.EQUAL :
+                case OpTypes.GREATER :
+                case OpTypes.GREATER_EQUAL :
+                case OpTypes.SMALLER :
+                case OpTypes.SMALLER_EQUAL :
+                    break;
+
+                default :
+                    continue;
+            }
+
+            if (e.getRightNode().getType() == OpTypes.VALUE) {
+                bound  = e.getLeftNode();
+                value  = e.getRightNode();
+                opType = e.getType();
+            } else if (e.getLeftNode().getType() == OpTypes.VALUE) {
+                bound  = e.getRightNode();
+                value  = e.getLeftNode();
+                opType = swapOpType(e.getType());
+            } else {
+                continue;
+            }
+
+            if (!(bound instanceof FunctionMDA)
+                    || !((FunctionMDA) bound).isDomainBound()) {
+                continue;
+            }
+
+            FunctionMDA      function = (FunctionMDA) bound;
+            ExpressionColumn column   = function.getDomainColumn();
+            Object           constant = value.getValue(session);
+
+            if (column.getRangeVariable() != range
+                    || !(constant instanceof Number)) {
+                continue;
+            }
+
+            if (conditions.domainCondition == null) {
+                conditions.domainCondition = new MDADomainIndex.Condition(
+                    column.getColumn().getRasdamanCollectionName(),
+                    column.getColumnIndex());
+            } else if (conditions.domainCondition.getColumnIndex()
+                       != column.getColumnIndex()) {
+                continue;
+            }
+
+            BigDecimal number = toDomainBound((Number) constant);
+
+            if (number == null) {
+                continue;
+            }
+
+            if (number.signum() != 0
+                    && number.stripTrailingZeros().scale() > 0) {
+
+                // bounds are integers: x < 1.5 is x <= 1, x > -1.5 is x >= -1
+                switch (opType) {
+
+                    case OpTypes.SMALLER :
+                    case OpTypes.SMALLER_EQUAL :
+                        number = number.setScale(0, RoundingMode.FLOOR);
+                        opType = OpTypes.SMALLER_EQUAL;
+                        break;
+
+                    case OpTypes.GREATER :
+                    case OpTypes.GREATER_EQUAL :
+                        number = number.setScale(0, RoundingMode.CEILING);
+                        opType = OpTypes.GREATER_EQUAL;
+                        break;
+
+                    default :
+
+                        // no integral bound is equal, left to the WHERE clause
+                        continue;
+                }
+            }
+
+            if (number.compareTo(MIN_DOMAIN_BOUND) < 0
+                    || number.compareTo(MAX_DOMAIN_BOUND) > 0) {
+                continue;
+            }
+
+            conditions.domainCondition.add(function.isLowBound(),
+                                           function.getDomainDimension(session),
+                                           opType, number.longValue());
+        }
+    }
+
+    private static final BigDecimal MIN_DOMAIN_BOUND =
+        BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal MAX_DOMAIN_BOUND =
+        BigDecimal.valueOf(Long.MAX_VALUE);
+
+    /**
+     * Exact value of a numeric constant compared with lo() or hi(), or null
+     * for NaN and infinite values.
+     */
+    private static BigDecimal toDomainBound(Number constant) {
+
+        if (constant instanceof BigDecimal) {
+            return (BigDecimal) constant;
+        }
+
+        if (constant instanceof BigInteger) {
+            return new BigDecimal((BigInteger) constant);
+        }
+
+        if (constant instanceof Double || constant instanceof Float) {
+            double d = constant.doubleValue();
+
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return null;
             }
+
+            return new BigDecimal(d);
+        }
+
+        return BigDecimal.valueOf(constant.longValue());
+    }
+
+    private static int swapOpType(int opType) {
+
+        switch (opType) {
+
+            case OpTypes.GREATER :
+                return OpTypes.SMALLER;
+
+            case OpTypes.GREATER_EQUAL :
+                return OpTypes.SMALLER_EQUAL;
+
+            case OpTypes.SMALLER :
+                return OpTypes.GREATER;
+
+            case OpTypes.SMALLER_EQUAL :
+                return OpTypes.GREATER_EQUAL;
+
+            default :
+                return opType;
         }
     }
 
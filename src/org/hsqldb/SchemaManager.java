@@ -46,7 +46,7 @@ import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.StringConverter;
 import org.hsqldb.lib.WrapperIterator;
 import org.hsqldb.navigator.RowIterator;
-import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.MDAStorage;
 import org.hsqldb.rights.Grantee;
 import org.hsqldb.types.Charset;
 import org.hsqldb.types.Collation;
@@ -1007,7 +1007,7 @@ public class SchemaManager {
                 if (table.colTypes[j].isMDArrayType()) {
                     ColumnSchema column = table.getColumn(j);
                     String collName = column.getRasdamanCollectionName();
-                    RasUtil.executeRasqlQuery("drop collection " + collName, true, true);
+                    MDAStorage.get().dropCollection(session, collName);
                 }
             }
         }
@@ -38,6 +38,9 @@ import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.Random;
 import java.util.TimeZone;
+import java.util.concurrent.Future;
+import org.asqldb.ras.RasConnection;
+import org.asqldb.ras.RasDeleteBuffer;
 import org.asqldb.ras.RasUtil;
 
 import org.hsqldb.HsqlNameManager.HsqlName;
@@ -150,6 +153,33 @@ public class Session implements SessionInterface {
     //
     public StatementManager statementManager;
 
+    // rasdaman connections checked out for the current transaction, each
+    // holding a rasdaman transaction that ends with the session transaction
+    private RasConnection rasReadConnection;
+    private RasConnection rasWriteConnection;
+
+    // set when rasdaman writes of the current transaction were lost
+    private boolean rasTransactionFailed;
+
+    // arrays of the rows deleted by the committing transaction
+    private final RasDeleteBuffer rasDeletes = new RasDeleteBuffer();
+
+    // number of MDA fetch batches loaded in the background during a scan
+    private int mdaPrefetchDepth = RasUtil.prefetchDepth;
+
+    // time in milliseconds after which the rasdaman queries of the current
+    // statement are abandoned, 0 if the statement has no timeout
+    private volatile long rasDeadline;
+
+    // set when the current statement was cancelled
+    private volatile boolean rasCancelled;
+
+    // set once a statement of the session has been cancelled
+    private volatile boolean rasCancellable;
+
+    // rasdaman query the session thread is currently waiting for
+    private volatile Future<?> rasQuery;
+
     /**
      * Constructs a new Session object.
      *
@@ -220,6 +250,7 @@ public class Session implements SessionInterface {
         }
 
         rollback(false);
+        endRasTransaction(false);
 
         try {
             database.logger.writeOtherStatement(this, Tokens.T_DISCONNECT);
@@ -564,10 +595,21 @@ public class Session implements SessionInterface {
                                                           : Boolean.FALSE;
 
             setIsolation(isolationLevelDefault);
+            endRasTransaction(true);
 
             return;
         }
 
+        // the arrays are committed first, so that the rows referring to
+        // them can still be rolled back if the rasdaman commit fails
+        try {
+            commitRasTransaction();
+        } catch (HsqlException e) {
+            rollbackNoCheck(chain);
+
+            throw e;
+        }
+
         if (!database.txManager.commitTransaction(this)) {
 
 //            tempActionHistory.add("commit aborts " + actionTimestamp);
@@ -584,6 +626,219 @@ public class Session implements SessionInterface {
         }
     }
 
+    /**
+     * Returns the rasdaman connection used by this session, checking one
+     * out of the pool on first use. A rasdaman transaction is started on
+     * the connection, and together with the connection kept until the end
+     * of the session transaction, so that all reads of a transaction share
+     * one read transaction and all writes are committed or aborted at once
+     * with the rows referring to them.<p>
+     *
+     * Once the transaction has written to rasdaman, its reads go to the
+     * write connection as well, so that they see the arrays written by the
+     * transaction; the session then holds a single connection.
+     *
+     * @param writeAccess true for a read-write connection
+     * @return an open rasdaman connection
+     */
+    public synchronized RasConnection getRasConnection(boolean writeAccess) {
+
+        if (writeAccess) {
+            if (rasWriteConnection == null || !rasWriteConnection.isValid()) {
+                if (rasWriteConnection != null
+                        && rasWriteConnection.inTransaction()) {
+
+                    // writes done on the broken connection are lost
+                    rasWriteConnection.abort();
+
+                    rasTransactionFailed = true;
+                }
+
+                RasUtil.releaseConnection(rasWriteConnection);
+
+                rasWriteConnection = null;
+
+                // the reads continue on the write connection
+                if (rasReadConnection != null) {
+                    rasReadConnection.abort();
+                    RasUtil.releaseConnection(rasReadConnection);
+
+                    rasReadConnection = null;
+                }
+
+                rasWriteConnection = RasUtil.getConnection(true);
+            }
+
+            rasWriteConnection.begin();
+
+            return rasWriteConnection;
+        } else if (hasRasWriteTransaction()) {
+            return rasWriteConnection;
+        } else {
+            if (rasReadConnection == null || !rasReadConnection.isValid()) {
+                if (rasReadConnection != null) {
+                    rasReadConnection.abort();
+                }
+
+                RasUtil.releaseConnection(rasReadConnection);
+
+                rasReadConnection = null;
+                rasReadConnection = RasUtil.getConnection(false);
+            }
+
+            rasReadConnection.begin();
+
+            return rasReadConnection;
+        }
+    }
+
+    /**
+     * @return true if the session transaction has an open rasdaman write
+     * transaction, whose arrays are only visible on the write connection
+     */
+    public synchronized boolean hasRasWriteTransaction() {
+        return rasWriteConnection != null && rasWriteConnection.isValid()
+               && rasWriteConnection.inTransaction();
+    }
+
+    /**
+     * Commits the rasdaman writes of the session transaction.
+     */
+    private synchronized void commitRasTransaction() {
+
+        if (rasTransactionFailed) {
+            throw Error.error(ErrorCode.MDA_CONNECTION,
+                              "rasdaman transaction aborted");
+        }
+
+        if (rasWriteConnection != null) {
+            rasWriteConnection.commit();
+        }
+    }
+
+    /**
+     * Ends the rasdaman transactions of the session and returns the
+     * connections to the pool.
+     *
+     * @param commit true to commit the rasdaman writes, false to abort them
+     */
+    synchronized void endRasTransaction(boolean commit) {
+
+        try {
+            if (commit) {
+                rasDeletes.flush(this);
+            } else {
+                rasDeletes.clear();
+            }
+
+            if (rasWriteConnection != null) {
+                if (commit && !rasTransactionFailed) {
+                    rasWriteConnection.commit();
+                } else {
+                    rasWriteConnection.abort();
+                }
+            }
+        } finally {
+            if (rasReadConnection != null) {
+                rasReadConnection.abort();
+            }
+
+            RasUtil.releaseConnection(rasReadConnection);
+            RasUtil.releaseConnection(rasWriteConnection);
+
+            rasReadConnection    = null;
+            rasWriteConnection   = null;
+            rasTransactionFailed = false;
+        }
+    }
+
+    /**
+     * Returns the time after which the rasdaman queries of the current
+     * statement are abandoned, derived from the query timeout of the
+     * statement.
+     *
+     * @return time in milliseconds, or 0 if the statement has no timeout
+     */
+    public long getRasDeadline() {
+        return rasDeadline;
+    }
+
+    /**
+     * @return true if the current statement was cancelled with
+     * cancelRasQuery()
+     */
+    public boolean isRasCancelled() {
+        return rasCancelled;
+    }
+
+    /**
+     * @return true if statements of the session have been cancelled before,
+     * so that the rasdaman queries of the session should remain cancellable
+     * while they run
+     */
+    public boolean isRasCancellable() {
+        return rasCancellable;
+    }
+
+    /**
+     * Registers the rasdaman query the session thread is waiting for, so
+     * that it can be cancelled by another thread; null when it has ended.
+     */
+    public void setRasQuery(Future<?> query) {
+
+        rasQuery = query;
+
+        if (query != null && rasCancelled) {
+            query.cancel(false);
+        }
+    }
+
+    /**
+     * Cancels the current statement from another thread: the rasdaman query
+     * the session is waiting for is abandoned, and no further rasdaman
+     * queries are sent for the statement.
+     */
+    public void cancelRasQuery() {
+
+        rasCancellable = true;
+        rasCancelled   = true;
+
+        Future<?> query = rasQuery;
+
+        if (query != null) {
+            query.cancel(false);
+        }
+    }
+
+    /**
+     * Removes a connection whose query was abandoned from the session; the
+     * connection is closed by the thread still executing the query. Writes
+     * done on the connection are lost, so the session transaction can no
+     * longer be committed.
+     *
+     * @param connection a connection returned by getRasConnection()
+     */
+    public synchronized void detachRasConnection(RasConnection connection) {
+
+        if (connection == rasWriteConnection) {
+            rasWriteConnection   = null;
+            rasTransactionFailed = true;
+        } else if (connection == rasReadConnection) {
+            rasReadConnection = null;
+        }
+    }
+
+    /**
+     * Adds an array of a row deleted by the committing transaction; the
+     * arrays are removed from rasdaman when the transaction has committed.
+     *
+     * @param coll rasdaman collection name
+     * @param oid array OID
+     */
+    public synchronized void addRasDelete(String coll, Integer oid) {
+        rasDeletes.add(coll, oid);
+    }
+
     /**
      * Rolls back any uncommited transaction this Session may have open.
      *
@@ -621,6 +876,12 @@ public class Session implements SessionInterface {
 
         lockStatement = null;
 
+        // only array deletes of the committed rows are left at this point
+        try {
+            endRasTransaction(commit);
+        } catch (HsqlException e) {
+            database.logger.logWarningEvent("rasdaman commit failed", e);
+        }
         logSequences();
 
         if (!chain) {
@@ -1275,6 +1536,13 @@ public class Session implements SessionInterface {
 
         Result r;
 
+        if (sessionContext.depth == 0) {
+            rasDeadline  = timeout > 0
+                           ? System.currentTimeMillis() + timeout * 1000L
+                           : 0;
+            rasCancelled = false;
+        }
+
         if (abortTransaction) {
             rollbackNoCheck(false);
 
@@ -1470,43 +1738,77 @@ public class Session implements SessionInterface {
 
         Result error = null;
 
-        while (nav.hasNext()) {
-            Object[] pvals = (Object[]) nav.getNext();
-            Result in = executeCompiledStatement(cs, pvals, cmd.queryTimeout);
-
-            // On the client side, iterate over the vals and throw
-            // a BatchUpdateException if a batch status value of
-            // esultConstants.EXECUTE_FAILED is encountered in the result
-            if (in.isUpdateCount()) {
-                if (cs.hasGeneratedColumns()) {
-                    RowSetNavigator navgen =
-                        in.getChainedResult().getNavigator();
+        // in autocommit mode the statements of the batch run in one
+        // transaction, so that their rows and their rasdaman arrays are
+        // committed together; the statements executed before an error keep
+        // their updates
+        boolean autoCommit = sessionContext.depth == 0
+                             && sessionContext.isAutoCommit.booleanValue();
 
-                    while (navgen.hasNext()) {
-                        Object[] generatedRow = navgen.getNext();
+        if (autoCommit) {
+            sessionContext.isAutoCommit = Boolean.FALSE;
+        }
 
-                        generatedResult.getNavigator().add(generatedRow);
+        try {
+            while (nav.hasNext()) {
+                Object[] pvals = (Object[]) nav.getNext();
+                Result in = executeCompiledStatement(cs, pvals,
+                                                     cmd.queryTimeout);
+
+                // On the client side, iterate over the vals and throw
+                // a BatchUpdateException if a batch status value of
+                // esultConstants.EXECUTE_FAILED is encountered in the result
+                if (in.isUpdateCount()) {
+                    if (cs.hasGeneratedColumns()) {
+                        RowSetNavigator navgen =
+                            in.getChainedResult().getNavigator();
+
+                        while (navgen.hasNext()) {
+                            Object[] generatedRow = navgen.getNext();
+
+                            generatedResult.getNavigator().add(generatedRow);
+                        }
                     }
+
+                    updateCounts[count++] = in.getUpdateCount();
+                } else if (in.isData()) {
+
+                    // FIXME:  we don't have what it takes yet
+                    // to differentiate between things like
+                    // stored procedure calls to methods with
+                    // void return type and select statements with
+                    // a single row/column containg null
+                    updateCounts[count++] = ResultConstants.SUCCESS_NO_INFO;
+                } else if (in.mode == ResultConstants.CALL_RESPONSE) {
+                    updateCounts[count++] = ResultConstants.SUCCESS_NO_INFO;
+                } else if (in.mode == ResultConstants.ERROR) {
+                    updateCounts = ArrayUtil.arraySlice(updateCounts, 0, count);
+                    error        = in;
+
+                    break;
+                } else {
+                    throw Error.runtimeError(ErrorCode.U_S0500, "Session");
                 }
+            }
+        } catch (RuntimeException e) {
+            if (autoCommit) {
+                sessionContext.isAutoCommit = Boolean.TRUE;
 
-                updateCounts[count++] = in.getUpdateCount();
-            } else if (in.isData()) {
+                rollbackNoCheck(false);
+            }
 
-                // FIXME:  we don't have what it takes yet
-                // to differentiate between things like
-                // stored procedure calls to methods with
-                // void return type and select statements with
-                // a single row/column containg null
-                updateCounts[count++] = ResultConstants.SUCCESS_NO_INFO;
-            } else if (in.mode == ResultConstants.CALL_RESPONSE) {
-                updateCounts[count++] = ResultConstants.SUCCESS_NO_INFO;
-            } else if (in.mode == ResultConstants.ERROR) {
-                updateCounts = ArrayUtil.arraySlice(updateCounts, 0, count);
-                error        = in;
+            throw e;
+        }
 
-                break;
-            } else {
-                throw Error.runtimeError(ErrorCode.U_S0500, "Session");
+        if (autoCommit) {
+            sessionContext.isAutoCommit = Boolean.TRUE;
+
+            try {
+                commit(false);
+            } catch (HsqlException e) {
+                rollbackNoCheck(false);
+
+                return Result.newErrorResult(e);
             }
         }
 
@@ -2022,6 +2324,24 @@ public class Session implements SessionInterface {
         }
     }
 
+    public int getMDAPrefetchDepth() {
+        return mdaPrefetchDepth;
+    }
+
+    /**
+     * Sets how many blocks of MDARRAY values a query may fetch from rasdaman
+     * in the background while it continues to scan rows; 0 fetches each
+     * block in the session thread.
+     */
+    public void setMDAPrefetchDepth(int depth) {
+
+        if (depth < 0) {
+            depth = 0;
+        }
+
+        mdaPrefetchDepth = depth;
+    }
+
     // warnings
     HsqlDeque sqlWarnings;
 
@@ -31,6 +31,7 @@
 
 package org.hsqldb;
 
+import org.asqldb.ras.RasQueryStats;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
@@ -39,6 +40,7 @@ import org.hsqldb.lib.HashMappedList;
 import org.hsqldb.lib.Iterator;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.java.JavaSystem;
+import org.hsqldb.map.ValuePool;
 import org.hsqldb.persist.DataFileCache;
 import org.hsqldb.persist.DataSpaceManager;
 import org.hsqldb.persist.HsqlDatabaseProperties;
@@ -88,6 +90,7 @@ public class StatementCommand extends Statement {
                 break;
 
             case StatementTypes.EXPLAIN_PLAN :
+            case StatementTypes.EXPLAIN_ANALYZE :
                 group                  = StatementTypes.X_SQL_DIAGNOSTICS;
                 statementReturnType    = StatementTypes.RETURN_RESULT;
                 isTransactionStatement = false;
@@ -256,6 +259,9 @@ public class StatementCommand extends Statement {
                 return Result.newSingleColumnStringResult("OPERATION",
                         statement.describe(session));
             }
+            case StatementTypes.EXPLAIN_ANALYZE : {
+                return getExplainAnalyzeResult(session);
+            }
             case StatementTypes.DATABASE_BACKUP : {
                 String  path       = (String) parameters[0];
                 boolean blocking   = ((Boolean) parameters[1]).booleanValue();
@@ -1261,6 +1267,47 @@ public class StatementCommand extends Statement {
         }
     }
 
+    /**
+     * Executes the statement with its rasql queries counted and returns its
+     * plan followed by the rows, elapsed time and rasql statistics.
+     */
+    Result getExplainAnalyzeResult(Session session) {
+
+        Statement     statement = (Statement) parameters[0];
+        RasQueryStats stats     = new RasQueryStats();
+        long          deadline  = session.getRasDeadline();
+        int timeout = deadline == 0 ? 0
+                                    : (int) Math.max(1,
+                                        (deadline - System.currentTimeMillis()
+                                         + 999) / 1000);
+        long          start     = System.nanoTime();
+        RasQueryStats previous  = RasQueryStats.enter(stats);
+        Result        result;
+
+        try {
+            result = session.executeCompiledStatement(statement,
+                    ValuePool.emptyObjectArray, timeout);
+        } finally {
+            RasQueryStats.exit(previous);
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1000;
+
+        if (result.isError()) {
+            return result;
+        }
+
+        long rows = result.isData() ? result.getNavigator().getSize()
+                                    : result.getUpdateCount();
+
+        if (result.isData()) {
+            result.getNavigator().release();
+        }
+
+        return Result.newSingleColumnStringResult("OPERATION",
+                statement.describe(session) + stats.describe(elapsed, rows));
+    }
+
     Result getTruncateResult(Session session) {
 
         try {
@@ -1366,6 +1413,7 @@ public class StatementCommand extends Statement {
         switch (type) {
 
             case StatementTypes.EXPLAIN_PLAN :
+            case StatementTypes.EXPLAIN_ANALYZE :
                 return ResultMetaData.newSingleColumnMetaData("OPERATION");
 
             case StatementTypes.DATABASE_SCRIPT :
@@ -31,8 +31,7 @@
 
 package org.hsqldb;
 
-import org.asqldb.ras.RasCollCatalog;
-import org.asqldb.ras.RasUtil;
+import org.asqldb.storage.MDAStorage;
 import org.asqldb.types.MDAType;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.error.Error;
@@ -1204,22 +1203,13 @@ public class StatementSchema extends Statement {
                         ColumnSchema column = table.getColumn(i);
                         Type dataType = column.getDataType();
                         if (dataType instanceof MDAType) {
-                            String rasqlCreateStatement = null;
                             try {
-                                rasqlCreateStatement = column.getRasqlCreateStatement();
-                            } catch (RuntimeException ex) {
+                                MDAStorage.get().createCollection(session,
+                                        column.getRasdamanCollectionName(),
+                                        ((MDAType) dataType).getRasqlCollectionType());
+                            } catch (Exception ex) {
                                 ex.printStackTrace();
                             }
-                            if (rasqlCreateStatement != null) {
-                                try {
-                                    RasCollCatalog.init();
-                                    if (!RasCollCatalog.contains(column.getRasdamanCollectionName())) {
-                                        RasUtil.executeRasqlQuery(rasqlCreateStatement, true, true);
-                                    }
-                                } catch (Exception ex) {
-                                    ex.printStackTrace();
-                                }
-                            }
                         }
                     }
 
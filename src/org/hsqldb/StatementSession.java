@@ -179,6 +179,7 @@ public class StatementSession extends Statement {
             case StatementTypes.SET_TRANSFORM_GROUP :
             case StatementTypes.SET_SESSION_RESULT_MAX_ROWS :
             case StatementTypes.SET_SESSION_RESULT_MEMORY_ROWS :
+            case StatementTypes.SET_SESSION_MDA_PREFETCH :
             case StatementTypes.SET_SESSION_AUTOCOMMIT :
                 group = StatementTypes.X_HSQLDB_SESSION;
                 break;
@@ -650,6 +651,13 @@ public class StatementSession extends Statement {
 
                 return Result.updateZeroResult;
             }
+            case StatementTypes.SET_SESSION_MDA_PREFETCH : {
+                int depth = ((Integer) parameters[0]).intValue();
+
+                session.setMDAPrefetchDepth(depth);
+
+                return Result.updateZeroResult;
+            }
             case StatementTypes.SET_SESSION_SQL_IGNORECASE : {
                 try {
                     boolean mode = ((Boolean) parameters[0]).booleanValue();
@@ -263,6 +263,7 @@ public interface StatementTypes {
     int SET_TABLE_NEW_TABLESPACE = 1199;
     int SET_TABLE_SET_TABLESPACE = 1200;
     int LOG_SCHEMA_STATEMENT     = 1201;
+    int EXPLAIN_ANALYZE          = 1202;
 
     // hsqldb sql implementation
     int CONDITION = 1211;                         // element of IF
@@ -275,6 +276,9 @@ public interface StatementTypes {
     int CREATE_SEARCH = 1301;
     int DROP_SEARCH   = 1302;
 
+    // asqldb session
+    int SET_SESSION_MDA_PREFETCH = 1401;
+
     //
     // hsqldb groups
     int X_SQL_SCHEMA_DEFINITION      = 2001;
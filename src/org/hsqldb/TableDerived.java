@@ -34,6 +34,7 @@ package org.hsqldb;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.Index;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.HashMappedList;
 import org.hsqldb.navigator.RowIterator;
@@ -395,6 +396,23 @@ public class TableDerived extends Table {
         }
     }
 
+    /**
+     * Returns an iterator that produces the rows of a correlated UNNEST of
+     * MDARRAY values on demand, or null if the table has to be materialised
+     * in order to be scanned with the given index.
+     */
+    RowIterator getStreamedIterator(Session session, Index index) {
+
+        if (dataExpression instanceof ExpressionTable && isCorrelated()
+                && index == getPrimaryIndex() && index.getColumnCount() == 0
+                && ((ExpressionTable) dataExpression).isStreamed()) {
+            return ((ExpressionTable) dataExpression).getArrayRowIterator(
+                session);
+        }
+
+        return null;
+    }
+
     public void materialiseCorrelated(Session session) {
 
         if (isCorrelated()) {
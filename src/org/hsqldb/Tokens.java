@@ -629,6 +629,7 @@ public class Tokens {
     // other tokens
     public static final String        T_ALIAS                = "ALIAS";
     public static final String        T_AGGREGATE            = "AGGREGATE";
+    public static final String        T_ANALYZE              = "ANALYZE";
     public static final String T_AUTHENTICATION       = "AUTHENTICATION";
     public static final String        T_AUTO_INCREMENT       = "AUTO_INCREMENT";
     public static final String        T_AUTOCOMMIT           = "AUTOCOMMIT";
@@ -939,6 +940,8 @@ public class Tokens {
     public static final String        T_MDA_DIMENSION_NAME         = "DIMENSION_NAME";
     public static final String        T_MDA_DIMENSION    = "DIMENSIONALITY";
 
+    public static final String        T_MDA_PREFETCH     = "PREFETCH";
+
     //
     public static final String T_ISOLATION_LEVEL         = "ISOLATION_LEVEL";
     public static final String T_SESSION_ISOLATION_LEVEL = "SESSION_ISOLATION_LEVEL";
@@ -1866,6 +1869,8 @@ public class Tokens {
     public static final int MDA_DIMENSION              = 1063;
     public static final int MDA_BBOX                   = 1064;
 
+    public static final int MDA_PREFETCH               = 1070;
+
     //
     public static final int X_UNKNOWN_TOKEN = -1;
     private static final IntValueHashMap reservedKeys =
@@ -2609,6 +2614,9 @@ public class Tokens {
         commandSet.put(T_LOB_ID, LOB_ID);
         commandSet.put(T_SEQUENCE_ARRAY, SEQUENCE_ARRAY);
 
+        //rasdaman keys
+        commandSet.put(T_MDA_PREFETCH, MDA_PREFETCH);
+
         //
         commandSet.put(T_ASTERISK, Tokens.ASTERISK);
         commandSet.put(T_CLOSEBRACKET, CLOSEBRACKET);
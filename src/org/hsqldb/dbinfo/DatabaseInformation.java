@@ -160,6 +160,9 @@ public class DatabaseInformation {
     protected static final int VIEW_TABLE_USAGE                  = 93;
     protected static final int VIEWS                             = 94;
 
+    // asqldb-specific
+    protected static final int SYSTEM_MDA_METRICS = 95;
+
     /** system table names strictly in order of their ids */
     protected static final String[] sysTableNames = {
         "SYSTEM_BESTROWIDENTIFIER",                              //
@@ -261,6 +264,9 @@ public class DatabaseInformation {
         "VIEW_ROUTINE_USAGE",                                    //
         "VIEW_TABLE_USAGE",                                      //
         "VIEWS",                                                 //
+
+        // asqldb-specific
+        "SYSTEM_MDA_METRICS",                                    //
     };
 
     /** Map: table name => table id */
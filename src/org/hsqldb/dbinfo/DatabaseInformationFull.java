@@ -37,6 +37,7 @@ import java.io.LineNumberReader;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
+import org.asqldb.util.Metrics;
 import org.hsqldb.ColumnSchema;
 import org.hsqldb.Constraint;
 import org.hsqldb.Database;
@@ -392,6 +393,10 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
             case VIEWS :
                 return VIEWS(session, store);
 
+            // asqldb-specific
+            case SYSTEM_MDA_METRICS :
+                return SYSTEM_MDA_METRICS(session, store);
+
             default :
                 return super.generateTable(session, store, tableIndex);
         }
@@ -1385,6 +1390,89 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
         return t;
     }
 
+    /**
+     * Retrieves a <code>Table</code> object describing the counters and
+     * histograms recorded for the rasdaman queries issued by all sessions,
+     * e.g. rasql latency, bytes transferred and result cache hits. <p>
+     *
+     * For counters, only COUNT is set; for histograms, COUNT is the number
+     * of recorded values and the remaining columns describe their
+     * distribution. Only visible to administrators.
+     *
+     * @return a table with one row per metric
+     */
+    Table SYSTEM_MDA_METRICS(Session session, PersistentStore store) {
+
+        Table t = sysTables[SYSTEM_MDA_METRICS];
+
+        if (t == null) {
+            t = createBlankTable(sysTableHsqlNames[SYSTEM_MDA_METRICS]);
+
+            addColumn(t, "METRIC_NAME", CHARACTER_DATA);    // not null
+            addColumn(t, "METRIC_TYPE", CHARACTER_DATA);    // not null
+            addColumn(t, "COUNT", CARDINAL_NUMBER);         // not null
+            addColumn(t, "SUM", CARDINAL_NUMBER);
+            addColumn(t, "MEAN", Type.SQL_DOUBLE);
+            addColumn(t, "P50", CARDINAL_NUMBER);
+            addColumn(t, "P90", CARDINAL_NUMBER);
+            addColumn(t, "P99", CARDINAL_NUMBER);
+            addColumn(t, "MAX", CARDINAL_NUMBER);
+
+            HsqlName name = HsqlNameManager.newInfoSchemaObjectName(
+                sysTableHsqlNames[SYSTEM_MDA_METRICS].name, false,
+                SchemaObject.INDEX);
+
+            t.createPrimaryKeyConstraint(name, new int[]{ 0 }, true);
+
+            return t;
+        }
+
+        // column number mappings
+        final int iname  = 0;
+        final int itype  = 1;
+        final int icount = 2;
+        final int isum   = 3;
+        final int imean  = 4;
+        final int ip50   = 5;
+        final int ip90   = 6;
+        final int ip99   = 7;
+        final int imax   = 8;
+
+        //
+        Object[] row;
+
+        if (!session.isAdmin()) {
+            return t;
+        }
+
+        for (Metrics.Counter counter : Metrics.getCounters()) {
+            row         = t.getEmptyRowData();
+            row[iname]  = counter.getName();
+            row[itype]  = "COUNTER";
+            row[icount] = ValuePool.getLong(counter.get());
+
+            t.insertSys(session, store, row);
+        }
+
+        for (Metrics.Histogram histogram : Metrics.getHistograms()) {
+            row         = t.getEmptyRowData();
+            row[iname]  = histogram.getName();
+            row[itype]  = "HISTOGRAM";
+            row[icount] = ValuePool.getLong(histogram.getCount());
+            row[isum]   = ValuePool.getLong(histogram.getSum());
+            row[imean]  = ValuePool.getDouble(
+                Double.doubleToLongBits(histogram.getMean()));
+            row[ip50] = ValuePool.getLong(histogram.getPercentile(50));
+            row[ip90] = ValuePool.getLong(histogram.getPercentile(90));
+            row[ip99] = ValuePool.getLong(histogram.getPercentile(99));
+            row[imax] = ValuePool.getLong(histogram.getMax());
+
+            t.insertSys(session, store, row);
+        }
+
+        return t;
+    }
+
 //------------------------------------------------------------------------------
 // SQL SCHEMATA VIEWS
 
@@ -189,6 +189,7 @@ class DatabaseInformationMain extends DatabaseInformation {
             nonCachedTablesSet.add("SYSTEM_SESSIONS");
             nonCachedTablesSet.add("SYSTEM_PROPERTIES");
             nonCachedTablesSet.add("SYSTEM_SEQUENCES");
+            nonCachedTablesSet.add("SYSTEM_MDA_METRICS");
         }
     }
 
@@ -710,4 +710,8 @@ public interface ErrorCode {
     int MDA_CONNECTION = 7018;                      // Rasdaman connection error
 
     int MDA_INVALID_SUBSET = 7019;                  // Invalid subset specification
+
+    int MDA_UNSUPPORTED = 7020;                     // Operation not supported by the MDA storage engine
+
+    int MDA_CANCELLED = 7021;                       // Rasdaman query cancelled
 }
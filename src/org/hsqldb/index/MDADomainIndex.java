@@ -0,0 +1,736 @@
+/*
+ * Copyright (c) 2014, Dimitar Misev
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.hsqldb.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.asqldb.ras.RasCollInfo;
+import org.asqldb.storage.MDAStorage;
+import org.asqldb.util.Metrics;
+import org.hsqldb.HsqlException;
+import org.hsqldb.OpTypes;
+import org.hsqldb.Session;
+
+/**
+ * R-tree over the spatial domains of the arrays in the collection of an
+ * MDARRAY column, keyed by array OID. It answers sdom, lo and hi of an array
+ * without a rasdaman query, and lets the range iterator skip rows whose
+ * array bounds cannot satisfy a condition on lo or hi (see
+ * {@link Condition}).<p>
+ *
+ * The index is kept in memory and maintained by the storage engines on
+ * insert, delete and drop. An index is complete if every array of the
+ * collection has an entry, which holds for collections created by this
+ * process; arrays inserted with an expression that is not a literal, e.g.
+ * decode, are recorded as pending and their domain is loaded on first use.
+ * For other collections the domain of an array is loaded from the engine
+ * on the first lookup, and the index is never used to enumerate arrays.<p>
+ *
+ * The tree follows Guttman's R-tree with quadratic split; entries of
+ * underfull nodes are reinserted on delete.
+ *
+ * @author Dimitar Misev
+ */
+public class MDADomainIndex {
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 4;
+
+    private static final Metrics.Counter LOOKUPS = Metrics.counter("mda.domain_index_lookups");
+    private static final Metrics.Counter LOADS = Metrics.counter("mda.domain_index_loads");
+
+    private static final ConcurrentMap<String, MDADomainIndex> indexes =
+            new ConcurrentHashMap<String, MDADomainIndex>();
+
+    private final String coll;
+    private final boolean complete;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    /**
+     * Domain of every indexed array, lower and upper bounds alternating.
+     */
+    private final Map<Integer, long[]> domains = new HashMap<Integer, long[]>();
+
+    /**
+     * Arrays of a complete index whose domain has not been loaded yet.
+     */
+    private final Set<Integer> pending = new HashSet<Integer>();
+
+    /**
+     * Arrays of another dimensionality than the first indexed array, which
+     * are not in the tree.
+     */
+    private final Set<Integer> unindexed = new HashSet<Integer>();
+
+    private Node root;
+    private int dimension = -1;
+    private volatile long version;
+
+    private MDADomainIndex(String coll, boolean complete) {
+        this.coll = coll;
+        this.complete = complete;
+    }
+
+    /**
+     * @return the index of a collection; an index created on demand for a
+     * collection that existed before is not complete
+     */
+    public static MDADomainIndex get(String coll) {
+        MDADomainIndex ret = indexes.get(coll);
+        if (ret == null) {
+            final MDADomainIndex prev = indexes.putIfAbsent(coll, new MDADomainIndex(coll, false));
+            ret = prev != null ? prev : indexes.get(coll);
+        }
+        return ret;
+    }
+
+    /**
+     * Record a collection created empty by this process.
+     */
+    public static void created(String coll) {
+        indexes.put(coll, new MDADomainIndex(coll, true));
+    }
+
+    public static void dropped(String coll) {
+        indexes.remove(coll);
+    }
+
+    public static void clear() {
+        indexes.clear();
+    }
+
+    public String getCollection() {
+        return coll;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return a number that changes whenever the set of indexed arrays changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Record an inserted array.
+     * @param domain lower and upper bounds alternating, or null if not known
+     */
+    public void insert(Integer oid, long[] domain) {
+        writeLock.lock();
+        try {
+            removeEntry(oid);
+            if (domain != null) {
+                addEntry(oid, domain);
+            } else if (complete) {
+                pending.add(oid);
+            }
+            version++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void delete(Collection<Integer> oids) {
+        writeLock.lock();
+        try {
+            for (Integer oid : oids) {
+                removeEntry(oid);
+            }
+            version++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the domain of an array, lower and upper bounds alternating;
+     * loaded from the storage engine if it is not indexed yet
+     */
+    public long[] getDomain(Session session, Integer oid) throws HsqlException {
+        LOOKUPS.increment();
+        readLock.lock();
+        try {
+            final long[] ret = domains.get(oid);
+            if (ret != null) {
+                return ret;
+            }
+        } finally {
+            readLock.unlock();
+        }
+        final long[] ret = loadDomain(session, oid);
+        writeLock.lock();
+        try {
+            if (!domains.containsKey(oid)) {
+                pending.remove(oid);
+                addEntry(oid, ret);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the OIDs of the arrays satisfying the condition; only valid
+     * for a complete index
+     */
+    public Set<Integer> search(Session session, Condition condition) throws HsqlException {
+        loadPending(session);
+        final Set<Integer> ret = new HashSet<Integer>();
+        readLock.lock();
+        try {
+            if (root != null) {
+                search(root, condition, ret);
+            }
+            for (Integer oid : unindexed) {
+                if (condition.matches(domains.get(oid))) {
+                    ret.add(oid);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return ret;
+    }
+
+    private void loadPending(Session session) throws HsqlException {
+        final List<Integer> oids;
+        readLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            oids = new ArrayList<Integer>(pending);
+        } finally {
+            readLock.unlock();
+        }
+        for (Integer oid : oids) {
+            getDomain(session, oid);
+        }
+    }
+
+    private long[] loadDomain(Session session, Integer oid) throws HsqlException {
+        LOADS.increment();
+        return RasCollInfo.parseDomain(MDAStorage.get().getDomain(session, coll, oid));
+    }
+
+    private void search(Node node, Condition condition, Set<Integer> ret) {
+        for (int i = 0; i < node.count; i++) {
+            if (node.leaf) {
+                if (condition.matches(node.boxes[i])) {
+                    ret.add((Integer) node.entries[i]);
+                }
+            } else if (condition.mayContain(node.boxes[i])) {
+                search((Node) node.entries[i], condition, ret);
+            }
+        }
+    }
+
+    //
+    // R-tree maintenance, called with the write lock held
+    //
+
+    private void addEntry(Integer oid, long[] domain) {
+        domains.put(oid, domain);
+        if (dimension < 0) {
+            dimension = domain.length / 2;
+        } else if (dimension != domain.length / 2) {
+            unindexed.add(oid);
+            return;
+        }
+        if (root == null) {
+            root = new Node(true);
+        }
+        final Node leaf = chooseLeaf(domain);
+        leaf.add(domain, oid);
+        adjust(leaf);
+    }
+
+    private void removeEntry(Integer oid) {
+        pending.remove(oid);
+        unindexed.remove(oid);
+        final long[] domain = domains.remove(oid);
+        if (domain == null || root == null) {
+            return;
+        }
+        final Node leaf = findLeaf(root, oid, domain);
+        if (leaf == null) {
+            return;
+        }
+        leaf.remove(leaf.indexOf(oid));
+        condense(leaf);
+    }
+
+    private Node chooseLeaf(long[] box) {
+        Node node = root;
+        while (!node.leaf) {
+            int best = 0;
+            double bestEnlargement = Double.MAX_VALUE;
+            double bestVolume = Double.MAX_VALUE;
+            for (int i = 0; i < node.count; i++) {
+                final double volume = volume(node.boxes[i]);
+                final double enlargement = volume(union(node.boxes[i], box)) - volume;
+                if (enlargement < bestEnlargement
+                        || (enlargement == bestEnlargement && volume < bestVolume)) {
+                    best = i;
+                    bestEnlargement = enlargement;
+                    bestVolume = volume;
+                }
+            }
+            node = (Node) node.entries[best];
+        }
+        return node;
+    }
+
+    /**
+     * Propagate the bounding box of a modified node up to the root,
+     * splitting overflowing nodes on the way.
+     */
+    private void adjust(Node node) {
+        while (true) {
+            final Node sibling = node.count > MAX_ENTRIES ? split(node) : null;
+            final Node parent = node.parent;
+            if (parent == null) {
+                if (sibling != null) {
+                    final Node newRoot = new Node(false);
+                    newRoot.add(node.getBox(), node);
+                    newRoot.add(sibling.getBox(), sibling);
+                    root = newRoot;
+                }
+                return;
+            }
+            parent.boxes[parent.indexOf(node)] = node.getBox();
+            if (sibling != null) {
+                parent.add(sibling.getBox(), sibling);
+            }
+            node = parent;
+        }
+    }
+
+    /**
+     * Quadratic split: the node keeps one group of its entries, the other
+     * group is moved to the returned sibling.
+     */
+    private Node split(Node node) {
+        final int n = node.count;
+        final long[][] boxes = new long[n][];
+        final Object[] entries = new Object[n];
+        System.arraycopy(node.boxes, 0, boxes, 0, n);
+        System.arraycopy(node.entries, 0, entries, 0, n);
+        node.clear();
+        final Node sibling = new Node(node.leaf);
+
+        // seeds: the pair that would waste the most volume in one node
+        int seed1 = 0;
+        int seed2 = 1;
+        double worst = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                final double waste = volume(union(boxes[i], boxes[j])) - volume(boxes[i]) - volume(boxes[j]);
+                if (waste > worst) {
+                    worst = waste;
+                    seed1 = i;
+                    seed2 = j;
+                }
+            }
+        }
+        final boolean[] assigned = new boolean[n];
+        node.add(boxes[seed1], entries[seed1]);
+        sibling.add(boxes[seed2], entries[seed2]);
+        assigned[seed1] = true;
+        assigned[seed2] = true;
+        long[] box1 = boxes[seed1];
+        long[] box2 = boxes[seed2];
+
+        for (int remaining = n - 2; remaining > 0; remaining--) {
+            if (node.count + remaining == MIN_ENTRIES || sibling.count + remaining == MIN_ENTRIES) {
+                final Node target = node.count + remaining == MIN_ENTRIES ? node : sibling;
+                for (int i = 0; i < n; i++) {
+                    if (!assigned[i]) {
+                        target.add(boxes[i], entries[i]);
+                    }
+                }
+                break;
+            }
+            // next: the entry with the strongest preference for one group
+            int next = -1;
+            double d1 = 0;
+            double d2 = 0;
+            double maxDiff = -1;
+            for (int i = 0; i < n; i++) {
+                if (assigned[i]) {
+                    continue;
+                }
+                final double e1 = volume(union(box1, boxes[i])) - volume(box1);
+                final double e2 = volume(union(box2, boxes[i])) - volume(box2);
+                if (Math.abs(e1 - e2) > maxDiff) {
+                    maxDiff = Math.abs(e1 - e2);
+                    next = i;
+                    d1 = e1;
+                    d2 = e2;
+                }
+            }
+            assigned[next] = true;
+            final boolean first = d1 < d2 || (d1 == d2 && (volume(box1) < volume(box2)
+                    || (volume(box1) == volume(box2) && node.count <= sibling.count)));
+            if (first) {
+                node.add(boxes[next], entries[next]);
+                box1 = union(box1, boxes[next]);
+            } else {
+                sibling.add(boxes[next], entries[next]);
+                box2 = union(box2, boxes[next]);
+            }
+        }
+        return sibling;
+    }
+
+    private Node findLeaf(Node node, Integer oid, long[] box) {
+        if (node.leaf) {
+            return node.indexOf(oid) >= 0 ? node : null;
+        }
+        for (int i = 0; i < node.count; i++) {
+            if (contains(node.boxes[i], box)) {
+                final Node ret = findLeaf((Node) node.entries[i], oid, box);
+                if (ret != null) {
+                    return ret;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove underfull nodes on the path from a leaf to the root and
+     * reinsert their entries.
+     */
+    private void condense(Node node) {
+        final List<Integer> orphans = new ArrayList<Integer>();
+        while (node.parent != null) {
+            final Node parent = node.parent;
+            final int i = parent.indexOf(node);
+            if (node.count < MIN_ENTRIES) {
+                parent.remove(i);
+                collectOids(node, orphans);
+            } else {
+                parent.boxes[i] = node.getBox();
+            }
+            node = parent;
+        }
+        while (!root.leaf && root.count == 1) {
+            root = (Node) root.entries[0];
+            root.parent = null;
+        }
+        if (root.count == 0) {
+            root = null;
+        }
+        for (Integer oid : orphans) {
+            final long[] domain = domains.remove(oid);
+            addEntry(oid, domain);
+        }
+    }
+
+    private static void collectOids(Node node, List<Integer> ret) {
+        for (int i = 0; i < node.count; i++) {
+            if (node.leaf) {
+                ret.add((Integer) node.entries[i]);
+            } else {
+                collectOids((Node) node.entries[i], ret);
+            }
+        }
+    }
+
+    //
+    // boxes: lower and upper bounds alternating
+    //
+
+    private static double volume(long[] box) {
+        double ret = 1;
+        for (int i = 0; i < box.length; i += 2) {
+            ret *= (double) box[i + 1] - box[i] + 1;
+        }
+        return ret;
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        final long[] ret = new long[a.length];
+        for (int i = 0; i < a.length; i += 2) {
+            ret[i] = Math.min(a[i], b[i]);
+            ret[i + 1] = Math.max(a[i + 1], b[i + 1]);
+        }
+        return ret;
+    }
+
+    private static boolean contains(long[] outer, long[] inner) {
+        for (int i = 0; i < outer.length; i += 2) {
+            if (inner[i] < outer[i] || inner[i + 1] > outer[i + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+
+        final boolean leaf;
+        final long[][] boxes = new long[MAX_ENTRIES + 1][];
+
+        /**
+         * Child nodes, or the OIDs in a leaf.
+         */
+        final Object[] entries = new Object[MAX_ENTRIES + 1];
+        int count;
+        Node parent;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        void add(long[] box, Object entry) {
+            boxes[count] = box;
+            entries[count] = entry;
+            count++;
+            if (entry instanceof Node) {
+                ((Node) entry).parent = this;
+            }
+        }
+
+        void remove(int i) {
+            count--;
+            boxes[i] = boxes[count];
+            entries[i] = entries[count];
+            boxes[count] = null;
+            entries[count] = null;
+        }
+
+        void clear() {
+            for (int i = 0; i < count; i++) {
+                boxes[i] = null;
+                entries[i] = null;
+            }
+            count = 0;
+        }
+
+        int indexOf(Object entry) {
+            for (int i = 0; i < count; i++) {
+                if (entries[i] == entry || (leaf && entries[i].equals(entry))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        long[] getBox() {
+            long[] ret = boxes[0];
+            for (int i = 1; i < count; i++) {
+                ret = union(ret, boxes[i]);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Conjunction of comparisons of lo(a, d) and hi(a, d) with constants,
+     * over the MDARRAY column a of a range variable. A row whose array
+     * does not satisfy the condition does not satisfy the WHERE clause, and
+     * is skipped by the range iterator before the clause is evaluated.
+     */
+    public static final class Condition {
+
+        private final String coll;
+        private final int columnIndex;
+
+        /**
+         * Range of the lower and of the upper bound of each dimension:
+         * minimum and maximum alternating.
+         */
+        private long[] lo = new long[0];
+        private long[] hi = new long[0];
+
+        /**
+         * Result of the last search, valid for the index version it was
+         * computed at.
+         */
+        private Set<Integer> matches;
+        private long matchesVersion;
+
+        public Condition(String coll, int columnIndex) {
+            this.coll = coll;
+            this.columnIndex = columnIndex;
+        }
+
+        public int getColumnIndex() {
+            return columnIndex;
+        }
+
+        /**
+         * Add the comparison <code>lo(a, dimension) opType value</code>, or
+         * hi(a, dimension) if low is false.
+         * @return false if the comparison cannot be expressed
+         */
+        public boolean add(boolean low, int dimension, int opType, long value) {
+            long min = Long.MIN_VALUE;
+            long max = Long.MAX_VALUE;
+            switch (opType) {
+                case OpTypes.EQUAL:
+                    min = value;
+                    max = value;
+                    break;
+                case OpTypes.GREATER:
+                    if (value == Long.MAX_VALUE) {
+                        return false;
+                    }
+                    min = value + 1;
+                    break;
+                case OpTypes.GREATER_EQUAL:
+                    min = value;
+                    break;
+                case OpTypes.SMALLER:
+                    if (value == Long.MIN_VALUE) {
+                        return false;
+                    }
+                    max = value - 1;
+                    break;
+                case OpTypes.SMALLER_EQUAL:
+                    max = value;
+                    break;
+                default:
+                    return false;
+            }
+            if (low) {
+                lo = restrict(lo, dimension, min, max);
+            } else {
+                hi = restrict(hi, dimension, min, max);
+            }
+            return true;
+        }
+
+        private static long[] restrict(long[] bounds, int dimension, long min, long max) {
+            long[] ret = bounds;
+            if (ret.length <= dimension * 2) {
+                ret = new long[dimension * 2 + 2];
+                for (int i = 0; i < ret.length; i += 2) {
+                    ret[i] = Long.MIN_VALUE;
+                    ret[i + 1] = Long.MAX_VALUE;
+                }
+                System.arraycopy(bounds, 0, ret, 0, bounds.length);
+            }
+            ret[dimension * 2] = Math.max(ret[dimension * 2], min);
+            ret[dimension * 2 + 1] = Math.min(ret[dimension * 2 + 1], max);
+            return ret;
+        }
+
+        /**
+         * @return false if the array in the given row certainly does not
+         * satisfy the condition
+         */
+        public boolean test(Session session, Object[] rowData) throws HsqlException {
+            final Object oid = rowData[columnIndex];
+            if (!(oid instanceof Integer)) {
+                return true;
+            }
+            final MDADomainIndex index = get(coll);
+            if (index.isComplete()) {
+                return getMatches(session, index).contains(oid);
+            }
+            return matches(index.getDomain(session, (Integer) oid));
+        }
+
+        private synchronized Set<Integer> getMatches(Session session, MDADomainIndex index) throws HsqlException {
+            final long currentVersion = index.getVersion();
+            if (matches == null || matchesVersion != currentVersion) {
+                matches = index.search(session, this);
+                matchesVersion = index.getVersion();
+            }
+            return matches;
+        }
+
+        /**
+         * @return true if the domain satisfies the condition; conditions on
+         * dimensions the array does not have are left to the WHERE clause
+         */
+        boolean matches(long[] domain) {
+            if (lo.length > domain.length || hi.length > domain.length) {
+                return true;
+            }
+            for (int i = 0; i < lo.length; i += 2) {
+                if (domain[i] < lo[i] || domain[i] > lo[i + 1]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < hi.length; i += 2) {
+                if (domain[i + 1] < hi[i] || domain[i + 1] > hi[i + 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return false if no array with a domain inside the given bounding
+         * box can satisfy the condition
+         */
+        boolean mayContain(long[] box) {
+            if (lo.length > box.length || hi.length > box.length) {
+                return true;
+            }
+            // the bounds of all arrays in the box lie within the box
+            for (int i = 0; i < lo.length; i += 2) {
+                if (box[i + 1] < lo[i] || box[i] > lo[i + 1]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < hi.length; i += 2) {
+                if (box[i + 1] < hi[i] || box[i] > hi[i + 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String describe() {
+            final StringBuilder sb = new StringBuilder("MDA DOMAIN INDEX ");
+            sb.append(coll).append(" lo").append(RasCollInfo.formatDomain(lo));
+            sb.append(" hi").append(RasCollInfo.formatDomain(hi));
+            return sb.toString();
+        }
+    }
+}
@@ -3,8 +3,8 @@ package org.hsqldb.jdbc;
 import java.sql.Array;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Map;
+import org.asqldb.ras.RasCellBuffer;
 import org.hsqldb.ColumnBase;
 import org.hsqldb.SessionInterface;
 import org.hsqldb.error.ErrorCode;
@@ -12,10 +12,7 @@ import org.hsqldb.navigator.RowSetNavigatorClient;
 import org.hsqldb.result.Result;
 import org.hsqldb.result.ResultMetaData;
 import org.hsqldb.types.Type;
-import rasj.RasDimensionMismatchException;
 import rasj.RasGMArray;
-import rasj.RasIndexOutOfBoundsException;
-import rasj.RasPoint;
 
 public class JDBCMArray implements Array {
 
@@ -59,27 +56,33 @@ public class JDBCMArray implements Array {
         return data;
     }
 
-    private Result newColumnResult(long position,
-            int count) throws SQLException {
+    /**
+     * @return a view of the array cells
+     * @throws SQLException if the cell type is not supported
+     */
+    private RasCellBuffer getCells() throws SQLException {
 
-        int mArraySize = 0;
-        String mArrayStruct = data.getTypeStructure();
-        ArrayList<Integer> dimSize = getDimSize(mArrayStruct);
-        ArrayList<Integer> iterIndex = new ArrayList<Integer>();	//go through all the array values
+        RasCellBuffer cells = RasCellBuffer.wrap(data);
 
-        for (int i = 0; i < dimSize.size(); i++) {
-            mArraySize += dimSize.get(i);
+        if (cells == null) {
+            throw JDBCUtil.notSupported();
         }
 
-        // tests if the required elements exist. The limits are determined
-        // by computing the product of each dimension's size
-        if (!JDBCClobClient.isInLimits(mArraySize, position, count)) {
+        return cells;
+    }
+
+    private Result newColumnResult(long position,
+            int count) throws SQLException {
+
+        RasCellBuffer cells = getCells();
+
+        if (!JDBCClobClient.isInLimits(cells.length(), position, count)) {
             throw JDBCUtil.outOfRangeArgument();
         }
 
         Type[] types = new Type[2];
 
-        types[0] = Type.SQL_VARCHAR;
+        types[0] = Type.SQL_INTEGER;
         types[1] = elementType;
 
         ResultMetaData meta = ResultMetaData.newSimpleResultMetaData(types);
@@ -105,20 +108,12 @@ public class JDBCMArray implements Array {
 
         RowSetNavigatorClient navigator = new RowSetNavigatorClient();
 
-
+        // cells are read from the primitive array one at a time
         for (int i = (int) position; i < position + count; i++) {
             Object[] rowData = new Object[2];
 
             rowData[0] = Integer.valueOf(i + 1);
-            try {
-                rowData[1] = data.getCell(new RasPoint(1,1));
-            } catch (RasDimensionMismatchException e) {
-                System.err.println("Can't get the cell at point (1, 1)");
-                e.printStackTrace();
-            } catch (RasIndexOutOfBoundsException e) {
-                System.err.println("Can't get the cell at point (1, 1)");
-                e.printStackTrace();
-            }
+            rowData[1] = cells.get(i);
 
             navigator.add(rowData);
         }
@@ -130,61 +125,6 @@ public class JDBCMArray implements Array {
         return result;
     }
 
-    /**
-     * Updates the indexes array, going to the next element
-     * @param dimSize: The size of all dimensions of the array
-     * @param indexes: The current indexes while going through the 
-     * 				   values of the multidimensional array
-     * @param currDim: the dimension on which we are currently iterating
-     * @return
-     * 		The dimension on which we are iterating after updating the indexes
-     */
-    private int increaseIndex(ArrayList<Integer> dimSize, ArrayList<Integer> indexes, int currDim) {
-        int dimIndex = indexes.get(currDim);
-        int maxDimIndex = dimSize.get(currDim);
-        if (dimIndex < maxDimIndex - 1) {
-            dimIndex++;
-            indexes.set(currDim, dimIndex);
-        } else {
-            //TODO increase indexes
-        }
-
-        return 0;
-    }
-
-    /**
-     * Returns a list with a number of elements equal to the number
-     * of dimensions of the multidimensional array. Each element 
-     * represents the number of elements of the corresponding dimension
-     * @param structure: The structure of the array taken from the metadata
-     * @return
-     */
-    // TODO implement unit test
-    private ArrayList<Integer> getDimSize(String mArrayStruct) {
-        ArrayList<Integer> dimSize = new ArrayList<Integer>();
-        int startIndex;
-        int endIndex;
-
-        startIndex = mArrayStruct.indexOf("[");
-        endIndex = mArrayStruct.indexOf("]");
-
-        String structure = mArrayStruct.substring(startIndex + 1, endIndex);
-
-        String[] intervals = structure.split(",");
-
-        for (int i = 0; i < intervals.length; i++) {
-            // TODO check the case for select *
-            // or the case when only one value is specified and
-            // not an interval 1 not 1:200
-            String[] interval = intervals[i].split(":");
-            int startPos = Integer.parseInt(interval[0]);
-            int endPos = Integer.parseInt(interval[1]);
-            dimSize.add(endPos - startPos);
-        }
-
-        return dimSize;
-    }
-
     private void checkClosed() throws SQLException {
 
         if (closed) {
@@ -213,9 +153,16 @@ public class JDBCMArray implements Array {
 
     @Override
     public Object getArray(long index, int count) throws SQLException {
-        //TODO return only a limited number of elements
-        String error = "getArray(long index, int count) is not yet implemented";
-        throw new UnsupportedOperationException(error);
+
+        checkClosed();
+
+        RasCellBuffer cells = getCells();
+
+        if (!JDBCClobClient.isInLimits(cells.length(), index - 1, count)) {
+            throw JDBCUtil.outOfRangeArgument();
+        }
+
+        return cells.copy((int) index - 1, count);
     }
 
     @Override
@@ -242,28 +189,34 @@ public class JDBCMArray implements Array {
 
     @Override
     public ResultSet getResultSet() throws SQLException {
-        // TODO Auto-generated method stub
-        return null;
+
+        checkClosed();
+
+        Result result = newColumnResult(0, getCells().length());
+
+        return new JDBCResultSet(connection, result, result.metaData);
     }
 
     @Override
     public ResultSet getResultSet(Map<String, Class<?>> map)
             throws SQLException {
-        // TODO Auto-generated method stub
-        return null;
+        return getResultSet();
     }
 
     @Override
     public ResultSet getResultSet(long index, int count) throws SQLException {
-        // TODO Auto-generated method stub
-        return null;
+
+        checkClosed();
+
+        Result result = newColumnResult(index - 1, count);
+
+        return new JDBCResultSet(connection, result, result.metaData);
     }
 
     @Override
     public ResultSet getResultSet(long index, int count,
             Map<String, Class<?>> map) throws SQLException {
-        // TODO Auto-generated method stub
-        return null;
+        return getResultSet(index, count);
     }
 
 }
@@ -3245,7 +3245,10 @@ public class JDBCPreparedStatement extends JDBCStatementBase implements Prepared
      * <h3>HSQLDB-Specific Information:</h3> <p>
      *
      * Including 2.0, HSQLDB does <i>not</i> support aborting an SQL
-     * statement; calls to this method are ignored.
+     * statement. With an in-process connection, the statement fails before
+     * its next rasdaman query; a running rasdaman query is abandoned as well
+     * if the statement has a query timeout or a statement of the connection
+     * has been cancelled before. Other calls to this method are ignored.
      * </div>
      * <!-- end release-specific documentation -->
      *
@@ -3256,6 +3259,7 @@ public class JDBCPreparedStatement extends JDBCStatementBase implements Prepared
      */
     public void cancel() throws SQLException {
         checkClosed();
+        cancelRasQuery();
     }
 
     /**
@@ -37,6 +37,7 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.Clob;
@@ -54,6 +55,7 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Map;
+import org.asqldb.types.MDABinaryData;
 import org.hsqldb.ColumnBase;
 import org.hsqldb.HsqlDateTime;
 import org.hsqldb.HsqlException;
@@ -4702,6 +4704,111 @@ public class JDBCResultSet implements ResultSet {
         return getArray(findColumn(columnLabel));
     }
 
+    /**
+     * Retrieves the value of the designated MDARRAY column in the current
+     * row of this <code>ResultSet</code> object in its binary form: the
+     * spatial domain and the cells in little-endian byte order.
+     *
+     * @param columnIndex the first column is 1, the second is 2, ...
+     * @return the array, or <code>null</code> if the value is SQL
+     *         <code>NULL</code>
+     * @exception SQLException if the column is not an MDARRAY column, or
+     * this method is called on a closed result set
+     */
+    public MDABinaryData getMDArray(int columnIndex) throws SQLException {
+
+        checkColumn(columnIndex);
+
+        Type   type = resultMetaData.columnTypes[columnIndex - 1];
+        Object data = getCurrent()[columnIndex - 1];
+
+        if (!type.isMDArrayType()) {
+            throw JDBCUtil.sqlException(ErrorCode.X_42561);
+        }
+
+        if (trackNull(data)) {
+            return null;
+        }
+
+        if (data instanceof MDABinaryData) {
+            return (MDABinaryData) data;
+        }
+
+        MDABinaryData ret;
+
+        try {
+            ret = MDABinaryData.fromRas(data);
+        } catch (HsqlException e) {
+            throw JDBCUtil.sqlException(e);
+        }
+
+        if (ret == null) {
+            throw JDBCUtil.sqlException(ErrorCode.X_42561);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @see #getMDArray(int)
+     */
+    public MDABinaryData getMDArray(String columnLabel) throws SQLException {
+        return getMDArray(findColumn(columnLabel));
+    }
+
+    /**
+     * Retrieves the cells of the designated MDARRAY column in the current
+     * row as a read-only little-endian <code>ByteBuffer</code>.
+     *
+     * @param columnIndex the first column is 1, the second is 2, ...
+     * @return the cells, or <code>null</code> if the value is SQL
+     *         <code>NULL</code>
+     * @exception SQLException if the column is not an MDARRAY column, or
+     * this method is called on a closed result set
+     */
+    public ByteBuffer getMDArrayBuffer(int columnIndex) throws SQLException {
+
+        MDABinaryData data = getMDArray(columnIndex);
+
+        return data == null ? null
+                            : data.getBuffer();
+    }
+
+    /**
+     * @see #getMDArrayBuffer(int)
+     */
+    public ByteBuffer getMDArrayBuffer(String columnLabel)
+    throws SQLException {
+        return getMDArrayBuffer(findColumn(columnLabel));
+    }
+
+    /**
+     * Retrieves the cells of the designated MDARRAY column in the current
+     * row as a primitive array, e.g. <code>double[]</code> for an array of
+     * DOUBLE cells.
+     *
+     * @param columnIndex the first column is 1, the second is 2, ...
+     * @return the cells, or <code>null</code> if the value is SQL
+     *         <code>NULL</code>
+     * @exception SQLException if the column is not an MDARRAY column, or
+     * this method is called on a closed result set
+     * @see MDABinaryData#getCells()
+     */
+    public Object getMDArrayCells(int columnIndex) throws SQLException {
+
+        MDABinaryData data = getMDArray(columnIndex);
+
+        return data == null ? null
+                            : data.getCells();
+    }
+
+    /**
+     * @see #getMDArrayCells(int)
+     */
+    public Object getMDArrayCells(String columnLabel) throws SQLException {
+        return getMDArrayCells(findColumn(columnLabel));
+    }
+
     /**
      * <!-- start generic documentation -->
      * Retrieves the value of the designated column in the current row
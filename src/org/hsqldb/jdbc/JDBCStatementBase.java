@@ -35,6 +35,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 
+import org.hsqldb.Session;
 import org.hsqldb.StatementTypes;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.result.Result;
@@ -158,6 +159,17 @@ class JDBCStatementBase {
         }
     }
 
+    /**
+     * Cancels the rasdaman queries of the statement being executed by the
+     * session of an in-process connection.
+     */
+    void cancelRasQuery() {
+
+        if (connection.sessionProxy instanceof Session) {
+            ((Session) connection.sessionProxy).cancelRasQuery();
+        }
+    }
+
     /**
      * processes chained warnings and any generated columns result set
      */
@@ -37,6 +37,8 @@ import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.lib.FileUtil;
 import org.hsqldb.lib.Iterator;
+import org.hsqldb.rowio.RowInputBinary;
+import org.hsqldb.rowio.RowOutputBinary;
 
 /**
  * A file-based row store for temporary CACHED table persistence.<p>
@@ -95,6 +97,19 @@ public class DataFileCacheSession extends DataFileCache {
         }
     }
 
+    /**
+     * Rows of session result tables may hold the arrays of MDARRAY columns
+     * rather than their oids; the file is temporary, so it uses the tagged
+     * MDARRAY format of query results.
+     */
+    protected void initBuffers() {
+
+        super.initBuffers();
+
+        ((RowOutputBinary) rowOut).setMDABinary(true);
+        ((RowInputBinary) rowIn).setMDABinary(true);
+    }
+
     protected void setFileModified() {}
 
     /**
@@ -669,8 +669,9 @@ public abstract class RowStoreAVL implements PersistentStore {
                         final Object oid = data[i];
                         if (oid instanceof Integer) {
                             final String coll = t.getColumn(i).getRasdamanCollectionName();
-                            final String rasql = "DELETE FROM " + coll + " AS c WHERE oid(c) = " + oid;
-                            RasUtil.executeRasqlQuery(rasql, true, true);
+                            // deleted with the other arrays of the transaction
+                            session.addRasDelete(coll, (Integer) oid);
+                            RasUtil.invalidateCache(coll, (Integer) oid);
                         }
                     }
                 }
@@ -33,6 +33,7 @@ package org.hsqldb.result;
 
 import java.io.IOException;
 
+import org.asqldb.types.MDAType;
 import org.hsqldb.ColumnBase;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
@@ -380,15 +381,22 @@ public final class ResultMetaData {
             return Type.getDefaultArrayType(typeCode);
         }
 
+        if (typeCode == Types.SQL_MDARRAY) {
+            typeCode = in.readType();
+
+            return Type.getDefaultMDArrayType(typeCode);
+        }
+
         return Type.getDefaultType(typeCode);
     }
 
     Type readDataType(RowInputBinary in) throws IOException {
 
-        int     typeCode = in.readType();
-        boolean isArray  = typeCode == Types.SQL_ARRAY;
+        int     typeCode  = in.readType();
+        boolean isArray   = typeCode == Types.SQL_ARRAY;
+        boolean isMDArray = typeCode == Types.SQL_MDARRAY;
 
-        if (isArray) {
+        if (isArray || isMDArray) {
             typeCode = in.readType();
         }
 
@@ -399,6 +407,8 @@ public final class ResultMetaData {
 
         if (isArray) {
             type = new ArrayType(type, ArrayType.defaultArrayCardinality);
+        } else if (isMDArray) {
+            type = new MDAType(type);
         }
 
         return type;
@@ -408,7 +418,7 @@ public final class ResultMetaData {
 
         out.writeType(type.typeCode);
 
-        if (type.isArrayType()) {
+        if (type.isArrayType() || type.isMDArrayType()) {
             out.writeType(type.collectionBaseType().typeCode);
         }
 
@@ -420,7 +430,7 @@ public final class ResultMetaData {
 
         out.writeType(type.typeCode);
 
-        if (type.isArrayType()) {
+        if (type.isArrayType() || type.isMDArrayType()) {
             out.writeType(type.collectionBaseType().typeCode);
         }
     }
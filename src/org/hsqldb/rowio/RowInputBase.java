@@ -142,6 +142,13 @@ abstract class RowInputBase extends HsqlByteArrayInputStream {
 
     protected abstract Object[] readArray(Type type) throws IOException;
 
+    /**
+     * Reads an MDARRAY value, by default the oid of the array in rasdaman.
+     */
+    protected Object readMDArray(Type type) throws IOException {
+        return readInteger();
+    }
+
     /**
      *  reads row data from a stream using the JDBC types in colTypes
      *
@@ -186,10 +193,13 @@ abstract class RowInputBase extends HsqlByteArrayInputStream {
                 break;
 
             case Types.SQL_INTEGER :
-            case Types.SQL_MDARRAY :
                 o = readInteger();
                 break;
 
+            case Types.SQL_MDARRAY :
+                o = readMDArray(type);
+                break;
+
             case Types.SQL_BIGINT :
                 o = readBigint();
                 break;
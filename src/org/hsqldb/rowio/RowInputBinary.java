@@ -36,6 +36,9 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
+import org.asqldb.types.MDABinaryData;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
 import org.hsqldb.lib.StringConverter;
 import org.hsqldb.map.ValuePool;
 import org.hsqldb.types.BinaryData;
@@ -67,6 +70,12 @@ public class RowInputBinary extends RowInputBase implements RowInputInterface {
     public boolean          ignoreDataErrors;
     private RowOutputBinary out;
 
+    /**
+     * Read MDARRAY values in the tagged form written by a RowOutputBinary
+     * with the same setting, otherwise as oids.
+     */
+    boolean mdaBinary;
+
     public RowInputBinary(byte[] buf) {
         super(buf);
     }
@@ -79,7 +88,16 @@ public class RowInputBinary extends RowInputBase implements RowInputInterface {
 
         super(out.getBuffer());
 
-        this.out = out;
+        this.out  = out;
+        mdaBinary = out.mdaBinary;
+    }
+
+    /**
+     * @param mdaBinary true to read MDARRAY values in the tagged binary
+     * form of query results, false to read them as oids
+     */
+    public void setMDABinary(boolean mdaBinary) {
+        this.mdaBinary = mdaBinary;
     }
 
     public int readType() throws IOException {
@@ -227,6 +245,35 @@ public class RowInputBinary extends RowInputBase implements RowInputInterface {
         return data;
     }
 
+    protected Object readMDArray(Type type) throws IOException {
+
+        if (!mdaBinary) {
+            return super.readMDArray(type);
+        }
+
+        switch (readByte()) {
+
+            case RowOutputBinary.MDA_OID :
+                return readInteger();
+
+            case RowOutputBinary.MDA_ELEMENTS :
+                return readArray(type);
+
+            case RowOutputBinary.MDA_BINARY : {
+                int    cellType = readByte();
+                long[] domain   = new long[readInt() * 2];
+
+                for (int i = 0; i < domain.length; i++) {
+                    domain[i] = readLong();
+                }
+
+                return new MDABinaryData(cellType, domain, readByteArray());
+            }
+            default :
+                throw Error.runtimeError(ErrorCode.U_S0500, "RowInputBinary");
+        }
+    }
+
     /**
      * Nulls in array are treated as 0
      */
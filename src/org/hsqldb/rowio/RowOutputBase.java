@@ -152,6 +152,13 @@ implements RowOutputInterface {
 
     protected abstract void writeArray(Object[] o, Type type);
 
+    /**
+     * Writes an MDARRAY value, by default the oid of the array in rasdaman.
+     */
+    protected void writeMDArray(Object o, Type type) {
+        writeInteger((Number) o);
+    }
+
     /**
      *  This method is called to write data for a table row.
      */
@@ -212,10 +219,13 @@ implements RowOutputInterface {
                 break;
 
             case Types.SQL_INTEGER :
-            case Types.SQL_MDARRAY :
                 writeInteger((Number) o);
                 break;
 
+            case Types.SQL_MDARRAY :
+                writeMDArray(o, t);
+                break;
+
             case Types.SQL_BIGINT :
                 writeBigint((Number) o);
                 break;
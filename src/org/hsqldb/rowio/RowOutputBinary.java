@@ -34,6 +34,7 @@ package org.hsqldb.rowio;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
+import org.asqldb.types.MDABinaryData;
 import org.hsqldb.Row;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
@@ -62,10 +63,25 @@ import org.hsqldb.types.Types;
 public class RowOutputBinary extends RowOutputBase {
 
     public static final int INT_STORE_SIZE = 4;
+
+    /**
+     * Kinds of MDARRAY values: the oid of an array in a table row, the
+     * elements of an array parameter, or an array of a query result.
+     */
+    static final int MDA_OID      = 0;
+    static final int MDA_ELEMENTS = 1;
+    static final int MDA_BINARY   = 2;
     int                     storageSize;
     final int               scale;    // 2 to power n where n >= 0
     final int               mask;
 
+    /**
+     * Write MDARRAY values tagged with their kind, as in results sent over
+     * the network and in session result tables; otherwise they are written
+     * as the oid of the array, the format of the rows of CACHED tables.
+     */
+    boolean mdaBinary;
+
     public RowOutputBinary(int initialSize, int scale) {
 
         super(initialSize);
@@ -85,6 +101,19 @@ public class RowOutputBinary extends RowOutputBase {
 
         scale     = 1;
         this.mask = ~(scale - 1);
+        mdaBinary = true;
+    }
+
+    /**
+     * @param mdaBinary true to write MDARRAY values in the tagged binary
+     * form of query results, false to write them as oids
+     */
+    public void setMDABinary(boolean mdaBinary) {
+        this.mdaBinary = mdaBinary;
+    }
+
+    public boolean isMDABinary() {
+        return mdaBinary;
     }
 
 // fredt@users - comment - methods for writing column type, name and data size
@@ -267,6 +296,60 @@ public class RowOutputBinary extends RowOutputBase {
         }
     }
 
+    /**
+     * With mdaBinary set, arrays of a query result are written as
+     * MDABinaryData: cell type, lower and upper bound of each dimension, and
+     * the little-endian cells. Otherwise the value is the oid of the array.
+     */
+    protected void writeMDArray(Object o, Type type) {
+
+        if (!mdaBinary) {
+            super.writeMDArray(o, type);
+
+            return;
+        }
+
+        if (o instanceof Number) {
+            write(MDA_OID);
+            writeInt(((Number) o).intValue());
+
+            return;
+        }
+
+        if (o instanceof Object[]) {
+            write(MDA_ELEMENTS);
+            writeArray((Object[]) o, type);
+
+            return;
+        }
+
+        MDABinaryData data = getMDABinaryData(o);
+
+        write(MDA_BINARY);
+        write(data.getCellType());
+        writeInt(data.getDimension());
+
+        for (int i = 0; i < data.getDimension(); i++) {
+            writeLong(data.getLow(i));
+            writeLong(data.getHigh(i));
+        }
+
+        writeByteArray(data.getBytes());
+    }
+
+    private static MDABinaryData getMDABinaryData(Object o) {
+
+        MDABinaryData data = o instanceof MDABinaryData ? (MDABinaryData) o
+                                                        : MDABinaryData
+                                                            .fromRas(o);
+
+        if (data == null) {
+            throw Error.runtimeError(ErrorCode.U_S0500, "RowOutputBinary");
+        }
+
+        return data;
+    }
+
     public void writeArray(int[] o) {
 
         writeInt(o.length);
@@ -432,6 +515,36 @@ public class RowOutputBinary extends RowOutputBase {
 
                 break;
             }
+            case Types.SQL_MDARRAY : {
+                if (!mdaBinary) {
+                    s += 4;
+
+                    break;
+                }
+
+                s += 1;
+
+                if (o instanceof Number) {
+                    s += 4;
+                } else if (o instanceof Object[]) {
+                    s += 4;
+
+                    Object[] array = (Object[]) o;
+
+                    type = type.collectionBaseType();
+
+                    for (int i = 0; i < array.length; i++) {
+                        s += getSize(array[i], type);
+                    }
+                } else {
+                    MDABinaryData data = getMDABinaryData(o);
+
+                    s += 1 + 4 + data.getDimension() * 16;
+                    s += INT_STORE_SIZE + data.getBytes().length;
+                }
+
+                break;
+            }
             case Types.OTHER :
                 JavaObjectData jo = (JavaObjectData) o;
 
@@ -475,6 +588,11 @@ public class RowOutputBinary extends RowOutputBase {
     }
 
     public RowOutputInterface duplicate() {
-        return new RowOutputBinary(128, this.scale);
+
+        RowOutputBinary out = new RowOutputBinary(128, this.scale);
+
+        out.mdaBinary = mdaBinary;
+
+        return out;
     }
 }
@@ -93,6 +93,12 @@ public class RowOutputBinaryEncode extends RowOutputBinary {
     }
 
     public RowOutputInterface duplicate() {
-        return new RowOutputBinaryEncode(crypto, 128, this.scale);
+
+        RowOutputBinaryEncode out = new RowOutputBinaryEncode(crypto, 128,
+            this.scale);
+
+        out.mdaBinary = mdaBinary;
+
+        return out;
     }
 }
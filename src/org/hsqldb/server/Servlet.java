@@ -152,7 +152,10 @@ public class Servlet extends javax.servlet.http.HttpServlet {
             super.init(config);
 
             rowOut = new RowOutputBinary(BUFFER_SIZE, 1);
-            rowIn  = new RowInputBinary(rowOut);
+
+            rowOut.setMDABinary(true);
+
+            rowIn = new RowInputBinary(rowOut);
         } catch (ServletException e) {
             log(e.toString());
         }